@@ -0,0 +1,120 @@
+package com.example.tco2display.legacy;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+
+import okhttp3.ConnectionPool;
+import okhttp3.ConnectionSpec;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.TlsVersion;
+import okhttp3.logging.HttpLoggingInterceptor;
+
+/**
+ * One OkHttp client per process, so its connection pool and TLS session cache outlive
+ * activity restarts. There is no OkHttp {@code Cache}: fuel pages are revalidated with the
+ * validators in each query's {@link PageLedger}, and OkHttp never caches a request that already
+ * carries conditional headers. The ledgers are saved with the snapshot, so revalidation still
+ * works after a process restart. Connections to the API are kept idle longer than the slowest
+ * polling interval, HTTP/2 is offered wherever ALPN works, and {@link #warmUp} pays the first
+ * TCP + TLS handshake before the first refresh needs it.
+ */
+final class ConnectionManager {
+
+    static final String BASE_URL = "https://apis.intangles.com/";
+    private static final String TAG = "Tco2Display";
+    /** Idle connections survive well past the 30 s idle poll; the server may still close first. */
+    private static final long KEEP_ALIVE_MIN = 5;
+    /**
+     * One idle connection per page in flight. API 18 has no ALPN, so every page is a request on
+     * its own HTTP/1.1 connection; a smaller pool would close some after each refresh and pay
+     * their handshakes again on the next.
+     */
+    private static final int IDLE_CONNECTIONS = FetchEngine.PAGE_CONCURRENCY;
+    /** HTTP/2 pings keep NATs and the server from dropping the connection between polls. */
+    private static final long PING_SEC = 20;
+    private static final int TLS_SESSIONS = 8;
+    private static final int TLS_SESSION_TIMEOUT_SEC = 12 * 60 * 60;
+
+    private static ConnectionManager instance;
+
+    final OkHttpClient client;
+    /** Non-null when TLS 1.2 could not be forced on an old device. */
+    final String tlsWarning;
+
+    static synchronized ConnectionManager get() {
+        if (instance == null) instance = new ConnectionManager();
+        return instance;
+    }
+
+    private ConnectionManager() {
+        // ---- OkHttp 3.12.x with TLS 1.2 forced on pre-Lollipop ----
+        HttpLoggingInterceptor log = new HttpLoggingInterceptor();
+        log.setLevel(HttpLoggingInterceptor.Level.BASIC);
+
+        OkHttpClient.Builder okBuilder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(IDLE_CONNECTIONS, KEEP_ALIVE_MIN, TimeUnit.MINUTES))
+                .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .pingInterval(PING_SEC, TimeUnit.SECONDS)
+                .eventListenerFactory(MetricsEventListener.FACTORY)
+                .addInterceptor(log)
+                .retryOnConnectionFailure(true)
+                .connectTimeout(15, TimeUnit.SECONDS)
+                .readTimeout(30, TimeUnit.SECONDS)
+                .writeTimeout(30, TimeUnit.SECONDS);
+
+        // Force TLS 1.2 on API 16–21 devices (Android 4.x)
+        String warning = null;
+        if (android.os.Build.VERSION.SDK_INT >= 16 && android.os.Build.VERSION.SDK_INT < 22) {
+            try {
+                // One context for the process: its client session cache is what lets a new
+                // connection resume the last TLS session instead of a full handshake
+                SSLContext sc = SSLContext.getInstance("TLSv1.2");
+                sc.init(null, null, null);
+                SSLSessionContext sessions = sc.getClientSessionContext();
+                sessions.setSessionCacheSize(TLS_SESSIONS);
+                sessions.setSessionTimeout(TLS_SESSION_TIMEOUT_SEC);
+                okBuilder.sslSocketFactory(new Tls12SocketFactory(sc.getSocketFactory()));
+                ConnectionSpec cs = new ConnectionSpec.Builder(ConnectionSpec.MODERN_TLS)
+                        .tlsVersions(TlsVersion.TLS_1_2)
+                        .build();
+                okBuilder.connectionSpecs(Arrays.asList(
+                        cs, ConnectionSpec.COMPATIBLE_TLS, ConnectionSpec.CLEARTEXT
+                ));
+            } catch (Exception e) {
+                String m = e.getMessage();
+                warning = "TLS setup warning: " + e.getClass().getSimpleName() + " " + (m == null ? "" : m);
+            }
+        }
+        this.tlsWarning = warning;
+        this.client = okBuilder.build();
+    }
+
+    /**
+     * Opens (or reuses) the pooled connection to the API with a HEAD request; blocking, meant
+     * for the io thread ahead of the first refresh. Failures are logged and otherwise ignored:
+     * the refresh will simply connect itself.
+     */
+    void warmUp() {
+        long t0 = SystemClock.elapsedRealtime();
+        Request head = new Request.Builder().url(BASE_URL).head()
+                .header("User-Agent", "android-okhttp/3.12").build();
+        Response r = null;
+        try {
+            r = client.newCall(head).execute();
+            Log.d(TAG, "warm-up " + r.protocol() + " in " + (SystemClock.elapsedRealtime() - t0) + " ms");
+        } catch (Exception e) {
+            Log.w(TAG, "warm-up failed", e);
+        } finally {
+            if (r != null) r.close();
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package com.example.tco2display.legacy;
+
+import android.content.Context;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import okhttp3.OkHttpClient;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/**
+ * The polling loop, one per process. Activities attach a {@link Listener} while visible; the loop
+ * runs while at least one is attached, with at most one cycle in flight however often activities
+ * come and go. Detaching the last listener cancels that cycle's requests.
+ *
+ * <p>attach/detach and all listener callbacks are on the main thread. Cycles run on one io
+ * thread; tick, cycle and delivery reuse the same three Runnables.
+ *
+ * <p>When the build sets INTANGLES_DELTA_URL and there is a single profile, a {@link DeltaChannel}
+ * replaces the loop: totals are pushed, and the pages are only read to resync it.
+ */
+final class FetchEngine {
+
+    interface Listener {
+        void onTco2(double tco2);
+        void onFetchError(String message);
+    }
+
+    private static final String TAG = "Tco2Display";
+    private static final long REFRESH_MS = 2000L; // 2 seconds while the total moves
+    private static final long IDLE_MAX_MS = 30000L;
+    private static final long BACKOFF_MAX_MS = 60000L;
+    private static final int IDLE_AFTER_CYCLES = 5;
+    static final int PAGE_CONCURRENCY = 4;          // fuel pages in flight per refresh
+    private static final long SNAPSHOT_MIN_MS = 30000L; // at most one snapshot write per 30 s
+    private static final long SNAPSHOT_STALE_MS = 600000L;      // older saved totals are shown as such
+    private static final long LEDGER_MAX_AGE_MS = 86400000L;    // pages unchanged for a day are read afresh
+    private static final long METRICS_DUMP_MS = 60000L;
+    private static final int CAPTURES_KEPT = 200;       // query refreshes on disk in capture mode
+    private static final long RESYNC_MS = 600000L;      // push mode: full page read every 10 min
+    /** Used when the build sets no INTANGLES_PROFILES. */
+    private static final String DEFAULT_PROFILES =
+            "fleet|962759605811675136|966986020958502912,969208267156750336|total_fuel_consumed|kg|0.45";
+
+    private static FetchEngine instance;
+
+    private final Handler main = new Handler(Looper.getMainLooper());
+    private final ScheduledExecutorService io = Executors.newSingleThreadScheduledExecutor();
+    // waits on the extra profile queries of a fan-out; the requests themselves run on OkHttp
+    private final ExecutorService fanOutPool = Executors.newCachedThreadPool();
+    private final ConnectionManager connections;
+    private final IntanglesRepository repo;
+    private final ProfileFanOut fanOut;
+    private final SnapshotStore snapshots;
+    private final DeltaChannel delta;            // null: poll
+    private final File metricsFile;
+    private final RefreshScheduler scheduler =
+            new RefreshScheduler(REFRESH_MS, IDLE_MAX_MS, BACKOFF_MAX_MS, IDLE_AFTER_CYCLES);
+
+    // main thread
+    private final List<Listener> listeners = new ArrayList<Listener>();
+    private boolean inFlight;
+    private int generation;          // bumped when polling stops; a cycle from an older one is stale
+    private int cycleGeneration;
+    private long cycleStartMs;
+    private String lastError;
+
+    // written on io, read on main after deliverRunnable is posted
+    private volatile double resultTco2;
+    private volatile Exception resultError;
+
+    private volatile double shownTco2 = Double.NaN;
+
+    // push mode: written under the channel's lock, read on main; one delivery queued at a time
+    private volatile double pushedTco2;
+    private final AtomicBoolean pushPending = new AtomicBoolean();
+
+    // io thread
+    private long savedAtMs;          // elapsedRealtime of the last snapshot write
+    private long metricsDumpedAtMs;
+    private String loggedPayloadWarning;
+
+    private final Runnable tickRunnable = new Runnable() { @Override public void run() { tick(); } };
+    private final Runnable cycleRunnable = new Runnable() { @Override public void run() { cycle(); } };
+    private final Runnable deliverRunnable = new Runnable() { @Override public void run() { deliver(); } };
+    private final Runnable saveRunnable = new Runnable() {
+        @Override public void run() { if (!Double.isNaN(shownTco2)) saveSnapshot(shownTco2); }
+    };
+    private final Runnable pushRunnable = new Runnable() { @Override public void run() { deliverPush(); } };
+    private final Runnable savePushedRunnable = new Runnable() {
+        @Override public void run() {
+            saveSnapshotIfDue(pushedTco2);
+            dumpMetricsIfDue();
+        }
+    };
+
+    static synchronized FetchEngine get(Context context) {
+        if (instance == null) instance = new FetchEngine(context.getApplicationContext());
+        return instance;
+    }
+
+    private FetchEngine(Context app) {
+        connections = ConnectionManager.get();
+        OkHttpClient client = connections.client;
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(ConnectionManager.BASE_URL)
+                .client(client)
+                // Page callbacks parse on OkHttp's thread, never on the UI thread
+                .callbackExecutor(new Executor() {
+                    @Override public void execute(Runnable r) { r.run(); }
+                })
+                .addConverterFactory(FuelPageConverterFactory.create())
+                .addConverterFactory(GsonConverterFactory.create())
+                .build();
+
+        int pages = Math.min(PAGE_CONCURRENCY, client.dispatcher().getMaxRequestsPerHost());
+        repo = new IntanglesRepository(retrofit.create(IntanglesApi.class), pages, true);
+        String profiles = BuildConfig.INTANGLES_PROFILES.trim();
+        List<QueryProfile> queries = QueryProfile.parseList(profiles.isEmpty() ? DEFAULT_PROFILES : profiles);
+        fanOut = new ProfileFanOut(repo, queries, fanOutPool);
+        delta = createDelta(client, queries);
+
+        metricsFile = new File(app.getFilesDir(), "metrics.log");
+        if (BuildConfig.DEBUG && BuildConfig.INTANGLES_CAPTURE) {
+            // External so captures can be pulled with adb from a non-rooted device
+            File captures = app.getExternalFilesDir("captures");
+            if (captures == null) captures = new File(app.getFilesDir(), "captures");
+            repo.captureTo(new PageCapture(captures, CAPTURES_KEPT));
+            Log.i(TAG, "capturing pages to " + captures);
+        }
+        // Allocation counts cost a little on every allocation: debug builds only
+        if (BuildConfig.DEBUG) Debug.startAllocCounting();
+
+        // Last known total straight away; only the small header is read here
+        snapshots = new SnapshotStore(new File(app.getFilesDir(), "tco2.snapshot"));
+        shownTco2 = snapshots.readTotal();
+        final long now = System.currentTimeMillis();
+        long age = now - snapshots.savedAt();
+        if (!Double.isNaN(shownTco2) && (age < 0 || age > SNAPSHOT_STALE_MS)) {
+            // Shown in the banner until the first refresh replaces the value
+            lastError = "Saved total" + (age < 0 ? "" : ", " + describeAge(age) + " old") + "; refreshing";
+        }
+
+        // Keys and page ledgers from the last run: the first cycle revalidates instead of re-parsing.
+        // io is single-threaded, so this and the warm-up finish before the first fetch starts.
+        io.execute(new Runnable() {
+            @Override public void run() {
+                if (snapshots.restoreInto(repo, now - LEDGER_MAX_AGE_MS)) savedAtMs = SystemClock.elapsedRealtime();
+            }
+        });
+        // Handshake now, so the first refresh starts on a pooled connection
+        io.execute(new Runnable() { @Override public void run() { connections.warmUp(); } });
+    }
+
+    private static String describeAge(long ms) {
+        long minutes = ms / 60000L;
+        if (minutes < 120) return minutes + " min";
+        long hours = minutes / 60;
+        return hours < 48 ? hours + " h" : hours / 24 + " days";
+    }
+
+    /** Non-null when TLS 1.2 could not be forced on an old device. */
+    String tlsWarning() { return connections.tlsWarning; }
+
+    /** Starts polling with the first listener; the listener gets the last total (and error) at once. */
+    void attach(Listener l) {
+        if (listeners.contains(l)) return;
+        listeners.add(l);
+        if (!Double.isNaN(shownTco2)) l.onTco2(shownTco2);
+        if (lastError != null) l.onFetchError(lastError);
+        if (listeners.size() == 1) {
+            if (delta != null) {
+                delta.start();
+                return;
+            }
+            scheduler.reset();
+            main.removeCallbacks(tickRunnable);
+            if (!inFlight) tick();
+        }
+    }
+
+    /** Stops polling with the last listener: the running cycle is canceled and the total saved. */
+    void detach(Listener l) {
+        if (!listeners.remove(l) || !listeners.isEmpty()) return;
+        if (delta != null) {
+            delta.stop();
+        } else {
+            main.removeCallbacks(tickRunnable);
+            generation++;
+            if (inFlight) repo.cancel();
+        }
+        io.execute(saveRunnable);
+    }
+
+    private DeltaChannel createDelta(OkHttpClient client, List<QueryProfile> queries) {
+        String url = BuildConfig.INTANGLES_DELTA_URL.trim();
+        if (url.isEmpty()) return null;
+        if (queries.size() != 1) {
+            Log.w(TAG, "INTANGLES_DELTA_URL needs exactly one profile, not " + queries.size() + "; polling");
+            return null;
+        }
+        final QueryProfile query = queries.get(0);
+        return new DeltaChannel(client, url, repo, query, BuildConfig.INTANGLES_TOKEN, 300, "en", true, true,
+                io, RESYNC_MS, new RefreshScheduler(REFRESH_MS, IDLE_MAX_MS, BACKOFF_MAX_MS, IDLE_AFTER_CYCLES),
+                new DeltaChannel.Listener() {
+                    @Override public void onFuel(double fuel) {
+                        pushedTco2 = IntanglesRepository.toTco2(fuel, query.kgPerUnit);
+                        if (pushPending.compareAndSet(false, true)) main.post(pushRunnable);
+                    }
+                    @Override public void onError(Exception e) {
+                        final String error = "Push failed: " + e.getClass().getSimpleName() + " "
+                                + (e.getMessage() == null ? "" : e.getMessage());
+                        main.post(new Runnable() {
+                            @Override public void run() {
+                                lastError = error;
+                                for (int i = 0; i < listeners.size(); i++) listeners.get(i).onFetchError(error);
+                            }
+                        });
+                    }
+                });
+    }
+
+    /** Main thread: the latest pushed total, however many frames arrived since the last delivery. */
+    private void deliverPush() {
+        pushPending.set(false);
+        double tco2 = pushedTco2;
+        if (listeners.isEmpty()) return;
+        shownTco2 = tco2;
+        lastError = null;
+        for (int i = 0; i < listeners.size(); i++) listeners.get(i).onTco2(tco2);
+        io.execute(savePushedRunnable);
+    }
+
+    private void tick() {
+        if (listeners.isEmpty() || inFlight) return;
+        inFlight = true;
+        cycleGeneration = generation;
+        cycleStartMs = SystemClock.elapsedRealtime();
+        io.execute(cycleRunnable);
+    }
+
+    /** Runs on io. */
+    private void cycle() {
+        int gc0 = Debug.getGlobalGcInvocationCount();
+        long alloc0 = Debug.getGlobalAllocSize();
+        try {
+            FleetTotals totals = fanOut.fetch(
+                    BuildConfig.INTANGLES_TOKEN,                           // token (can be "")
+                    300,                                                   // psize
+                    "en",                                                  // lang
+                    true,                                                  // noDefaultFields
+                    true                                                   // lastloc
+            );
+            double tco2 = totals.tco2;
+            if (BuildConfig.DEBUG) {
+                Metrics.recordGc(Debug.getGlobalGcInvocationCount() - gc0, Debug.getGlobalAllocSize() - alloc0);
+            }
+            dumpMetricsIfDue();
+            String warning = Metrics.payloadWarning;
+            if (warning != null && !warning.equals(loggedPayloadWarning)) {
+                loggedPayloadWarning = warning;
+                Log.w(TAG, warning);
+            }
+            if (totals.size() > 1) {
+                for (int i = 0; i < totals.size(); i++) Log.d(TAG, totals.name(i) + " " + totals.tco2(i));
+            }
+            saveSnapshotIfDue(tco2);
+            resultTco2 = tco2;
+            resultError = null;
+        } catch (Exception e) {
+            resultError = e;
+        }
+        main.post(deliverRunnable);
+    }
+
+    private void deliver() {
+        inFlight = false;
+        long fetchMs = SystemClock.elapsedRealtime() - cycleStartMs;
+        Exception e = resultError;
+        if (e != null && cycleGeneration != generation) {
+            // Canceled when polling stopped: not a failure, just restart if someone re-attached
+            if (!listeners.isEmpty()) tick();
+            return;
+        }
+        long delay;
+        if (e == null) {
+            double tco2 = resultTco2;
+            shownTco2 = tco2;
+            lastError = null;
+            for (int i = 0; i < listeners.size(); i++) listeners.get(i).onTco2(tco2);
+            delay = scheduler.onSuccess(tco2, fetchMs);
+        } else {
+            String m = e.getMessage();
+            lastError = "Fetch failed: " + e.getClass().getSimpleName() + " " + (m == null ? "" : m);
+            for (int i = 0; i < listeners.size(); i++) listeners.get(i).onFetchError(lastError);
+            delay = scheduler.onFailure(fetchMs);
+        }
+        Log.d(TAG, "refresh " + scheduler.describe());
+        if (!listeners.isEmpty()) main.postDelayed(tickRunnable, delay);
+    }
+
+    /** Runs on io. */
+    private void dumpMetricsIfDue() {
+        long now = SystemClock.elapsedRealtime();
+        if (now - metricsDumpedAtMs < METRICS_DUMP_MS) return;
+        metricsDumpedAtMs = now;
+        try {
+            Metrics.dumpTo(metricsFile);
+        } catch (Exception e) {
+            Log.w(TAG, "metrics not written", e);
+        }
+    }
+
+    /** Runs on io. */
+    private void saveSnapshotIfDue(double tco2) {
+        if (tco2 != snapshots.lastTotal()
+                && SystemClock.elapsedRealtime() - savedAtMs >= SNAPSHOT_MIN_MS) {
+            saveSnapshot(tco2);
+        }
+    }
+
+    /** Runs on io. */
+    private void saveSnapshot(double tco2) {
+        try {
+            snapshots.save(tco2, repo);
+            savedAtMs = SystemClock.elapsedRealtime();
+        } catch (Exception e) {
+            Log.w(TAG, "snapshot not saved", e);
+        }
+    }
+}
@@ -1,12 +1,12 @@
 package com.example.tco2display.legacy;
 
 import android.graphics.Color;
+import android.graphics.Typeface;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
 import android.support.v7.app.AppCompatActivity;
 import android.util.TypedValue;
 import android.view.Gravity;
+import android.view.View;
 import android.view.ViewGroup;
 import android.view.WindowManager;
 import android.widget.FrameLayout;
@@ -15,27 +15,15 @@ import android.widget.TextView;
 import com.google.android.gms.common.GoogleApiAvailability;
 import com.google.android.gms.security.ProviderInstaller;
 
-import java.util.Arrays;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
-
-import okhttp3.ConnectionSpec;
-import okhttp3.OkHttpClient;
-import okhttp3.TlsVersion;
-import okhttp3.logging.HttpLoggingInterceptor;
-import retrofit2.Retrofit;
-import retrofit2.converter.gson.GsonConverterFactory;
-
-public class MainActivity extends AppCompatActivity implements ProviderInstaller.ProviderInstallListener {
+public class MainActivity extends AppCompatActivity
+        implements ProviderInstaller.ProviderInstallListener, FetchEngine.Listener, PowerMonitor.Listener {
 
     private SevenSegmentView segView;
     private TextView errorView;
+    private TextView metricsView;   // debug overlay, toggled by a long press on the display
 
-    private final Handler ui = new Handler(Looper.getMainLooper());
-    private final ExecutorService io = Executors.newSingleThreadExecutor();
-    private IntanglesRepository repo;
-    private static final long REFRESH_MS = 2000L; // 2 seconds
+    private FetchEngine engine;
+    private PowerMonitor power;     // drops the display to low-power rendering when hot or draining
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -56,7 +44,10 @@ public class MainActivity extends AppCompatActivity implements ProviderInstaller
                 ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
         segLp.gravity = Gravity.CENTER;
         segView.setLayoutParams(segLp);
+        // Ghost digits on their own hardware layer, right behind the lit ones
+        root.addView(segView.ghostLayer(), new FrameLayout.LayoutParams(segLp));
         root.addView(segView);
+        power = new PowerMonitor(this, this);
 
         // Error banner (hidden unless we showError)
         errorView = new TextView(this);
@@ -70,89 +61,76 @@ public class MainActivity extends AppCompatActivity implements ProviderInstaller
         errLp.gravity = Gravity.TOP;
         root.addView(errorView, errLp);
 
+        // Metrics overlay (hidden until the display is long-pressed)
+        metricsView = new TextView(this);
+        metricsView.setBackgroundColor(0xB0000000);
+        metricsView.setTextColor(Color.GREEN);
+        metricsView.setTypeface(Typeface.MONOSPACE);
+        metricsView.setTextSize(TypedValue.COMPLEX_UNIT_SP, 11);
+        metricsView.setPadding(dp(8), dp(4), dp(8), dp(4));
+        metricsView.setVisibility(View.GONE);
+        FrameLayout.LayoutParams metLp = new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
+        metLp.gravity = Gravity.BOTTOM | Gravity.START;
+        root.addView(metricsView, metLp);
+        segView.setOnLongClickListener(new View.OnLongClickListener() {
+            @Override public boolean onLongClick(View v) {
+                boolean show = metricsView.getVisibility() != View.VISIBLE;
+                if (show) metricsView.setText(Metrics.summary());
+                metricsView.setVisibility(show ? View.VISIBLE : View.GONE);
+                return true;
+            }
+        });
+
         // Try to upgrade the device security provider (TLS 1.2 for old devices)
         try {
             ProviderInstaller.installIfNeededAsync(this, this);
         } catch (Exception ignored) { /* best-effort */ }
 
         try {
-            // ---- OkHttp 3.12.x + Retrofit 2.9 with TLS 1.2 forced on pre-Lollipop ----
-            HttpLoggingInterceptor log = new HttpLoggingInterceptor();
-            log.setLevel(HttpLoggingInterceptor.Level.BASIC);
-
-            OkHttpClient.Builder okBuilder = new OkHttpClient.Builder()
-                    .addInterceptor(log)
-                    .retryOnConnectionFailure(true)
-                    .connectTimeout(15, TimeUnit.SECONDS)
-                    .readTimeout(30, TimeUnit.SECONDS)
-                    .writeTimeout(30, TimeUnit.SECONDS);
-
-            // Force TLS 1.2 on API 16–21 devices (Android 4.x)
-            if (android.os.Build.VERSION.SDK_INT >= 16 && android.os.Build.VERSION.SDK_INT < 22) {
-                try {
-                    javax.net.ssl.SSLContext sc = javax.net.ssl.SSLContext.getInstance("TLSv1.2");
-                    sc.init(null, null, null);
-                    okBuilder.sslSocketFactory(new Tls12SocketFactory(sc.getSocketFactory()));
-                    ConnectionSpec cs = new ConnectionSpec.Builder(ConnectionSpec.MODERN_TLS)
-                            .tlsVersions(TlsVersion.TLS_1_2)
-                            .build();
-                    okBuilder.connectionSpecs(Arrays.asList(
-                            cs, ConnectionSpec.COMPATIBLE_TLS, ConnectionSpec.CLEARTEXT
-                    ));
-                } catch (Exception e) {
-                    showError("TLS setup warning: " + e.getClass().getSimpleName() + " " + safeMsg(e));
-                }
-            }
+            // Process-wide: a recreated activity reattaches to the same loop instead of starting another
+            engine = FetchEngine.get(this);
+            if (engine.tlsWarning() != null) showError(engine.tlsWarning());
+            // Polling starts in onStart
+        } catch (Throwable t) {
+            showError("Init failed: " + t.getClass().getSimpleName() + " " + safeMsg(t));
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        power.start();
+        if (engine != null) engine.attach(this);
+    }
 
-            OkHttpClient client = okBuilder.build();
+    @Override
+    protected void onStop() {
+        // Not visible: stop polling (the engine cancels a running cycle and saves the total)
+        if (engine != null) engine.detach(this);
+        power.stop();
+        super.onStop();
+    }
 
-            Retrofit retrofit = new Retrofit.Builder()
-                    .baseUrl("https://apis.intangles.com/")
-                    .client(client)
-                    .addConverterFactory(GsonConverterFactory.create())
-                    .build();
+    @Override public void onTco2(double tco2) {
+        hideError();
+        segView.setTco2(tco2);
+        refreshMetrics();
+    }
 
-            repo = new IntanglesRepository(retrofit.create(IntanglesApi.class));
+    @Override public void onFetchError(String message) {
+        showError(message);
+        refreshMetrics();
+    }
 
-            // Start periodic fetch
-            tick();
-        } catch (Throwable t) {
-            showError("Init failed: " + t.getClass().getSimpleName() + " " + safeMsg(t));
-        }
+    @Override public void onPowerPressure(boolean low, String reason) {
+        segView.setLowPower(low);
+        Metrics.setRenderMode(low ? "low (" + reason + ")" : "full");
+        refreshMetrics();
     }
 
-    private void tick() {
-        io.submit(new Runnable() {
-            @Override public void run() {
-                try {
-                    double tco2 = repo.fetchAndSumTco2(
-                            BuildConfig.INTANGLES_TOKEN,                           // token (can be "")
-                            "962759605811675136",                                  // accId
-                            "966986020958502912,969208267156750336",               // specIds
-                            300,                                                   // psize
-                            "en",                                                  // lang
-                            true,                                                  // noDefaultFields
-                            "total_fuel_consumed",                                 // proj
-                            "",                                                    // groups
-                            true,                                                  // lastloc
-                            "kg",                                                  // LNG unit
-                            0.45                                                   // LNG density (kg/L)
-                    );
-                    ui.post(new Runnable() {
-                        @Override public void run() {
-                            hideError();
-                            segView.setTco2(tco2);
-                        }
-                    });
-                } catch (final Exception e) {
-                    ui.post(new Runnable() { @Override public void run() {
-                        showError("Fetch failed: " + e.getClass().getSimpleName() + " " + safeMsg(e));
-                    }});
-                } finally {
-                    ui.postDelayed(new Runnable() { @Override public void run() { tick(); }}, REFRESH_MS);
-                }
-            }
-        });
+    private void refreshMetrics() {
+        if (metricsView.getVisibility() == View.VISIBLE) metricsView.setText(Metrics.summary());
     }
 
     private void showError(String msg) {
@@ -0,0 +1,77 @@
+package com.example.tco2display.legacy;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.BatteryManager;
+import android.os.Build;
+import android.os.PowerManager;
+
+/**
+ * Feeds battery broadcasts to a {@link PowerPressure} and reports when the display should switch
+ * rendering mode. ACTION_BATTERY_CHANGED is sticky and sent on every charge, charger or
+ * temperature change, so nothing is polled; power-save mode is followed from API 21.
+ * Main thread only; register while the display is visible.
+ */
+final class PowerMonitor extends BroadcastReceiver {
+
+    interface Listener {
+        /** Also called after start() when the device is already under pressure. */
+        void onPowerPressure(boolean low, String reason);
+    }
+
+    private final Context context;
+    private final Listener listener;
+    private final PowerPressure pressure = new PowerPressure();
+    private boolean registered;
+
+    // last battery reading; power-save broadcasts carry none
+    private int percent = -1;
+    private boolean charging = true;
+    private int tempTenthsC = Integer.MIN_VALUE;
+    private boolean overheat;
+
+    PowerMonitor(Context context, Listener listener) {
+        this.context = context;
+        this.listener = listener;
+    }
+
+    void start() {
+        if (registered) return;
+        registered = true;
+        IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
+        if (Build.VERSION.SDK_INT >= 21) filter.addAction(PowerManager.ACTION_POWER_SAVE_MODE_CHANGED);
+        // The sticky battery intent is delivered to onReceive straight away
+        context.registerReceiver(this, filter);
+    }
+
+    void stop() {
+        if (!registered) return;
+        registered = false;
+        context.unregisterReceiver(this);
+    }
+
+    boolean low() { return pressure.low(); }
+
+    @Override public void onReceive(Context c, Intent intent) {
+        if (Intent.ACTION_BATTERY_CHANGED.equals(intent.getAction())) {
+            int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
+            int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
+            percent = level >= 0 && scale > 0 ? level * 100 / scale : -1;
+            charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0
+                    || !intent.getBooleanExtra(BatteryManager.EXTRA_PRESENT, true);
+            tempTenthsC = intent.getIntExtra(BatteryManager.EXTRA_TEMPERATURE, Integer.MIN_VALUE);
+            overheat = intent.getIntExtra(BatteryManager.EXTRA_HEALTH, 0) == BatteryManager.BATTERY_HEALTH_OVERHEAT;
+        }
+        if (pressure.update(percent, charging, tempTenthsC, overheat, powerSaveMode())) {
+            listener.onPowerPressure(pressure.low(), pressure.reason());
+        }
+    }
+
+    private boolean powerSaveMode() {
+        if (Build.VERSION.SDK_INT < 21) return false;
+        PowerManager pm = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        return pm != null && pm.isPowerSaveMode();
+    }
+}
@@ -2,65 +2,289 @@ package com.example.tco2display.legacy;
 
 import android.content.Context;
 import android.graphics.*;
+import android.os.SystemClock;
 import android.support.annotation.Nullable;
 import android.util.AttributeSet;
+import android.view.Display;
 import android.view.View;
-import java.util.Locale;
+import android.view.animation.AnimationUtils;
 
-/** Canvas seven-segment renderer for API 18. */
+/**
+ * Canvas seven-segment renderer for API 18. Segment rectangles are laid out once per size and
+ * digit count, and the ghost '8's are baked into a bitmap, so onDraw only paints lit segments.
+ * A new value only invalidates the digit cells that changed, optionally rolling them odometer-style.
+ *
+ * <p>{@link #ghostLayer} moves the ghost onto a hardware layer of its own, and
+ * {@link #setLowPower} trades fidelity for less work when the device is hot or short of power.
+ * Frames are only drawn for a changed value or a running roll; each one is timed per mode and
+ * counted as jank when it came more than 1.5 vsyncs after it was asked for.
+ */
 public class SevenSegmentView extends View {
 
+    /** Lit segments per digit, bit 0..6 = a,b,c,d,e,f,g. */
+    private static final int[] SEGMENTS = {
+        0x3F, 0x06, 0x5B, 0x4F, 0x66, 0x6D, 0x7D, 0x07, 0x7F, 0x6F
+    };
+    private static final int ALL_SEGMENTS = 0x7F;
+    private static final int MINUS = 0x40;       // g only: sign, and NaN dashes
+
     private double value = 0.0;
-    private int intDigits = 1;               // current integer digits (no leading zeros)
-    private final int fracDigits = 3;
+    private int intDigits = 1;               // current integer cells (no leading zeros, sign included)
+    private final int fracDigits = FixedPointDigits.FRAC_DIGITS;
     private final float lastScale = 1.22f;
+    private static final long ROLL_MS = 350L;
+    private static final long LOW_POWER_VALUE_MS = 1000L;      // low power: newest value once a second
+    private static final long DEFAULT_VSYNC_NANOS = 16666667L;
+
+    // digits for the current value, formatted once in setTco2
+    private final FixedPointDigits digits = new FixedPointDigits();
+    private final char[] previous = new char[digits.chars.length];
+
+    // odometer roll: cells in rollMask slide from previous[] to digits.chars
+    private boolean rollEnabled;
+    private int rollMask;
+    private long rollStart;
+
+    // low power: square segments without anti-aliasing, no roll, values held back to one a second
+    private boolean lowPower;
+    private double pendingValue;
+    private boolean valuePending;
+    private long shownAtMs;                  // uptimeMillis when the last value was applied
+    private final Runnable showPending = new Runnable() {
+        @Override public void run() {
+            valuePending = false;
+            show(pendingValue);
+        }
+    };
+
+    // jank: when the next frame was asked for (0: none is), against the display's vsync period
+    private long frameDueNanos;
+    private long vsyncNanos = DEFAULT_VSYNC_NANOS;
 
     private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint ghostPaint = new Paint(Paint.ANTI_ALIAS_FLAG);   // the ghost keeps full fidelity
     private final RectF tmp = new RectF();
 
     private final int colorOn = Color.WHITE;
     private final int colorGhost = Color.argb(26, 255, 255, 255); // ~10% alpha
     private final int colorGreen = Color.rgb(57, 211, 83);
     private final float gapPx;
+    private final float dotRadius;
+
+    // layout for (width, height, layoutDigits): 7 segments x {l,t,r,b} per digit cell
+    private int layoutDigits = -1;
+    private float[] segRects = new float[0];
+    private float[] segRadius = new float[0];
+    private float[] cellBounds = new float[0];
+    private final RectF dotRect = new RectF();
+    private Bitmap ghost;
+    private View ghostView;                  // set: it draws the ghost, and no bitmap is baked
 
     public SevenSegmentView(Context c) { this(c, null); }
     public SevenSegmentView(Context c, @Nullable AttributeSet a) { this(c, a, 0); }
     public SevenSegmentView(Context c, @Nullable AttributeSet a, int s) {
         super(c, a, s);
         gapPx = dp(10);
+        dotRadius = dp(2);
     }
 
     public void setTco2(double v) {
+        long wait = lowPower ? shownAtMs + LOW_POWER_VALUE_MS - SystemClock.uptimeMillis() : 0;
+        if (wait <= 0 && !valuePending) {
+            show(v);
+            return;
+        }
+        pendingValue = v;
+        if (!valuePending) {
+            valuePending = true;
+            postDelayed(showPending, wait);
+        }
+    }
+
+    private void show(double v) {
         this.value = v;
+        shownAtMs = SystemClock.uptimeMillis();
+        int cells = digits.length();
+        System.arraycopy(digits.chars, 0, previous, 0, cells);
+        digits.set(v);
+        intDigits = digits.intLength();
+
+        // A different digit count moves every cell: full redraw
+        if (digits.length() != cells || layoutDigits != intDigits) {
+            rollMask = 0;
+            frameDue();
+            invalidate();
+            if (ghostView != null) ghostView.invalidate();
+            return;
+        }
+        int changed = 0, rolling = rollMask;
+        char[] chars = digits.chars;
+        for (int k = 0; k < cells; k++) {
+            if (chars[k] != previous[k]) changed |= 1 << k;
+            // a cell still rolling from the last value snaps to its digit
+            if (((changed | rolling) & (1 << k)) != 0) invalidateCell(k);
+        }
+        if ((changed | rolling) != 0) frameDue();
+        rollMask = 0;
+        if (rollEnabled && !lowPower && changed != 0) {
+            rollMask = changed;
+            rollStart = AnimationUtils.currentAnimationTimeMillis();
+        }
+    }
+
+    /** Odometer-style roll for changed digits; off by default. */
+    public void setRollAnimation(boolean enabled) {
+        rollEnabled = enabled;
+        if (!enabled && rollMask != 0) {
+            rollMask = 0;
+            invalidate();
+        }
+    }
+
+    /**
+     * Low-power rendering: lit segments as plain rects without anti-aliasing, no roll, and a new
+     * value at most once a second (the newest one wins). The ghost is left as it is.
+     */
+    public void setLowPower(boolean low) {
+        if (low == lowPower) return;
+        lowPower = low;
+        paint.setAntiAlias(!low);
+        rollMask = 0;
+        if (!low && valuePending) {
+            removeCallbacks(showPending);
+            valuePending = false;
+            show(pendingValue);
+        }
+        frameDue();
         invalidate();
     }
 
-    private String[] splitValue() {
-        String s = String.format(Locale.US, "%." + fracDigits + "f", value);
-        int dot = s.indexOf('.');
-        String rawInt = dot >= 0 ? s.substring(0, dot) : s;
-        String trimmed = rawInt.replaceFirst("^0+(?!$)", "");
-        if (trimmed.length() == 0) trimmed = "0";
-        intDigits = trimmed.length();
-        String frac = dot >= 0 ? s.substring(dot + 1) : "000";
-        return new String[]{ trimmed, frac.substring(0, 2), frac.substring(2, 3) };
+    /**
+     * The ghost '8's and dot as a view of their own, to be added right behind this one at the same
+     * size. It is on a hardware layer, so the GPU keeps it as a texture and composites it under
+     * the lit segments, and it is only redrawn when the digit count or size changes. Without it,
+     * every onDraw copies the baked ghost bitmap.
+     */
+    public View ghostLayer() {
+        if (ghostView == null) {
+            ghostView = new View(getContext()) {
+                @Override protected void onDraw(Canvas c) {
+                    // drawn before this view, so it computes the geometry for both
+                    if (layoutDigits != intDigits) computeCellGeometry();
+                    drawGhost(c, intDigits + fracDigits);
+                }
+            };
+            ghostView.setLayerType(LAYER_TYPE_HARDWARE, null);
+            if (ghost != null) { ghost.recycle(); ghost = null; }
+            layoutDigits = -1;
+            invalidate();
+        }
+        return ghostView;
+    }
+
+    @Override protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        Display d = getDisplay();
+        float hz = d == null ? 0f : d.getRefreshRate();
+        vsyncNanos = hz >= 10f ? (long) (1e9f / hz) : DEFAULT_VSYNC_NANOS;
+    }
+
+    @Override protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        layoutDigits = -1;
+    }
+
+    @Override protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (valuePending) {
+            removeCallbacks(showPending);
+            valuePending = false;
+            show(pendingValue);
+        }
+        if (ghost != null) { ghost.recycle(); ghost = null; }
+        layoutDigits = -1;
+        frameDueNanos = 0;
     }
 
     @Override protected void onDraw(Canvas c) {
+        long t0 = System.nanoTime();
         super.onDraw(c);
-        c.drawColor(Color.BLACK);
+        if (layoutDigits != intDigits) computeCellGeometry();
+        if (ghostView == null) {
+            if (ghost != null) c.drawBitmap(ghost, 0, 0, null);
+            else c.drawColor(Color.BLACK);
+        }
+
+        int cells = intDigits + fracDigits;
+        char[] chars = digits.chars;
+        float p = 1f;
+        if (rollMask != 0) {
+            p = (AnimationUtils.currentAnimationTimeMillis() - rollStart) / (float) ROLL_MS;
+            if (p >= 1f) { p = 1f; rollMask = 0; }
+        }
+        for (int k = 0; k < cells; k++) {
+            int o = k * 4;
+            if (c.quickReject(cellBounds[o], cellBounds[o + 1], cellBounds[o + 2], cellBounds[o + 3],
+                    Canvas.EdgeType.AA)) continue;
+            int color = k == cells - 1 ? colorGreen : colorOn;
+            if ((rollMask & (1 << k)) != 0) drawRolling(c, k, mask(previous[k]), mask(chars[k]), color, p);
+            else drawSegments(c, k, mask(chars[k]), color, 0f, paint, lowPower);
+        }
+        if (!c.quickReject(dotRect, Canvas.EdgeType.AA)) {
+            paint.setColor(colorOn);
+            if (lowPower) c.drawRect(dotRect, paint);
+            else c.drawRoundRect(dotRect, dotRadius, dotRadius, paint);
+        }
+        if (rollMask != 0) {
+            for (int k = 0; k < cells; k++) {
+                if ((rollMask & (1 << k)) == 0) continue;
+                int o = k * 4;
+                postInvalidateOnAnimation((int) cellBounds[o] - 1, (int) cellBounds[o + 1] - 1,
+                        (int) cellBounds[o + 2] + 2, (int) cellBounds[o + 3] + 2);
+            }
+        }
+        if (frameDueNanos != 0) Metrics.recordFrame(t0 - frameDueNanos, vsyncNanos, lowPower);
+        frameDueNanos = rollMask != 0 ? t0 : 0;      // a roll asks for the next frame
+        Metrics.recordDraw(t0, lowPower);
+    }
 
-        // Build pieces
-        String[] parts = splitValue();
-        String iPart = parts[0], f2 = parts[1], last = parts[2];
+    private void frameDue() {
+        if (frameDueNanos == 0) frameDueNanos = System.nanoTime();
+    }
+
+    /** Old digit slides up and out of its cell while the new one slides in from below. */
+    private void drawRolling(Canvas c, int cell, int from, int to, int color, float p) {
+        int o = cell * 4;
+        float h = cellBounds[o + 3] - cellBounds[o + 1];
+        c.save();
+        c.clipRect(cellBounds[o], cellBounds[o + 1], cellBounds[o + 2], cellBounds[o + 3]);
+        drawSegments(c, cell, from, color, -p * h, paint, false);
+        drawSegments(c, cell, to, color, (1f - p) * h, paint, false);
+        c.restore();
+    }
+
+    private void invalidateCell(int cell) {
+        int o = cell * 4;
+        invalidate((int) cellBounds[o] - 1, (int) cellBounds[o + 1] - 1,
+                (int) cellBounds[o + 2] + 2, (int) cellBounds[o + 3] + 2);
+    }
+
+    /** Places every segment for the current digit count and size and bakes the ghost layer. */
+    private void computeCellGeometry() {
+        int cells = intDigits + fracDigits;
+        if (segRects.length < cells * 28) {
+            segRects = new float[cells * 28];
+            segRadius = new float[cells];
+            cellBounds = new float[cells * 4];
+        }
 
         // Layout math (fit to width)
-        float totalGaps = gapPx * (iPart.length() + fracDigits + 1 /*dot*/ - 1);
+        float totalGaps = gapPx * (intDigits + fracDigits + 1 /*dot*/ - 1);
         float aspect = 0.56f;                // digit box aspect
         float dotWFactor = 0.28f, dotHFactor = 0.12f;
 
         float w = getWidth() - getPaddingLeft() - getPaddingRight();
-        float baseW = (w - totalGaps) / (iPart.length() + fracDigits + dotWFactor);
+        float baseW = (w - totalGaps) / (intDigits + fracDigits + dotWFactor);
         float dW = baseW;
         float dH = dW / aspect;
         float dotW = baseW * dotWFactor;
@@ -69,87 +293,89 @@ public class SevenSegmentView extends View {
         float x = getPaddingLeft();
         float cy = getHeight() / 2f;
 
-        // Ghost for present digits only
-        for (int k = 0; k < iPart.length(); k++) {
-            drawDigit(c, x, cy - dH/2f, dW, dH, '8', colorGhost, colorGhost);
+        int k = 0;
+        for (; k < intDigits; k++) {
+            layoutDigit(k, x, cy - dH/2f, dW, dH);
             x += dW + gapPx;
         }
-        // dot ghost
-        paint.setColor(colorGhost);
-        tmp.set(x, cy - dotH/2f, x + dotW, cy + dotH/2f);
-        c.drawRoundRect(tmp, dp(2), dp(2), paint);
+        dotRect.set(x, cy - dotH/2f, x + dotW, cy + dotH/2f);
         x += dotW + gapPx;
-
-        // fraction first two ghosts
-        for (int k = 0; k < 2; k++) {
-            drawDigit(c, x, cy - dH/2f, dW, dH, '8', colorGhost, colorGhost);
+        // first decimals, then the last (bigger) one
+        for (; k < cells - 1; k++) {
+            layoutDigit(k, x, cy - dH/2f, dW, dH);
             x += dW + gapPx;
         }
-        // last ghost (bigger)
-        drawDigit(c, x, cy - (dH*lastScale)/2f, dW*lastScale, dH*lastScale, '8', colorGhost, colorGhost);
+        layoutDigit(k, x, cy - (dH*lastScale)/2f, dW*lastScale, dH*lastScale);
 
-        // Draw actual digits
-        x = getPaddingLeft();
-        for (int k = 0; k < iPart.length(); k++) {
-            drawDigit(c, x, cy - dH/2f, dW, dH, iPart.charAt(k), colorOn, colorGhost);
-            x += dW + gapPx;
+        layoutDigits = intDigits;
+        if (ghostView == null) bakeGhost(cells);
+    }
+
+    private void layoutDigit(int cell, float x, float y, float w, float h) {
+        float t = h * 0.15f;                  // thickness
+        segRadius[cell] = t * 0.35f;          // corner radius
+        cellBounds[cell * 4] = x;
+        cellBounds[cell * 4 + 1] = y;
+        cellBounds[cell * 4 + 2] = x + w;
+        cellBounds[cell * 4 + 3] = y + h;
+        int o = cell * 28;
+        o = putSeg(o, x + t, y, w - 2*t, t);                         // a (top)
+        o = putSeg(o, x + w - t, y + t, t, h/2f - t);                // b (upper-right)
+        o = putSeg(o, x + w - t, y + h/2f, t, h/2f - t);             // c (lower-right)
+        o = putSeg(o, x + t, y + h - t, w - 2*t, t);                 // d (bottom)
+        o = putSeg(o, x, y + h/2f, t, h/2f - t);                     // e (lower-left)
+        o = putSeg(o, x, y + t, t, h/2f - t);                        // f (upper-left)
+        putSeg(o, x + t, y + h/2f - t/2f, w - 2*t, t);               // g (middle)
+    }
+
+    private int putSeg(int o, float left, float top, float w, float h) {
+        segRects[o] = left;
+        segRects[o + 1] = top;
+        segRects[o + 2] = left + w;
+        segRects[o + 3] = top + h;
+        return o + 4;
+    }
+
+    private void bakeGhost(int cells) {
+        int w = getWidth(), h = getHeight();
+        if (w <= 0 || h <= 0) return;
+        if (ghost == null || ghost.getWidth() != w || ghost.getHeight() != h) {
+            if (ghost != null) ghost.recycle();
+            ghost = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
         }
-        // dot
-        paint.setColor(colorOn);
-        tmp.set(x, cy - dotH/2f, x + dotW, cy + dotH/2f);
-        c.drawRoundRect(tmp, dp(2), dp(2), paint);
-        x += dotW + gapPx;
+        drawGhost(new Canvas(ghost), cells);
+    }
 
-        // first two decimals
-        for (int k = 0; k < 2; k++) {
-            drawDigit(c, x, cy - dH/2f, dW, dH, f2.charAt(k), colorOn, colorGhost);
-            x += dW + gapPx;
+    /**
+     * Black background plus ghost '8's and dot. Digits get the ghost twice, as the old
+     * ghost pass + unlit-segment pass did, so unlit segments look the same as before.
+     */
+    private void drawGhost(Canvas c, int cells) {
+        c.drawColor(Color.BLACK);
+        for (int k = 0; k < cells; k++) {
+            drawSegments(c, k, ALL_SEGMENTS, colorGhost, 0f, ghostPaint, false);
+            drawSegments(c, k, ALL_SEGMENTS, colorGhost, 0f, ghostPaint, false);
         }
-        // last decimal (green + bigger)
-        drawDigit(c, x, cy - (dH*lastScale)/2f, dW*lastScale, dH*lastScale, last.charAt(0), colorGreen, colorGhost);
+        ghostPaint.setColor(colorGhost);
+        c.drawRoundRect(dotRect, dotRadius, dotRadius, ghostPaint);
     }
 
-    private void drawDigit(Canvas c, float x, float y, float w, float h, char ch, int onColor, int offColor) {
-        boolean[] seg = map(ch);              // a,b,c,d,e,f,g
-        float t = h * 0.15f;                  // thickness
-        float r = t * 0.35f;                  // corner radius
-
-        // a (top)
-        drawSeg(c, x + t, y, w - 2*t, t, seg[0], onColor, offColor, r);
-        // d (bottom)
-        drawSeg(c, x + t, y + h - t, w - 2*t, t, seg[3], onColor, offColor, r);
-        // g (middle)
-        drawSeg(c, x + t, y + h/2f - t/2f, w - 2*t, t, seg[6], onColor, offColor, r);
-        // f (upper-left)
-        drawSeg(c, x, y + t, t, h/2f - t, seg[5], onColor, offColor, r);
-        // e (lower-left)
-        drawSeg(c, x, y + h/2f, t, h/2f - t, seg[4], onColor, offColor, r);
-        // b (upper-right)
-        drawSeg(c, x + w - t, y + t, t, h/2f - t, seg[1], onColor, offColor, r);
-        // c (lower-right)
-        drawSeg(c, x + w - t, y + h/2f, t, h/2f - t, seg[2], onColor, offColor, r);
-    }
-
-    private void drawSeg(Canvas c, float left, float top, float w, float h,
-                         boolean on, int onColor, int offColor, float radius) {
-        paint.setColor(on ? onColor : offColor);
-        tmp.set(left, top, left + w, top + h);
-        c.drawRoundRect(tmp, radius, radius, paint);
-    }
-
-    private boolean[] map(char ch) {
-        switch (ch) {
-            case '0': return new boolean[]{true,true,true,true,true,true,false};
-            case '1': return new boolean[]{false,true,true,false,false,false,false};
-            case '2': return new boolean[]{true,true,false,true,true,false,true};
-            case '3': return new boolean[]{true,true,true,true,false,false,true};
-            case '4': return new boolean[]{false,true,true,false,false,true,true};
-            case '5': return new boolean[]{true,false,true,true,false,true,true};
-            case '6': return new boolean[]{true,false,true,true,true,true,true};
-            case '7': return new boolean[]{true,true,true,false,false,false,false};
-            case '8': return new boolean[]{true,true,true,true,true,true,true};
-            case '9': return new boolean[]{true,true,true,true,false,true,true};
-            default:  return new boolean[]{false,false,false,false,false,false,false};
+    private static int mask(char ch) {
+        if (ch >= '0' && ch <= '9') return SEGMENTS[ch - '0'];
+        return ch == '-' ? MINUS : 0;
+    }
+
+    /** {@code square}: plain rects, the low-power path. */
+    private void drawSegments(Canvas c, int cell, int mask, int color, float dy, Paint p, boolean square) {
+        if (mask == 0) return;
+        p.setColor(color);
+        float r = segRadius[cell];
+        int o = cell * 28;
+        for (int seg = 0; seg < 7; seg++, o += 4) {
+            if ((mask & (1 << seg)) == 0) continue;
+            tmp.set(segRects[o], segRects[o + 1] + dy, segRects[o + 2], segRects[o + 3] + dy);
+            if (square) c.drawRect(tmp, p);
+            else c.drawRoundRect(tmp, r, r, p);
         }
     }
 
@@ -0,0 +1,35 @@
+package com.example.tco2display.legacy;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/** SevenSegmentView's digit split: the old String.format + regex path against FixedPointDigits. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DigitsBenchmark {
+
+    @Param({"0.0", "42.1875", "123456.789", "98765432.1005"})
+    public double value;
+
+    private final FixedPointDigits digits = new FixedPointDigits();
+
+    @Benchmark
+    public String[] legacySplit() {
+        String s = String.format(Locale.US, "%.3f", value);
+        int dot = s.indexOf('.');
+        String rawInt = dot >= 0 ? s.substring(0, dot) : s;
+        String trimmed = rawInt.replaceFirst("^0+(?!$)", "");
+        if (trimmed.length() == 0) trimmed = "0";
+        String frac = dot >= 0 ? s.substring(dot + 1) : "000";
+        return new String[]{ trimmed, frac.substring(0, 2), frac.substring(2, 3) };
+    }
+
+    @Benchmark
+    public char fixedPoint() {
+        digits.set(value);
+        return digits.chars[digits.length() - 1];
+    }
+}
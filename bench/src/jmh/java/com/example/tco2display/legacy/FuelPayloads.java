@@ -0,0 +1,54 @@
+package com.example.tco2display.legacy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+/** Synthetic vehicle/fuel_consumed pages shaped like the real API's. */
+final class FuelPayloads {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private FuelPayloads() {}
+
+    /**
+     * flat:   {"result":[{"id":"...","total_fuel_consumed":1234.567}, ...]}
+     * nested: {"result":[{"id":"...","data":{"total_fuel_consumed":"1,234.567","odo":...}}, ...]}
+     */
+    static FuelPage page(String shape, int rows, long seed) {
+        Random r = new Random(seed);
+        StringBuilder sb = new StringBuilder(rows * 80);
+        sb.append("{\"status\":\"ok\",\"result\":[");
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) sb.append(',');
+            double fuel = r.nextInt(50000000) / 1000.0;
+            sb.append("{\"id\":\"").append(960000000000000000L + i).append('"');
+            if ("nested".equals(shape)) {
+                sb.append(",\"data\":{\"total_fuel_consumed\":\"")
+                  .append(String.format(Locale.US, "%,.3f", fuel))
+                  .append("\",\"odo\":").append(r.nextInt(900000))
+                  .append(",\"tags\":[\"lng\",\"bus\"]}");
+            } else {
+                sb.append(",\"total_fuel_consumed\":").append(fuel);
+            }
+            sb.append('}');
+        }
+        sb.append("]}");
+        return new FuelPage(sb.toString().getBytes(UTF_8), UTF_8);
+    }
+
+    /** The same page as a gzip body, the way a compressing server would send it. */
+    static FuelPage gzip(FuelPage plain) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(plain.body.length / 4);
+        GZIPOutputStream out = new GZIPOutputStream(bytes);
+        try {
+            out.write(plain.body);
+        } finally {
+            out.close();
+        }
+        return new FuelPage(bytes.toByteArray(), plain.charset);
+    }
+}
@@ -0,0 +1,73 @@
+package com.example.tco2display.legacy;
+
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * One page through each path the repository can take: full tree with detection (the
+ * original per-refresh cost), tree with a cached key, streaming, and the unchanged-page check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParseBenchmark {
+
+    @Param({"300", "3000", "100000"})
+    public int rows;
+
+    @Param({"flat", "nested"})
+    public String shape;
+
+    /** gzip: the body as kept by the converter in compact-transfer mode, inflated while parsing. */
+    @Param({"identity", "gzip"})
+    public String encoding;
+
+    private FuelPage page;
+    private FuelKeyAccessor key;
+    private final PageColumns columns = new PageColumns();
+
+    @Setup
+    public void setup() throws IOException {
+        page = FuelPayloads.page(shape, rows, 42L);
+        if ("gzip".equals(encoding)) page = FuelPayloads.gzip(page);
+        List<JsonObject> sample = IntanglesRepository.iterPayloadRows(page.toTree());
+        key = FuelKeyAccessor.compile(IntanglesRepository.detectFuelKey(sample), sample);
+    }
+
+    @Benchmark
+    public double treeWithDetection() throws IOException {
+        List<JsonObject> sample = IntanglesRepository.iterPayloadRows(page.toTree());
+        FuelKeyAccessor k = FuelKeyAccessor.compile(IntanglesRepository.detectFuelKey(sample), sample);
+        return sum(sample, k);
+    }
+
+    @Benchmark
+    public double treeCachedKey() throws IOException {
+        return sum(IntanglesRepository.iterPayloadRows(page.toTree()), key);
+    }
+
+    @Benchmark
+    public double stream() throws IOException {
+        new FuelPageReader(key).read(page, columns);
+        return columns.sum();
+    }
+
+    /** A fresh page each time: a page keeps its checksum once measured. */
+    @Benchmark
+    public long unchangedPageChecksum() throws IOException {
+        return new FuelPage(page.body, page.charset).checksum();
+    }
+
+    private static double sum(List<JsonObject> rows, FuelKeyAccessor k) {
+        double s = 0.0;
+        for (JsonObject r : rows) {
+            double v = k.get(r);
+            if (!FuelKeyAccessor.isMissing(v)) s += v;
+        }
+        return s;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.tco2display.legacy;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A page's fuel column summed three ways: plain {@code +=} (what the totals used), the
+ * branch-free {@link CompensatedSum} they use now, and Neumaier's branching variant for
+ * reference. One op is one pass over {@code rows} values of fleet-like magnitude.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SumBenchmark {
+
+    @Param({"300", "3000", "100000"})
+    public int rows;
+
+    private double[] values;
+
+    @Setup
+    public void setup() {
+        Random r = new Random(42L);
+        values = new double[rows];
+        for (int i = 0; i < rows; i++) {
+            // litres with two decimals, a tenth of rows missing (0.0), a few very large odometers
+            values[i] = r.nextInt(10) == 0 ? 0.0 : Math.round(r.nextDouble() * (r.nextInt(50) == 0 ? 1e7 : 5e4)) / 100.0;
+        }
+    }
+
+    @Benchmark
+    public double plain() {
+        double[] v = values;
+        double s = 0.0;
+        for (int i = 0; i < v.length; i++) s += v[i];
+        return s;
+    }
+
+    @Benchmark
+    public double compensated() {
+        return CompensatedSum.of(values, values.length);
+    }
+
+    @Benchmark
+    public double neumaier() {
+        double[] v = values;
+        double s = 0.0, c = 0.0;
+        for (int i = 0; i < v.length; i++) {
+            double x = v[i];
+            double t = s + x;
+            if (Math.abs(s) >= Math.abs(x)) c += (s - t) + x;
+            else c += (x - t) + s;
+            s = t;
+        }
+        return s + c;
+    }
+
+    /** Four partial sums merged in order, as pages fold into a query total. */
+    @Benchmark
+    public double compensatedMerged() {
+        double[] v = values;
+        int quarter = v.length / 4;
+        CompensatedSum total = new CompensatedSum();
+        CompensatedSum part = new CompensatedSum();
+        for (int q = 0; q < 4; q++) {
+            part.clear();
+            for (int i = q * quarter, end = q == 3 ? v.length : i + quarter; i < end; i++) part.add(v[i]);
+            total.add(part);
+        }
+        return total.value();
+    }
+}
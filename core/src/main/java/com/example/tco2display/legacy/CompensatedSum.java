@@ -0,0 +1,58 @@
+package com.example.tco2display.legacy;
+
+/**
+ * A double sum that carries its own rounding error: every add is Knuth's TwoSum, which yields
+ * the rounded sum and, exactly, what rounding lost; the losses are summed in a second double
+ * (Ogita, Rump and Oishi's Sum2). The result is as accurate as adding in twice the precision
+ * and rounding once: its error is at most one rounding of the total plus (nu)^2 times the sum
+ * of magnitudes (u = 2^-53), where plain {@code +=} may lose nu times that sum, enough over a
+ * large fleet to reach the third decimal the display shows.
+ *
+ * <p>There are no branches, so data of mixed magnitudes costs the same as any other, and the only
+ * loop-carried dependencies are one add on each half; SumBenchmark puts it at about twice plain
+ * addition, well under a microsecond for a page, next to ~100 us to parse one. Zeros leave both
+ * halves untouched. Merging partial sums with {@link #add(CompensatedSum)} in a fixed order gives
+ * the same bits whichever thread finished first. Not thread-safe.
+ */
+final class CompensatedSum {
+
+    private double sum;
+    private double error;
+
+    void clear() {
+        sum = 0.0;
+        error = 0.0;
+    }
+
+    void add(double x) {
+        double s = sum + x;
+        double b = s - sum;
+        error += (sum - (s - b)) + (x - b);
+        sum = s;
+    }
+
+    /** Folds in another partial sum; merge partials in a fixed order for reproducible bits. */
+    void add(CompensatedSum other) {
+        add(other.sum);
+        error += other.error;
+    }
+
+    /** The compensated total; infinities and NaN come through as plain addition would give them. */
+    double value() {
+        double s = sum;
+        return s - s == 0.0 ? s + error : s;
+    }
+
+    /** Compensated sum of {@code v[0..n)}, in index order. */
+    static double of(double[] v, int n) {
+        double sum = 0.0, error = 0.0;
+        for (int i = 0; i < n; i++) {
+            double x = v[i];
+            double s = sum + x;
+            double b = s - sum;
+            error += (sum - (s - b)) + (x - b);
+            sum = s;
+        }
+        return sum - sum == 0.0 ? sum + error : sum;
+    }
+}
@@ -0,0 +1,349 @@
+package com.example.tco2display.legacy;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+
+/**
+ * Push mode for one query: a WebSocket on which the server sends each vehicle's new fuel value
+ * as it changes, applied to the query's total as (new - old) instead of re-reading every page.
+ * The paginated {@link IntanglesRepository#fetchFuel} path stays the source of truth: it runs
+ * once the socket is open, again whenever the stream cannot be trusted (a gap in sequence
+ * numbers, a reset from the server, a frame that does not parse), and every {@code resyncMs}
+ * anyway so vehicles joining or leaving the query are picked up.
+ *
+ * <p>Wire format, one JSON text frame per change set:
+ * <pre>
+ * {"seq":42,"rows":[{"id":"7","fuel":1234.5}, ...]}    new values; seq goes up by one per frame
+ * {"seq":42,"reset":true}                              history lost at 42: resync from the pages
+ * </pre>
+ * A reconnect asks for {@code since=<last seq>}; the server replays what followed or sends a
+ * reset. Values are absolute, so a frame the resync already reflects changes nothing. Frames
+ * that arrive while a resync is fetching are held and applied after it; a vehicle whose page
+ * was fetched after its held frame shows the older value until its next frame.
+ *
+ * <p>Frames arrive on OkHttp's socket thread; resyncs and reconnects run on {@code io}. The
+ * client's ping interval is what notices a dead socket. The {@link Listener} is called with the
+ * channel's lock held, so its calls are in order; it must not block.
+ */
+final class DeltaChannel {
+
+    interface Listener {
+        /** The query's fuel total in the API's units, after a resync or a frame. */
+        void onFuel(double fuel);
+        void onError(Exception e);
+    }
+
+    private static final int CLOSE_NORMAL = 1000;
+
+    private final OkHttpClient client;
+    private final HttpUrl url;
+    private final IntanglesRepository repo;
+    private final QueryProfile query;
+    private final String specIds, token, lang;
+    private final int psize;
+    private final boolean noDefaultFields, lastloc;
+    private final ScheduledExecutorService io;
+    private final long resyncMs;
+    private final Listener listener;
+    /** Only its failure backoff is used, for reconnects and failed resyncs. */
+    private final RefreshScheduler backoff;
+
+    // guarded by this
+    private boolean running;
+    private int generation;             // bumped by stop(); resyncs from before it are ignored
+    private WebSocket socket;           // callbacks from any other socket are ignored
+    private long lastSeq = -1;
+    private boolean synced;
+    private boolean resyncing;          // from resync() until a fetch succeeds; frames are not applied
+    private boolean fetching;           // the fetch itself; frames are held for after it
+    private boolean resyncAgain;
+    private final List<Frame> held = new ArrayList<Frame>();
+    private final Map<String, Double> values = new HashMap<String, Double>();   // vehicles moved since the resync
+    private final CompensatedSum fuel = new CompensatedSum();
+    private ScheduledFuture<?> reconnect, timer;                                // timer: next resync
+
+    /**
+     * @param url      the delta endpoint, http(s) or ws(s); the query's parameters are added to it
+     * @param resyncMs period of the safety resync from the pages
+     * @param backoff  its {@link RefreshScheduler#onFailure} spaces reconnects and failed resyncs
+     */
+    DeltaChannel(OkHttpClient client, String url, IntanglesRepository repo, QueryProfile query,
+                 String token, int psize, String lang, boolean noDefaultFields, boolean lastloc,
+                 ScheduledExecutorService io, long resyncMs, RefreshScheduler backoff, Listener listener) {
+        HttpUrl parsed = HttpUrl.parse(url.replaceFirst("^(?i)ws(s?):", "http$1:"));
+        if (parsed == null) throw new IllegalArgumentException("Bad delta URL: " + url);
+        this.client = client;
+        this.url = parsed;
+        this.repo = repo;
+        this.query = query;
+        StringBuilder ids = new StringBuilder();
+        for (String id : query.specIds) ids.append(ids.length() == 0 ? "" : ",").append(id);
+        this.specIds = ids.toString();
+        this.token = token;
+        this.psize = psize;
+        this.lang = lang;
+        this.noDefaultFields = noDefaultFields;
+        this.lastloc = lastloc;
+        this.io = io;
+        this.resyncMs = resyncMs;
+        this.backoff = backoff;
+        this.listener = listener;
+    }
+
+    /** Opens the socket; the first total comes from a resync once it is open. */
+    synchronized void start() {
+        if (running) return;
+        running = true;
+        backoff.reset();
+        connect();
+    }
+
+    /** Closes the socket and forgets the stream position; a later start() resyncs from scratch. */
+    synchronized void stop() {
+        if (!running) return;
+        running = false;
+        generation++;
+        if (socket != null) socket.close(CLOSE_NORMAL, "stopped");
+        socket = null;
+        if (reconnect != null) reconnect.cancel(false);
+        if (timer != null) timer.cancel(false);
+        if (fetching) repo.cancel();
+        resyncing = fetching = resyncAgain = synced = false;
+        lastSeq = -1;
+        held.clear();
+        values.clear();
+    }
+
+    /** Sequence number of the last frame received, -1 before the first. */
+    synchronized long lastSeq() { return lastSeq; }
+
+    private void connect() {
+        HttpUrl.Builder u = url.newBuilder()
+                .addQueryParameter("acc_id", query.accId)
+                .addQueryParameter("spec_ids", specIds)
+                .addQueryParameter("proj", query.proj)
+                .addQueryParameter("groups", query.groups);
+        if (lastSeq >= 0) u.addQueryParameter("since", Long.toString(lastSeq));
+        Request request = new Request.Builder()
+                .url(u.build())
+                .header("intangles-session-type", "web")
+                .header("intangles-user-token", token == null ? "" : token)
+                .build();
+        // under the lock, so no callback can run before socket is set
+        socket = client.newWebSocket(request, new Socket());
+    }
+
+    private final class Socket extends WebSocketListener {
+
+        @Override public void onOpen(WebSocket ws, Response response) {
+            synchronized (DeltaChannel.this) {
+                if (ws != socket) return;
+                backoff.reset();
+                if (!synced && !resyncing) resync();
+            }
+        }
+
+        @Override public void onMessage(WebSocket ws, String text) {
+            long t0 = System.nanoTime();
+            Frame f;
+            try {
+                f = Frame.parse(text);
+            } catch (Exception e) {
+                f = null;
+            }
+            synchronized (DeltaChannel.this) {
+                if (ws != socket) return;
+                if (f == null) {
+                    listener.onError(new IOException("Unreadable delta frame"));
+                    if (fetching) resyncAgain = true;
+                    else if (!resyncing) resync();
+                } else {
+                    received(f);
+                }
+            }
+            Metrics.DELTA_FRAME.record(Metrics.micros(t0));
+        }
+
+        @Override public void onClosing(WebSocket ws, int code, String reason) {
+            ws.close(CLOSE_NORMAL, null);
+            lost(ws, new IOException("Delta socket closed by server: " + code + " " + reason));
+        }
+
+        @Override public void onFailure(WebSocket ws, Throwable t, Response response) {
+            lost(ws, t instanceof Exception ? (Exception) t : new IOException(t));
+        }
+
+        private void lost(WebSocket ws, Exception e) {
+            synchronized (DeltaChannel.this) {
+                if (ws != socket) return;
+                socket = null;              // late callbacks from it are ignored from here on
+                listener.onError(e);
+                Metrics.RECONNECTS.incrementAndGet();
+                reconnect = io.schedule(new Runnable() {
+                    @Override public void run() {
+                        synchronized (DeltaChannel.this) {
+                            if (running && socket == null) connect();
+                        }
+                    }
+                }, backoff.onFailure(0), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /** Holds with this locked. */
+    private void received(Frame f) {
+        if (!f.reset && lastSeq >= 0 && f.seq <= lastSeq) return;      // replayed twice
+        boolean gap = f.reset || lastSeq >= 0 && f.seq != lastSeq + 1;
+        lastSeq = f.seq;
+        if (fetching) {
+            held.add(f);
+            if (gap) resyncAgain = true;
+        } else if (resyncing) {
+            // a fetch is queued or waiting to retry; it will be newer than this frame
+        } else if (gap || !synced) {
+            resync();                       // the fetch will be newer than this frame
+        } else {
+            apply(f);
+            listener.onFuel(fuel.value());
+        }
+    }
+
+    /** Holds with this locked. */
+    private void apply(Frame f) {
+        for (int i = 0; i < f.rows; i++) {
+            String id = f.ids[i];
+            Double moved = values.put(id, f.values[i]);
+            double old = moved != null ? moved
+                    : repo.vehicleFuel(query.accId, specIds, query.proj, query.groups, id);
+            fuel.add(f.values[i]);
+            if (!Double.isNaN(old)) fuel.add(-old);
+        }
+    }
+
+    /** Holds with this locked; the caller checked that no resync is under way. */
+    private void resync() {
+        resyncing = true;
+        if (timer != null) timer.cancel(false);
+        io.execute(resyncRunnable(generation));
+    }
+
+    private Runnable resyncRunnable(final int gen) {
+        return new Runnable() {
+            @Override public void run() { runResync(gen); }
+        };
+    }
+
+    /** Runs on io. */
+    private void runResync(final int gen) {
+        synchronized (this) {
+            if (gen != generation || !resyncing || fetching) return;
+            fetching = true;
+            resyncAgain = false;
+            held.clear();                  // all older than the pages about to be fetched
+        }
+        Metrics.RESYNCS.incrementAndGet();
+        double total = Double.NaN;
+        Exception error = null;
+        try {
+            total = repo.fetchFuel(token, query.accId, specIds, psize, lang, noDefaultFields,
+                    query.proj, query.groups, lastloc, query.kgPerUnit);
+        } catch (Exception e) {
+            error = e;
+        }
+        synchronized (this) {
+            if (gen != generation) return;
+            fetching = false;
+            if (error != null) {
+                listener.onError(error);
+                held.clear();
+                timer = io.schedule(resyncRunnable(gen), backoff.onFailure(0), TimeUnit.MILLISECONDS);
+                return;
+            }
+            synced = true;
+            values.clear();
+            fuel.clear();
+            fuel.add(total);
+            for (Frame f : held) apply(f);
+            held.clear();
+            listener.onFuel(fuel.value());
+            if (resyncAgain) {
+                io.execute(resyncRunnable(gen));
+                return;
+            }
+            resyncing = false;
+            timer = io.schedule(new Runnable() {
+                @Override public void run() { periodicResync(gen); }
+            }, resyncMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void periodicResync(int gen) {
+        if (gen == generation && !resyncing) resync();
+    }
+
+    /** One parsed text frame. */
+    static final class Frame {
+        long seq = -1;
+        boolean reset;
+        int rows;
+        String[] ids = new String[8];
+        double[] values = new double[8];
+
+        static Frame parse(String text) throws IOException {
+            Frame f = new Frame();
+            JsonReader in = new JsonReader(new StringReader(text));
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if ("seq".equals(name)) f.seq = in.nextLong();
+                else if ("reset".equals(name)) f.reset = in.nextBoolean();
+                else if ("rows".equals(name)) f.readRows(in);
+                else in.skipValue();
+            }
+            in.endObject();
+            if (f.seq < 0) throw new IOException("Delta frame without seq");
+            return f;
+        }
+
+        private void readRows(JsonReader in) throws IOException {
+            in.beginArray();
+            while (in.hasNext()) {
+                String id = null;
+                double value = Double.NaN;
+                in.beginObject();
+                while (in.hasNext()) {
+                    String name = in.nextName();
+                    if ("id".equals(name) && in.peek() != JsonToken.NULL) id = in.nextString();
+                    else if ("fuel".equals(name) && in.peek() != JsonToken.NULL) value = in.nextDouble();
+                    else in.skipValue();
+                }
+                in.endObject();
+                if (Double.isNaN(value)) continue;    // like a page row without a value
+                if (rows == ids.length) {
+                    ids = Arrays.copyOf(ids, rows * 2);
+                    values = Arrays.copyOf(values, rows * 2);
+                }
+                ids[rows] = id == null ? VehicleIndex.NO_ID : id;
+                values[rows++] = value;
+            }
+            in.endArray();
+        }
+    }
+}
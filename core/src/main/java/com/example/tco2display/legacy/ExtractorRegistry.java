@@ -0,0 +1,129 @@
+package com.example.tco2display.legacy;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fuel keys learned per payload shape, shared by the queries of one repository and saved in its
+ * snapshot. A page whose {@link ShapeSignature} is known, with values of kinds already seen under
+ * it, is streamed with that shape's key as it is; any other page is learned once on the tree, so
+ * a schema change costs one detection and the pages after it take the streaming path again. A
+ * query's first page needs no detection at all when its shape was learned before, by another
+ * query or a previous run.
+ *
+ * <p>Keys are interned: a key with the same dotted path and spelling is the same instance, which
+ * is what page ledgers compare. Thread-safe.
+ */
+final class ExtractorRegistry {
+
+    /** Value kinds, a bit set: JSON numbers, JSON strings, strings with ',' thousands separators. */
+    static final int NUMBERS = 1, STRINGS = 2, SEPARATED = 4;
+
+    private static final int MAX_SHAPES = 64;   // least recently used shapes go first
+
+    /** One learned shape: the key its pages are read with and the kinds its values came as. */
+    static final class Profile {
+        final long shape;
+        final FuelKeyAccessor key;
+        final int kinds;
+
+        Profile(long shape, FuelKeyAccessor key, int kinds) {
+            this.shape = shape;
+            this.key = key;
+            this.kinds = kinds;
+        }
+
+        /** True if a page read with this profile's key met no value kind it was not learned with. */
+        boolean accepts(int pageKinds) { return (pageKinds & ~kinds) == 0; }
+    }
+
+    private final Map<Long, Profile> shapes = new LinkedHashMap<Long, Profile>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Long, Profile> eldest) {
+            return size() > MAX_SHAPES;
+        }
+    };
+    private final Map<String, FuelKeyAccessor> keys = new HashMap<String, FuelKeyAccessor>();
+
+    static int kindOf(CharSequence text) {
+        for (int i = 0, n = text.length(); i < n; i++) if (text.charAt(i) == ',') return STRINGS | SEPARATED;
+        return STRINGS;
+    }
+
+    synchronized Profile get(long shape) { return shapes.get(shape); }
+
+    synchronized int size() { return shapes.size(); }
+
+    /** The instance already registered for this dotted path and spelling, else {@code key}. */
+    synchronized FuelKeyAccessor intern(FuelKeyAccessor key) {
+        String id = identity(key);
+        FuelKeyAccessor known = keys.get(id);
+        if (known != null) return known;
+        keys.put(id, key);
+        return key;
+    }
+
+    /**
+     * Records that pages of {@code shape} are read with {@code key} (interned) and hold values of
+     * {@code kinds}; kinds learned before under the same key are kept. Returns the profile.
+     */
+    synchronized Profile learn(long shape, FuelKeyAccessor key, int kinds) {
+        key = intern(key);
+        Profile old = shapes.get(shape);
+        if (old != null && old.key == key) {
+            if (old.accepts(kinds)) return old;
+            kinds |= old.kinds;
+        }
+        Profile p = new Profile(shape, key, kinds);
+        shapes.put(shape, p);
+        return p;
+    }
+
+    /** Least recently used first, so a restore keeps the order. */
+    synchronized void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(shapes.size());
+        for (Profile p : shapes.values()) {
+            out.writeLong(p.shape);
+            writeKey(out, p.key);
+            out.writeInt(p.kinds);
+        }
+    }
+
+    synchronized void readFrom(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n < 0) throw new IOException("Bad shape count " + n);
+        List<Profile> read = new ArrayList<Profile>(n);
+        for (int i = 0; i < n; i++) {
+            long shape = in.readLong();
+            FuelKeyAccessor key = readKey(in);
+            read.add(new Profile(shape, key, in.readInt()));
+        }
+        for (Profile p : read) learn(p.shape, p.key, p.kinds);
+    }
+
+    static void writeKey(DataOutputStream out, FuelKeyAccessor key) throws IOException {
+        out.writeUTF(key.dotted);
+        out.writeInt(key.fallback == null ? -1 : key.fallback.length);
+        if (key.fallback != null) for (String seg : key.fallback) out.writeUTF(seg);
+    }
+
+    /** A persisted key, interned. */
+    FuelKeyAccessor readKey(DataInputStream in) throws IOException {
+        String dotted = in.readUTF();
+        int fb = in.readInt();
+        String[] fallback = fb < 0 ? null : new String[fb];
+        for (int j = 0; j < fb; j++) fallback[j] = in.readUTF();
+        return intern(FuelKeyAccessor.of(dotted, fallback));
+    }
+
+    private static String identity(FuelKeyAccessor key) {
+        StringBuilder b = new StringBuilder(key.dotted);
+        if (key.fallback != null) for (String seg : key.fallback) b.append('\u0000').append(seg);
+        return b.append(key.fallback == null ? "\u0001" : "").toString();
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.tco2display.legacy;
+
+/**
+ * Turns a double into the digits String.format(Locale.US, "%.3f") would print, using long
+ * thousandths and a reusable char buffer instead of Strings and regexes.
+ *
+ * <p>Rounding is HALF_UP on the value's shortest decimal form, like java.util.Formatter
+ * (1.0005 prints as 1.001). A negative value, -0.0 included, gets a leading '-'. Outside the
+ * display's range: NaN gives "-.---", and magnitudes that round to 10^12 or more (infinities
+ * too) saturate at 999999999999.999 with their sign. Above 10^11 a value sitting within an ulp
+ * of a half-thousandth may round differently from Formatter; the display cannot show the
+ * difference meaningfully at that magnitude anyway.
+ */
+final class FixedPointDigits {
+
+    static final int FRAC_DIGITS = 3;
+    static final int MAX_INT_DIGITS = 12;
+
+    private static final long MAX_THOUSANDTHS = 999999999999999L;
+    private static final double EXACT_4DP_LIMIT = 1e11;
+    private static final double SPLITTER = 134217729.0;     // 2^27 + 1, for Dekker's product
+
+    /** Integer cells (a leading '-' counts as one), then FRAC_DIGITS decimals; no point. */
+    final char[] chars = new char[1 + MAX_INT_DIGITS + FRAC_DIGITS];
+    private int intLength = 1;
+
+    FixedPointDigits() { set(0.0); }
+
+    /** Cells before the decimal point, sign included. */
+    int intLength() { return intLength; }
+
+    int length() { return intLength + FRAC_DIGITS; }
+
+    void set(double v) {
+        if (v != v) {
+            chars[0] = '-';
+            for (int i = 1; i <= FRAC_DIGITS; i++) chars[i] = '-';
+            intLength = 1;
+            return;
+        }
+        boolean negative = (Double.doubleToRawLongBits(v) < 0);
+        double a = Math.abs(v);
+        long thousandths = a < 1e12 ? roundThousandths(a) : MAX_THOUSANDTHS;
+        if (thousandths > MAX_THOUSANDTHS) thousandths = MAX_THOUSANDTHS;
+
+        long intPart = thousandths / 1000;
+        int n = 1;
+        for (long p = intPart; p >= 10; p /= 10) n++;
+        int sign = negative ? 1 : 0;
+        if (negative) chars[0] = '-';
+        intLength = sign + n;
+        for (int i = intLength - 1; i >= sign; i--) {
+            chars[i] = (char) ('0' + (int) (intPart % 10));
+            intPart /= 10;
+        }
+        int frac = (int) (thousandths % 1000);
+        for (int i = intLength + FRAC_DIGITS - 1; i >= intLength; i--) {
+            chars[i] = (char) ('0' + frac % 10);
+            frac /= 10;
+        }
+    }
+
+    /** {@code a} is finite, >= 0 and < 1e12. */
+    static long roundThousandths(double a) {
+        if (a < EXACT_4DP_LIMIT) {
+            // If a is exactly some x.xxxx, that is (a prefix of) its shortest decimal form and
+            // Formatter rounds those digits half up: 1.0005 -> 1.001 though the double is below.
+            long m = Math.round(a * 10000.0);
+            if (m / 10000.0 == a) return (m + 5) / 10;
+        }
+        // Otherwise round the exact binary value: t + err == a * 1000 exactly (Dekker), so the
+        // sign of (frac - 0.5) is computed without rounding error.
+        double t = a * 1000.0;
+        double c = SPLITTER * a;
+        double hi = c - (c - a);
+        double lo = a - hi;
+        double err = (hi * 1000.0 - t) + lo * 1000.0;
+        double f = Math.floor(t);
+        long n = (long) f;
+        if ((t - f - 0.5) + err >= 0.0) n++;
+        return n;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.tco2display.legacy;
+
+/** Largest vehicles of one query by TCO2 as of its last refresh, largest first. */
+public final class FleetBreakdown {
+
+    /** TCO2 of the whole query, the value fetchAndSumTco2 returned. */
+    public final double totalTco2;
+    /** Vehicles with a fuel value on the last refresh, including those not in the top list. */
+    public final int vehicles;
+
+    private final String[] ids;
+    private final double[] tco2;
+
+    FleetBreakdown(double totalTco2, int vehicles, String[] ids, double[] tco2) {
+        this.totalTco2 = totalTco2;
+        this.vehicles = vehicles;
+        this.ids = ids;
+        this.tco2 = tco2;
+    }
+
+    public int size() { return ids.length; }
+
+    /** Vehicle id at {@code rank} (0 = largest); {@link VehicleIndex#NO_ID} for rows without one. */
+    public String id(int rank) { return ids[rank]; }
+
+    public double tco2(int rank) { return tco2[rank]; }
+}
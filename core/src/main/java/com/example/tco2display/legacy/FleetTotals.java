@@ -0,0 +1,26 @@
+package com.example.tco2display.legacy;
+
+/** TCO2 of one fan-out refresh: fleet-wide and per profile, profiles in configured order. */
+public final class FleetTotals {
+
+    /** Every distinct vehicle counted once, even when profiles overlap on spec ids. */
+    public final double tco2;
+    /** Distinct queries the refresh needed after deduplication. */
+    public final int queries;
+
+    private final String[] names;
+    private final double[] profileTco2;
+
+    FleetTotals(double tco2, int queries, String[] names, double[] profileTco2) {
+        this.tco2 = tco2;
+        this.queries = queries;
+        this.names = names;
+        this.profileTco2 = profileTco2;
+    }
+
+    public int size() { return names.length; }
+
+    public String name(int i) { return names[i]; }
+
+    public double tco2(int i) { return profileTco2[i]; }
+}
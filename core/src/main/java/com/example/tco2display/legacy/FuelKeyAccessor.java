@@ -0,0 +1,152 @@
+package com.example.tco2display.legacy;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A detected fuel key compiled once into lookup paths. Immutable; per-row lookups
+ * do not allocate for numeric values and return {@link #MISSING} instead of a null Double.
+ */
+final class FuelKeyAccessor {
+
+    /** Returned when a row has no usable value. NaN values in the payload are treated the same. */
+    static final double MISSING = Double.NaN;
+
+    /** Matches no JSON name; reading a page with it only takes the page's shape. */
+    static final FuelKeyAccessor NONE = new FuelKeyAccessor("\u0000", null);
+
+    final String dotted;
+    /** Direct path, split once: a.b.c through nested objects. */
+    final String[] segments;
+    /** Exact-case object path the key was found under in the sample rows, or null. */
+    final String[] fallback;
+
+    private FuelKeyAccessor(String dotted, String[] fallback) {
+        this.dotted = dotted;
+        this.segments = dotted.split("\\.");
+        this.fallback = fallback;
+    }
+
+    static boolean isMissing(double v) { return v != v; }
+
+    /** Rebuilds an accessor from a persisted key and resolved spelling. */
+    static FuelKeyAccessor of(String dotted, String[] fallback) {
+        return new FuelKeyAccessor(dotted, fallback);
+    }
+
+    /** Compiles {@code dotted}, resolving its real spelling from the rows it was detected on. */
+    static FuelKeyAccessor compile(String dotted, List<JsonObject> sampleRows) {
+        FuelKeyAccessor direct = new FuelKeyAccessor(dotted, null);
+        for (JsonObject row : sampleRows) {
+            if (resolve(row, direct.segments) != null) return direct;
+        }
+        List<String> trail = new ArrayList<String>();
+        for (JsonObject row : sampleRows) {
+            if (findObjectPath(row, dotted, 0, trail)) {
+                return new FuelKeyAccessor(dotted, trail.toArray(new String[0]));
+            }
+        }
+        return direct;
+    }
+
+    /** Direct path first, then the resolved spelling, then a case-insensitive walk of every leaf. */
+    double get(JsonObject row) {
+        JsonElement cur = resolve(row, segments);
+        if (cur != null) {
+            if (!cur.isJsonPrimitive()) return MISSING;
+            JsonPrimitive p = cur.getAsJsonPrimitive();
+            if (p.isNumber()) return p.getAsDouble();
+            if (p.isString()) {
+                try { return Double.parseDouble(p.getAsString().trim().replace(",", "")); } catch (Exception ignored) {}
+            }
+            return MISSING;
+        }
+        if (fallback != null) {
+            cur = resolve(row, fallback);
+            if (cur != null && (cur.isJsonPrimitive() || cur.isJsonNull())) return leafValue(cur);
+        }
+        return walk(row, 0, MISSING);
+    }
+
+    /**
+     * {@link ExtractorRegistry} kinds of the values at the direct path, or where it is absent at
+     * the resolved spelling, over {@code rows}; what {@link FuelPageReader#valueKinds} reports.
+     */
+    int kindsIn(List<JsonObject> rows) {
+        int kinds = 0;
+        for (JsonObject row : rows) {
+            JsonElement cur = resolve(row, segments);
+            if (cur == null && fallback != null) cur = resolve(row, fallback);
+            if (cur == null || !cur.isJsonPrimitive()) continue;
+            JsonPrimitive p = cur.getAsJsonPrimitive();
+            if (p.isNumber()) kinds |= ExtractorRegistry.NUMBERS;
+            else if (p.isString()) kinds |= ExtractorRegistry.kindOf(p.getAsString());
+        }
+        return kinds;
+    }
+
+    private static JsonElement resolve(JsonObject row, String[] path) {
+        JsonElement cur = row;
+        for (String p : path) {
+            if (!cur.isJsonObject()) return null;
+            cur = cur.getAsJsonObject().get(p);
+            if (cur == null) return null;
+        }
+        return cur;
+    }
+
+    /** Last leaf whose joined key equals {@code dotted} ignoring case; prunes on prefix mismatch. */
+    private double walk(JsonElement e, int pos, double found) {
+        if (e.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> en : e.getAsJsonObject().entrySet()) {
+                int next = matchKey(dotted, pos, en.getKey());
+                if (next >= 0) found = walk(en.getValue(), next, found);
+            }
+        } else if (e.isJsonArray()) {
+            JsonArray a = e.getAsJsonArray();
+            for (int i = 0, n = a.size(); i < n; i++) found = walk(a.get(i), pos, found);
+        } else if (pos == dotted.length() && e.isJsonPrimitive()) {
+            double v = leafValue(e);
+            if (!isMissing(v)) found = v;
+        }
+        return found;
+    }
+
+    /** JsonPrimitive.getAsDouble semantics; anything unparseable is missing. */
+    private static double leafValue(JsonElement e) {
+        if (!e.isJsonPrimitive()) return MISSING;
+        try { return e.getAsDouble(); } catch (Exception ignored) { return MISSING; }
+    }
+
+    /**
+     * Matches {@code key} against {@code dotted} at {@code pos}, joining with '.' the way
+     * walkKeys builds prefixes. Returns the position after the key, or -1.
+     */
+    static int matchKey(String dotted, int pos, String key) {
+        if (pos > 0) {
+            if (pos >= dotted.length() || dotted.charAt(pos) != '.') return -1;
+            pos++;
+        }
+        int end = pos + key.length();
+        if (end > dotted.length() || !dotted.regionMatches(true, pos, key, 0, key.length())) return -1;
+        return end;
+    }
+
+    private static boolean findObjectPath(JsonObject o, String dotted, int pos, List<String> trail) {
+        for (Map.Entry<String, JsonElement> en : o.entrySet()) {
+            int next = matchKey(dotted, pos, en.getKey());
+            if (next < 0) continue;
+            JsonElement v = en.getValue();
+            trail.add(en.getKey());
+            if (next == dotted.length() && (v.isJsonPrimitive() || v.isJsonNull())) return true;
+            if (v.isJsonObject() && findObjectPath(v.getAsJsonObject(), dotted, next, trail)) return true;
+            trail.remove(trail.size() - 1);
+        }
+        return false;
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.tco2display.legacy;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonIOException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Raw body of one vehicle/fuel_consumed page, buffered once by {@link FuelPageConverterFactory}.
+ * A gzip body is kept compressed and inflated by the reader while it parses, so no inflated copy
+ * of the page is ever held; the same inflate yields its checksum and length.
+ */
+public final class FuelPage {
+
+    private static final TypeAdapter<JsonElement> TREE = new Gson().getAdapter(JsonElement.class);
+    private static final int GZIP_BUFFER = 2048;
+
+    final byte[] body;
+    final Charset charset;
+    /** Body starts with the gzip magic; JSON text never does. */
+    final boolean gzip;
+
+    private boolean measured;
+    private long checksum, jsonLength;
+
+    FuelPage(byte[] body, Charset charset) {
+        this.body = body;
+        this.charset = charset;
+        this.gzip = body.length >= 18 && (body[0] & 0xff) == 0x1f && (body[1] & 0xff) == 0x8b;
+    }
+
+    /** A gzip body read to its end through this reader is measured on the way. */
+    JsonReader newReader() throws IOException {
+        InputStream in = new ByteArrayInputStream(body);
+        if (gzip) in = new Measuring(new GZIPInputStream(in, GZIP_BUFFER));
+        return new JsonReader(new InputStreamReader(in, charset));
+    }
+
+    /**
+     * {@link PageLedger#checksum} of the JSON text, the same for a page whether it came gzipped
+     * or not. A gzip body is measured by the read that parses it; only one not read to its end
+     * yet is inflated here, without keeping the text. The trailers can't stand in: each covers
+     * one member, and a multi-member body is legal and what some proxies send.
+     */
+    long checksum() throws IOException {
+        measure();
+        return checksum;
+    }
+
+    /** Bytes of JSON text, inflated size for gzip. */
+    long jsonLength() throws IOException {
+        measure();
+        return jsonLength;
+    }
+
+    /** True once {@link #checksum} and {@link #jsonLength} need no inflate. */
+    synchronized boolean isMeasured() { return measured || !gzip; }
+
+    /** A reader inflated every member of the body and checked their trailers; this is what it saw. */
+    synchronized void inflated(CRC32 crc, Adler32 adler, long length) {
+        checksum = PageLedger.checksum(crc, adler);
+        jsonLength = length;
+        measured = true;
+    }
+
+    private synchronized void measure() throws IOException {
+        if (measured) return;
+        CRC32 crc = new CRC32();
+        Adler32 adler = new Adler32();
+        if (!gzip) {
+            crc.update(body, 0, body.length);
+            adler.update(body, 0, body.length);
+            jsonLength = body.length;
+        } else {
+            // GZIPInputStream reads every member and checks each trailer on the way
+            InputStream in = new GZIPInputStream(new ByteArrayInputStream(body), GZIP_BUFFER);
+            try {
+                byte[] buf = new byte[GZIP_BUFFER];
+                long n = 0;
+                for (int r; (r = in.read(buf)) > 0; n += r) {
+                    crc.update(buf, 0, r);
+                    adler.update(buf, 0, r);
+                }
+                jsonLength = n;
+            } finally {
+                in.close();
+            }
+        }
+        checksum = PageLedger.checksum(crc, adler);
+        measured = true;
+    }
+
+    /** Same tree GsonConverterFactory would have produced; used for key detection and odd shapes. */
+    JsonElement toTree() throws IOException {
+        JsonReader in = newReader();
+        try {
+            JsonElement tree = TREE.read(in);
+            if (in.peek() != JsonToken.END_DOCUMENT) throw new JsonIOException("JSON document was not fully consumed.");
+            return tree;
+        } finally {
+            in.close();
+        }
+    }
+
+    /** Checksums the text it passes on and hands the result to the page at the end of the stream. */
+    private final class Measuring extends FilterInputStream {
+        private final CRC32 crc = new CRC32();
+        private final Adler32 adler = new Adler32();
+        private long length;
+
+        Measuring(InputStream in) { super(in); }
+
+        @Override public int read() throws IOException {
+            int c = in.read();
+            if (c >= 0) {
+                crc.update(c);
+                adler.update(c);
+                length++;
+            } else {
+                inflated(crc, adler, length);
+            }
+            return c;
+        }
+
+        @Override public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                crc.update(b, off, n);
+                adler.update(b, off, n);
+                length += n;
+            } else if (n < 0) {
+                inflated(crc, adler, length);
+            }
+            return n;
+        }
+
+        @Override public long skip(long n) throws IOException {
+            byte[] buf = new byte[(int) Math.min(n, GZIP_BUFFER)];
+            int r = read(buf, 0, buf.length);
+            return r < 0 ? 0 : r;
+        }
+
+        @Override public boolean markSupported() { return false; }
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.tco2display.legacy;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+
+import okhttp3.MediaType;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/**
+ * Hands fuel pages to the repository as raw bytes so they can be streamed instead of tree-parsed.
+ * Bodies the repository asked to receive gzipped stay compressed until the reader inflates them.
+ */
+public final class FuelPageConverterFactory extends Converter.Factory {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static FuelPageConverterFactory create() { return new FuelPageConverterFactory(); }
+
+    private FuelPageConverterFactory() {}
+
+    @Override
+    public Converter<ResponseBody, ?> responseBodyConverter(Type type, Annotation[] annotations, Retrofit retrofit) {
+        if (type != FuelPage.class) return null;
+        return new Converter<ResponseBody, FuelPage>() {
+            @Override public FuelPage convert(ResponseBody value) throws IOException {
+                try {
+                    MediaType mt = value.contentType();
+                    // Nothing inflated here: the repository's read measures the page as it parses
+                    return new FuelPage(value.bytes(), mt == null ? UTF_8 : mt.charset(UTF_8));
+                } finally {
+                    value.close();
+                }
+            }
+        };
+    }
+}
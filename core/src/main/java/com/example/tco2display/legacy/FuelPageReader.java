@@ -0,0 +1,371 @@
+package com.example.tco2display.legacy;
+
+import com.google.gson.JsonIOException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+
+/**
+ * Streams a fuel page token by token into {@link PageColumns}, one compiled fuel key per row,
+ * matching what iterPayloadRows + {@link FuelKeyAccessor#get} compute on the tree. Each row also
+ * leaves its top-level {@code id} for the {@link VehicleIndex}. Pages are read off their bytes
+ * by this thread's {@link Utf8JsonScanner}; whatever it declines is read again through Gson.
+ *
+ * <p>The key is the plan: a member whose name cannot continue the dotted key (ignoring case, as
+ * the leaf match does) is skipped unread, so a row costs its path to the fuel value and its id,
+ * not a walk of every field. The first row is the exception; it is walked whole for the page's
+ * {@link ShapeSignature}, and the value types met on the key's path are collected for
+ * {@link ExtractorRegistry}. Not thread-safe; one per fetch loop.
+ */
+final class FuelPageReader {
+
+    /** Top-level row member that names the vehicle. */
+    static final String ID = "id";
+
+    private final FuelKeyAccessor key;
+    private final String dotted;
+    private final String[] parts;
+    private final String[] fallback;
+
+    private PageColumns out;
+    private boolean signPending;     // the next row is the first of its array: sign it
+    private long shape;              // signature of the first row read
+    private int valueKinds;          // ExtractorRegistry kinds of the values the key resolved to
+
+    // row state: direct path wins, then the resolved spelling, then the last matching leaf anywhere
+    private boolean directHit, resolvedHit;
+    private double directValue, resolvedValue, leafValue;
+    private int directKind, resolvedKind;
+    private long rowId;
+    private String rowTextId;
+
+    FuelPageReader(FuelKeyAccessor key) {
+        this.key = key;
+        this.dotted = key.dotted;
+        this.parts = key.segments;
+        this.fallback = key.fallback;
+    }
+
+    FuelKeyAccessor key() { return key; }
+
+    /** Signature of the rows' shape on the last page read; {@link ShapeSignature#EMPTY} without rows. */
+    long shape() { return shape; }
+
+    /** What the key's values were on the last page read, as {@link ExtractorRegistry} kinds. */
+    int valueKinds() { return valueKinds; }
+
+    /**
+     * Replaces {@code columns} with the page's rows; zero hits on a non-empty page means the key
+     * no longer matches. Returns false when the payload is a bare object without a usable
+     * result/data member (the tree path treats the whole object as one row); callers fall back
+     * to the tree then.
+     */
+    boolean read(FuelPage page, PageColumns columns) throws IOException {
+        Utf8JsonScanner scanner = Utf8JsonScanner.forThread();
+        if (scanner.reset(page)) {
+            try {
+                return read(scanner, columns);
+            } catch (Utf8JsonScanner.Fallback declined) {
+                // Gson reads it from the top, with its own errors for whatever was wrong
+            }
+        }
+        JsonReader in = page.newReader();
+        try {
+            return read(new JsonTokens.Gson(in), columns);
+        } finally {
+            in.close();
+        }
+    }
+
+    private boolean read(JsonTokens in, PageColumns columns) throws IOException {
+        columns.clear();
+        out = columns;
+        shape = ShapeSignature.EMPTY;
+        valueKinds = 0;
+        try {
+            boolean ok = readPayload(in);
+            if (ok && in.peek() != JsonToken.END_DOCUMENT) throw new JsonIOException("JSON document was not fully consumed.");
+            return ok;
+        } finally {
+            out = null;
+        }
+    }
+
+    private boolean readPayload(JsonTokens in) throws IOException {
+        JsonToken t = in.peek();
+        if (t == JsonToken.BEGIN_ARRAY) {
+            signPending = true;
+            readRowArray(in);
+            return true;
+        }
+        if (t != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();                       // primitive/null payload has no rows
+            return true;
+        }
+
+        // "result" beats "data" regardless of document order; a repeated key keeps its last value.
+        // result rows go to the caller's columns, data rows aside until the end.
+        PageColumns result = out, data = null;
+        boolean hasResult = false, hasData = false;
+        long resultShape = ShapeSignature.EMPTY, dataShape = ShapeSignature.EMPTY;
+        int resultKinds = 0, dataKinds = 0;
+        in.beginObject();
+        while (in.hasNext()) {
+            CharSequence name = in.nextName();
+            boolean isResult = "result".contentEquals(name);
+            if (!isResult && !"data".contentEquals(name)) { in.skipValue(); continue; }
+
+            PageColumns target = isResult ? result : data != null ? data : (data = result.aside());
+            target.clear();
+            out = target;
+            shape = ShapeSignature.EMPTY;
+            valueKinds = 0;
+            signPending = true;
+            boolean rowsRead = true;
+            JsonToken vt = in.peek();
+            if (vt == JsonToken.BEGIN_ARRAY) readRowArray(in);
+            else if (vt == JsonToken.BEGIN_OBJECT) readRow(in);
+            else { in.skipValue(); rowsRead = false; }
+
+            if (isResult) {
+                hasResult = rowsRead;
+                resultShape = shape;
+                resultKinds = valueKinds;
+            } else {
+                hasData = rowsRead;
+                dataShape = shape;
+                dataKinds = valueKinds;
+            }
+        }
+        in.endObject();
+        out = result;
+
+        if (hasResult) {
+            shape = resultShape;
+            valueKinds = resultKinds;
+            return true;
+        }
+        if (hasData) {
+            result.swap(data);
+            shape = dataShape;
+            valueKinds = dataKinds;
+            return true;
+        }
+        result.clear();
+        shape = ShapeSignature.EMPTY;
+        valueKinds = 0;
+        return false;
+    }
+
+    private void readRowArray(JsonTokens in) throws IOException {
+        in.beginArray();
+        while (in.hasNext()) {
+            if (in.peek() == JsonToken.BEGIN_OBJECT) readRow(in);
+            else in.skipValue();
+        }
+        in.endArray();
+    }
+
+    private void readRow(JsonTokens in) throws IOException {
+        directHit = parts.length == 0;
+        directValue = FuelKeyAccessor.MISSING;
+        resolvedHit = false;
+        directKind = resolvedKind = 0;
+        leafValue = FuelKeyAccessor.MISSING;
+        rowId = PageColumns.TEXT_ID;
+        rowTextId = null;
+        boolean sign = signPending;
+        signPending = false;
+        if (sign) shape = ShapeSignature.EMPTY;
+        readObject(in, 0, 0, true, fallback != null, sign);
+        if (directHit) valueKinds |= directKind;
+        else if (resolvedHit) valueKinds |= resolvedKind;
+        out.add(rowId, rowTextId, directHit ? directValue : resolvedHit ? resolvedValue : leafValue);
+    }
+
+    /**
+     * {@code pos}: how much of the dotted key the names so far spell, ignoring case and joined
+     * with '.' as walkKeys joins them, or -1 once they cannot; nothing under a -1 can be the key.
+     */
+    private void readObject(JsonTokens in, int level, int pos, boolean onPath, boolean onFallback, boolean sign)
+            throws IOException {
+        in.beginObject();
+        while (in.hasNext()) {
+            CharSequence name = in.nextName();         // valid until the next peek
+            int next = pos < 0 ? -1 : matchName(dotted, pos, name);
+            boolean match = onPath && level < parts.length && parts[level].contentEquals(name);
+            boolean fbMatch = onFallback && level < fallback.length && fallback[level].contentEquals(name);
+            boolean id = level == 0 && ID.contentEquals(name);
+            if (sign) shape = ShapeSignature.value(ShapeSignature.name(shape, name), in.peek());
+
+            if (match && level == parts.length - 1) readTerminal(in, sign);
+            else if (fbMatch && level == fallback.length - 1 && readResolved(in)) { /* consumed */ }
+            else if (id && readId(in, next)) { /* consumed */ }
+            else if (next < 0 && !match && !fbMatch && !sign) in.skipValue();
+            else readValue(in, level + 1, next, match, fbMatch, sign);
+        }
+        in.endObject();
+        if (sign) shape = ShapeSignature.end(shape);
+    }
+
+    private void readValue(JsonTokens in, int level, int pos, boolean onPath, boolean onFallback, boolean sign)
+            throws IOException {
+        JsonToken t = in.peek();
+        if (t == JsonToken.BEGIN_OBJECT) {
+            readObject(in, level, pos, onPath, onFallback, sign);
+        } else if (t == JsonToken.BEGIN_ARRAY) {
+            in.beginArray();                      // arrays keep the prefix, like walkKeys
+            while (in.hasNext()) readValue(in, level, pos, false, false, false);
+            in.endArray();
+        } else if (!directHit && !resolvedHit && pos == dotted.length()) {
+            double v = readLeaf(in, t);
+            if (!FuelKeyAccessor.isMissing(v)) leafValue = v;
+        } else {
+            in.skipValue();
+        }
+    }
+
+    /** Direct hit: numbers as-is, strings trimmed and de-comma'd, anything else counts as missing. */
+    private void readTerminal(JsonTokens in, boolean sign) throws IOException {
+        directHit = true;
+        directValue = FuelKeyAccessor.MISSING;
+        directKind = 0;
+        JsonToken t = in.peek();
+        if (t == JsonToken.NUMBER) {
+            directKind = ExtractorRegistry.NUMBERS;
+            directValue = toDouble(in.nextString(), false);
+        } else if (t == JsonToken.STRING) {
+            CharSequence text = in.nextString();
+            directKind = ExtractorRegistry.kindOf(text);
+            directValue = toDouble(text, true);
+        } else if (sign && t == JsonToken.BEGIN_OBJECT) {
+            readObject(in, parts.length, -1, false, false, true);    // no key below; signed all the same
+        } else {
+            in.skipValue();
+        }
+    }
+
+    /** Resolved spelling decides the row only when it lands on a leaf; containers keep walking. */
+    private boolean readResolved(JsonTokens in) throws IOException {
+        JsonToken t = in.peek();
+        if (t == JsonToken.BEGIN_OBJECT || t == JsonToken.BEGIN_ARRAY) return false;
+        resolvedHit = true;
+        resolvedKind = 0;
+        if (t == JsonToken.STRING) {
+            CharSequence text = in.nextString();
+            resolvedKind = ExtractorRegistry.kindOf(text);
+            resolvedValue = toDouble(text, false);
+        } else {
+            if (t == JsonToken.NUMBER) resolvedKind = ExtractorRegistry.NUMBERS;
+            resolvedValue = readLeaf(in, t);
+        }
+        return true;
+    }
+
+    /** A primitive row id, last one wins as in a JsonObject; still a candidate leaf for the fuel key. */
+    private boolean readId(JsonTokens in, int pos) throws IOException {
+        JsonToken t = in.peek();
+        if (t != JsonToken.STRING && t != JsonToken.NUMBER) {
+            rowId = PageColumns.TEXT_ID;
+            rowTextId = null;
+            return false;
+        }
+        CharSequence id = in.nextString();
+        rowId = PageColumns.parseId(id);
+        rowTextId = rowId == PageColumns.TEXT_ID ? id.toString() : null;
+        if (!directHit && !resolvedHit && pos == dotted.length()) {
+            double v = toDouble(id, false);
+            if (!FuelKeyAccessor.isMissing(v)) leafValue = v;
+        }
+        return true;
+    }
+
+    /** JsonPrimitive.getAsDouble semantics; unparseable values are missing. */
+    private static double readLeaf(JsonTokens in, JsonToken t) throws IOException {
+        if (t == JsonToken.NUMBER || t == JsonToken.STRING) return toDouble(in.nextString(), false);
+        in.skipValue();                           // booleans never parse, JsonNull is not a primitive
+        return FuelKeyAccessor.MISSING;
+    }
+
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22,
+    };
+
+    /**
+     * {@code Double.parseDouble(s)}, or of {@code s.trim().replace(",", "")} with {@code dropCommas},
+     * and MISSING where that throws. Plain decimals of up to 15 significant digits and a power of
+     * ten up to 22 are converted here without a String: both operands are exact doubles, so the one
+     * multiply or divide rounds exactly as parseDouble does. Everything else goes to parseDouble.
+     */
+    static double toDouble(CharSequence s, boolean dropCommas) {
+        int start = 0, end = s.length();
+        while (start < end && (s.charAt(start) <= ' ' || dropCommas && s.charAt(start) == ',')) start++;
+        while (end > start && (s.charAt(end - 1) <= ' ' || dropCommas && s.charAt(end - 1) == ',')) end--;
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) negative = s.charAt(i++) == '-';
+        long mantissa = 0;
+        int digits = 0, significant = 0, scale = 0;
+        boolean point = false;
+        for (; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+                if (point) scale--;
+                if (mantissa == 0 && c == '0') continue;
+                if (++significant > 15) return slowDouble(s, dropCommas);
+                mantissa = mantissa * 10 + (c - '0');
+            } else if (c == '.' && !point) {
+                point = true;
+            } else if (c != ',' || !dropCommas) {
+                break;
+            }
+        }
+        if (digits == 0) return slowDouble(s, dropCommas);
+        if (i < end) {
+            char c = s.charAt(i++);
+            if (c != 'e' && c != 'E' || i == end) return slowDouble(s, dropCommas);
+            boolean negExp = false;
+            if (s.charAt(i) == '-' || s.charAt(i) == '+') negExp = s.charAt(i++) == '-';
+            int exp = 0, expDigits = 0;
+            for (; i < end; i++) {
+                c = s.charAt(i);
+                if (c < '0' || c > '9' || ++expDigits > 3) return slowDouble(s, dropCommas);
+                exp = exp * 10 + (c - '0');
+            }
+            if (expDigits == 0) return slowDouble(s, dropCommas);
+            scale += negExp ? -exp : exp;
+        }
+        if (scale < -22 || scale > 22) return mantissa == 0 ? (negative ? -0.0 : 0.0) : slowDouble(s, dropCommas);
+        double v = scale >= 0 ? mantissa * POW10[scale] : mantissa / POW10[-scale];
+        return negative ? -v : v;
+    }
+
+    private static double slowDouble(CharSequence s, boolean dropCommas) {
+        try {
+            return Double.parseDouble(dropCommas ? s.toString().trim().replace(",", "") : s.toString());
+        } catch (Exception e) {
+            return FuelKeyAccessor.MISSING;
+        }
+    }
+
+    /** {@link FuelKeyAccessor#matchKey} for a name that is only a CharSequence. */
+    static int matchName(String dotted, int pos, CharSequence name) {
+        if (pos > 0) {
+            if (pos >= dotted.length() || dotted.charAt(pos) != '.') return -1;
+            pos++;
+        }
+        int n = name.length();
+        if (pos + n > dotted.length()) return -1;
+        for (int i = 0; i < n; i++) {
+            char x = name.charAt(i), y = dotted.charAt(pos + i);
+            if (x == y) continue;
+            char ux = Character.toUpperCase(x), uy = Character.toUpperCase(y);
+            if (ux == uy || Character.toLowerCase(ux) == Character.toLowerCase(uy)) continue;
+            return -1;
+        }
+        return pos + n;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.tco2display.legacy;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Last {@link #WINDOW} samples of one measurement in a ring, plus all-time count and sum.
+ * Recording is lock-free and allocation-free, so it is safe on OkHttp threads and in onDraw;
+ * percentiles are only worked out when a summary is asked for.
+ */
+final class Histogram {
+
+    static final int WINDOW = 256;             // power of two
+
+    final String name;
+    final String unit;
+    /** Divides raw samples for display, e.g. 1000 to show microseconds as ms. */
+    private final double scale;
+
+    private final AtomicLongArray ring = new AtomicLongArray(WINDOW);
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+
+    Histogram(String name, String unit, double scale) {
+        this.name = name;
+        this.unit = unit;
+        this.scale = scale;
+    }
+
+    void record(long value) {
+        ring.lazySet(cursor.getAndIncrement() & (WINDOW - 1), value);
+        count.incrementAndGet();
+        sum.addAndGet(value);
+    }
+
+    long count() { return count.get(); }
+
+    long sum() { return sum.get(); }
+
+    /** {@code name n=.. p50=.. p90=.. p99=.. max=.. unit}; a racing writer may blur one sample. */
+    String summary() {
+        long n = count.get();
+        if (n == 0) return name + " n=0";
+        int size = (int) Math.min(n, WINDOW);
+        long[] s = new long[size];
+        for (int i = 0; i < size; i++) s[i] = ring.get(i);
+        Arrays.sort(s);
+        StringBuilder b = new StringBuilder(96).append(name).append(" n=").append(n);
+        b.append(" p50=").append(format(s[size / 2]));
+        b.append(" p90=").append(format(s[(int) (size * 0.9)]));
+        b.append(" p99=").append(format(s[(int) (size * 0.99)]));
+        b.append(" max=").append(format(s[size - 1]));
+        return b.append(' ').append(unit).toString();
+    }
+
+    private String format(long v) {
+        return scale == 1.0 ? Long.toString(v) : String.format(Locale.US, "%.1f", v / scale);
+    }
+}
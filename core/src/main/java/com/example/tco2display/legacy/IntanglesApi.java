@@ -1,6 +1,5 @@
 package com.example.tco2display.legacy;
 
-import com.google.gson.JsonElement;
 import retrofit2.Call;
 import retrofit2.http.GET;
 import retrofit2.http.HeaderMap;
@@ -9,7 +8,7 @@ import java.util.Map;
 
 public interface IntanglesApi {
     @GET("vehicle/fuel_consumed")
-    Call<JsonElement> fuelConsumed(
+    Call<FuelPage> fuelConsumed(
             @HeaderMap Map<String, String> headers,
             @Query("pnum") int pnum,
             @Query("psize") int psize,
@@ -0,0 +1,572 @@
+package com.example.tco2display.legacy;
+
+import com.google.gson.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import retrofit2.Call;
+import retrofit2.Response;
+
+public class IntanglesRepository {
+
+    private static final double SAVINGS_PER_KG = 0.926;
+    private final IntanglesApi api;
+    /** Compiled fuel keys per (accId, specIds, proj, groups), reused across refreshes. */
+    private final Map<String, FuelKeyAccessor> accessors = new ConcurrentHashMap<String, FuelKeyAccessor>();
+    /** The same keys per payload shape, for every query; accessors only hold instances from here. */
+    private final ExtractorRegistry extractors = new ExtractorRegistry();
+    /** Page checksums and partial sums from the previous refresh, same key as accessors. */
+    private final Map<String, PageLedger> ledgers = new ConcurrentHashMap<String, PageLedger>();
+    /** Per-vehicle totals from the same parses as the ledgers, same key. */
+    private final Map<String, VehicleIndex> indexes = new ConcurrentHashMap<String, VehicleIndex>();
+
+    /** Queries whose first page has been checked against the projection. */
+    private final Set<String> projectionChecked =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    /** Fetches in progress, for {@link #cancel}: page pipelines and synchronous first-page calls. */
+    private final Set<PagePipeline> pipelines =
+            Collections.newSetFromMap(new ConcurrentHashMap<PagePipeline, Boolean>());
+    private final Set<Call<FuelPage>> firstCalls =
+            Collections.newSetFromMap(new ConcurrentHashMap<Call<FuelPage>, Boolean>());
+
+    private final int pageConcurrency;
+    private final boolean compactTransfer;
+    private volatile PageCapture capture;
+
+    public IntanglesRepository(IntanglesApi api) { this(api, 1); }
+
+    /** {@code pageConcurrency} pages are requested at once; OkHttp's per-host limit still applies. */
+    public IntanglesRepository(IntanglesApi api, int pageConcurrency) {
+        this(api, pageConcurrency, false);
+    }
+
+    /**
+     * With {@code compactTransfer} pages are requested gzipped explicitly and kept compressed
+     * until the page reader inflates and parses them in one pass (OkHttp's transparent gzip
+     * would inflate into a second buffer first), and each query's first page is checked once
+     * for fields beyond its projection; see {@link Metrics}.
+     */
+    public IntanglesRepository(IntanglesApi api, int pageConcurrency, boolean compactTransfer) {
+        this.api = api;
+        this.pageConcurrency = pageConcurrency;
+        this.compactTransfer = compactTransfer;
+    }
+
+    private Map<String, String> headers(String token) {
+        Map<String, String> h = new HashMap<String, String>();
+        h.put("Accept", "application/json, text/plain, */*");
+        h.put("intangles-session-type", "web");
+        h.put("intangles-user-lang", "en");
+        h.put("intangles-user-token", token == null ? "" : token);
+        h.put("intangles-user-tz", "Asia/Calcutta");
+        h.put("Referer", "https://bemblueedge.intangles.com/");
+        h.put("Origin", "https://bemblueedge.intangles.com");
+        h.put("User-Agent", "android-okhttp/3.12");
+        // Set explicitly, OkHttp leaves the body compressed for FuelPage to inflate while parsing
+        if (compactTransfer) h.put("Accept-Encoding", "gzip");
+        return h;
+    }
+
+    public double fetchAndSumTco2(String token,
+                                  String accId,
+                                  String specIds,
+                                  int psize,
+                                  String lang,
+                                  boolean noDefaultFields,
+                                  String proj,
+                                  String groups,
+                                  boolean lastloc,
+                                  String lngUnit,
+                                  double lngDensity) throws Exception {
+        double kgPerUnit = kgPerUnit(lngUnit, lngDensity);
+        double totalInput = fetchFuel(token, accId, specIds, psize, lang, noDefaultFields, proj, groups, lastloc, kgPerUnit);
+        return toTco2(totalInput, kgPerUnit);
+    }
+
+    /**
+     * Summed fuel field of one query, in the API's units; the query's vehicle index is published
+     * with TCO2 at {@code kgPerUnit}, which capture mode also records with the pages. Safe to call
+     * concurrently for different queries.
+     */
+    double fetchFuel(String token, String accId, String specIds, int psize, String lang, boolean noDefaultFields,
+                     String proj, String groups, boolean lastloc, double kgPerUnit) throws Exception {
+        long t0 = System.nanoTime();
+        Cycle cycle = new Cycle(headers(token), accId, specIds, psize, lang, noDefaultFields, proj, groups, lastloc);
+        int knownPages = cycle.ledger.pages();
+        boolean more = true;
+        int first = 1;
+        if (accessors.get(cycle.cacheKey) == null) {
+            // Key detection needs page 1 before pages can be summed concurrently
+            Call<FuelPage> call = cycle.call(1);
+            firstCalls.add(call);
+            try {
+                more = cycle.accept(1, call.execute());
+            } finally {
+                firstCalls.remove(call);
+            }
+            first = 2;
+        }
+        if (more) {
+            PagePipeline pipeline = new PagePipeline(cycle, pageConcurrency);
+            pipelines.add(pipeline);
+            try {
+                pipeline.run(first, knownPages);
+            } finally {
+                pipelines.remove(pipeline);
+            }
+        }
+        if (cycle.keyless && accessors.get(cycle.cacheKey) == null) {
+            throw new RuntimeException("Could not detect a fuel field");
+        }
+        double totalInput = cycle.total();
+        long micros = Metrics.micros(t0);
+        Metrics.CYCLE.record(micros);
+        if (micros > 0) Metrics.ROWS_PER_SEC.record(cycle.rowsTotal() * 1000000L / micros);
+        cycle.index.publish(toTco2(totalInput, kgPerUnit), kgPerUnit * SAVINGS_PER_KG / 1000.0);
+        if (cycle.capture != null) cycle.capture(totalInput, kgPerUnit);
+        return totalInput;
+    }
+
+    /** Capture mode: later refreshes write their pages to {@code capture}; null turns it off. */
+    void captureTo(PageCapture capture) { this.capture = capture; }
+
+    /**
+     * Cancels the requests of every fetch in progress; those fetches throw an IOException
+     * ("Canceled"); pages they already summed stay in the ledgers. Fetches started afterwards are
+     * not affected.
+     */
+    public void cancel() {
+        for (Call<FuelPage> call : firstCalls) call.cancel();
+        for (PagePipeline pipeline : pipelines) pipeline.cancel();
+    }
+
+    /** LNG kg per unit of the summed fuel field. */
+    static double kgPerUnit(String lngUnit, double lngDensity) {
+        if ("kg".equalsIgnoreCase(lngUnit)) return 1.0;
+        if ("l".equalsIgnoreCase(lngUnit) || "lt".equalsIgnoreCase(lngUnit)
+              || "litre".equalsIgnoreCase(lngUnit) || "liter".equalsIgnoreCase(lngUnit))
+            return lngDensity;
+        throw new IllegalArgumentException("Invalid lngUnit: " + lngUnit);
+    }
+
+    static double toTco2(double fuel, double kgPerUnit) {
+        return (fuel * kgPerUnit * SAVINGS_PER_KG) / 1000.0;
+    }
+
+    /**
+     * The {@code n} vehicles with the most TCO2 on the last refresh of this query, largest first;
+     * null if the query has not been fetched. Costs no requests.
+     */
+    public FleetBreakdown topVehicles(String accId, String specIds, String proj, String groups, int n) {
+        VehicleIndex index = indexes.get(cacheKey(accId, specIds, proj, groups));
+        return index == null ? null : index.top(n);
+    }
+
+    /**
+     * Fuel of one vehicle on the last refresh of this query, in the API's units; NaN if the
+     * query has not been fetched or none of its pages has the vehicle with a value.
+     */
+    double vehicleFuel(String accId, String specIds, String proj, String groups, String id) {
+        VehicleIndex index = indexes.get(cacheKey(accId, specIds, proj, groups));
+        return index == null ? Double.NaN : index.fuelOf(id);
+    }
+
+    /**
+     * TCO2 per {@code groups} value fetched for this account, specs and projection, from the last
+     * refresh of each; the unfiltered query is the fleet, not a group, and is left out.
+     */
+    public Map<String, Double> groupTotals(String accId, String specIds, String proj) {
+        String prefix = cacheKey(accId, specIds, proj, "");
+        Map<String, Double> out = new TreeMap<String, Double>();
+        for (Map.Entry<String, VehicleIndex> e : indexes.entrySet()) {
+            double tco2 = e.getValue().tco2();
+            if (e.getKey().startsWith(prefix) && e.getKey().length() > prefix.length() && !Double.isNaN(tco2))
+                out.put(e.getKey().substring(prefix.length()), tco2);
+        }
+        return out;
+    }
+
+    /** Dotted fuel key compiled for this query, null before its first page has been parsed. */
+    String fuelKey(String accId, String specIds, String proj, String groups) {
+        FuelKeyAccessor key = accessors.get(cacheKey(accId, specIds, proj, groups));
+        return key == null ? null : key.dotted;
+    }
+
+    private static String cacheKey(String accId, String specIds, String proj, String groups) {
+        return accId + "|" + specIds + "|" + proj + "|" + groups;
+    }
+
+    /* ------------ persisted state (see SnapshotStore) ------------ */
+
+    /**
+     * Learned payload shapes, then compiled keys and the page ledgers summed with them, so a
+     * restart can revalidate pages and needs no key detection for shapes it has seen.
+     */
+    void writeState(DataOutputStream out) throws IOException {
+        extractors.writeTo(out);
+        List<String> queries = new ArrayList<String>();
+        for (String q : accessors.keySet()) if (ledgers.containsKey(q) && indexes.containsKey(q)) queries.add(q);
+        out.writeInt(queries.size());
+        for (String q : queries) {
+            FuelKeyAccessor key = accessors.get(q);
+            out.writeUTF(q);
+            ExtractorRegistry.writeKey(out, key);
+            int pages = ledgers.get(q).writeTo(out, key);
+            indexes.get(q).writeTo(out, pages);
+        }
+    }
+
+    /**
+     * Restores what {@link #writeState} wrote. A query whose pages last changed before
+     * {@code oldestChange} (wall clock) keeps its key but not its pages: its page count, sums and
+     * vehicles may describe a fleet long since reshaped, so its first refresh reads every page.
+     */
+    void readState(DataInputStream in, long oldestChange) throws IOException {
+        extractors.readFrom(in);
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            String q = in.readUTF();
+            FuelKeyAccessor key = extractors.readKey(in);
+            PageLedger ledger = PageLedger.readFrom(in, key);
+            VehicleIndex index = VehicleIndex.readFrom(in);
+            accessors.put(q, key);
+            if (ledger.lastChange() < oldestChange) continue;
+            ledgers.put(q, ledger);
+            indexes.put(q, index);
+        }
+    }
+
+    /** One refresh of one query: pages may be accepted in any order, the total folds them in page order. */
+    private final class Cycle implements PagePipeline.Pages {
+        final Map<String, String> headers;
+        final String accId, specIds, lang, proj, groups, cacheKey;
+        final int psize;
+        final boolean noDefaultFields, lastloc;
+        final PageLedger ledger;
+        final VehicleIndex index;
+        final PageCapture capture = IntanglesRepository.this.capture;
+
+        // guarded by this; index = pnum - 1, rows 0 = empty or missing page
+        private int[] rows = new int[8];
+        private double[] sums = new double[8];
+        private FuelPage[] bodies;       // capture mode only; null where a page came back 304
+        private int foldedPages;         // pages and rows in the last total()
+        private long foldedRows;
+        /** A page had rows but no fuel field, and the query had no key to sum it with. */
+        volatile boolean keyless;
+
+        Cycle(Map<String, String> headers, String accId, String specIds, int psize, String lang,
+              boolean noDefaultFields, String proj, String groups, boolean lastloc) {
+            this.headers = headers;
+            this.accId = accId;
+            this.specIds = specIds;
+            this.psize = psize;
+            this.lang = lang;
+            this.noDefaultFields = noDefaultFields;
+            this.proj = proj;
+            this.groups = groups;
+            this.lastloc = lastloc;
+            this.cacheKey = cacheKey(accId, specIds, proj, groups);
+            PageLedger l = ledgers.get(cacheKey);
+            if (l == null) { l = new PageLedger(); ledgers.put(cacheKey, l); }
+            this.ledger = l;
+            VehicleIndex x = indexes.get(cacheKey);
+            if (x == null) { x = new VehicleIndex(); indexes.put(cacheKey, x); }
+            this.index = x;
+        }
+
+        @Override public Call<FuelPage> call(int pnum) {
+            Map<String, String> h = headers;
+            FuelKeyAccessor fuelKey = accessors.get(cacheKey);
+            String etag = ledger.etag(pnum - 1, fuelKey), modified = ledger.lastModified(pnum - 1, fuelKey);
+            if (etag != null || modified != null) {
+                // Revalidate: a 304 lets accept() reuse last refresh's sum without a body
+                h = new HashMap<String, String>(headers);
+                if (etag != null) h.put("If-None-Match", etag);
+                if (modified != null) h.put("If-Modified-Since", modified);
+            }
+            return api.fuelConsumed(h, pnum, psize, noDefaultFields, proj, specIds, groups, lastloc, accId, lang);
+        }
+
+        @Override public boolean accept(int pnum, Response<FuelPage> response) throws Exception {
+            FuelKeyAccessor fuelKey = accessors.get(cacheKey);
+            if (response.code() == 304) {
+                int recorded = ledger.rowsIfRecorded(pnum - 1, fuelKey);
+                if (recorded < 0) throw new IOException("304 for page " + pnum + " with no reusable sum");
+                return keep(pnum, recorded, ledger.sum(pnum - 1));
+            }
+            FuelPage page = response.body();
+            if (page == null) return false;
+            if (capture != null) captured(pnum, page);
+
+            int rowCount;
+            double pageSum;
+            // this thread's rows of the page; stays null when the page is reused as-is
+            PageColumns columns = null;
+            if (compactTransfer && pnum == 1 && projectionChecked.add(cacheKey)) {
+                String warning = checkProjection(page, proj);
+                if (warning != null) Metrics.payloadWarning = warning;
+            }
+            long t0 = System.nanoTime();
+            FuelPageReader reader = null;
+            boolean streamed = false;
+            if (!page.isMeasured()) {
+                // A gzip body is checksummed by the inflate that parses it, not inflated twice
+                columns = PageColumns.forThread();
+                reader = new FuelPageReader(fuelKey != null ? fuelKey : FuelKeyAccessor.NONE);
+                streamed = reader.read(page, columns);
+            }
+            long hash = page.checksum();
+            Metrics.BYTES_JSON.record(page.jsonLength());
+            int unchangedRows = ledger.rowsIfUnchanged(pnum - 1, hash, fuelKey);
+            if (unchangedRows >= 0) {
+                // Same text as last refresh: reuse its partial sum; a plain page is not even parsed
+                rowCount = unchangedRows;
+                pageSum = ledger.sum(pnum - 1);
+                columns = null;
+            } else {
+                // Token-by-token into reused columns, no JsonElement tree, when the page's shape
+                // was learned with this key and its values are of kinds learned with it
+                if (reader == null) {
+                    columns = PageColumns.forThread();
+                    reader = new FuelPageReader(fuelKey != null ? fuelKey : FuelKeyAccessor.NONE);
+                    streamed = reader.read(page, columns);
+                }
+                ExtractorRegistry.Profile known = streamed ? extractors.get(reader.shape()) : null;
+                if (known != null && fuelKey == null) {
+                    // A new query on a shape learned before: its key without detection
+                    fuelKey = known.key;
+                    accessors.put(cacheKey, fuelKey);
+                    Metrics.SHAPES_REUSED.incrementAndGet();
+                    reader = new FuelPageReader(fuelKey);
+                    reader.read(page, columns);
+                }
+                if (known != null && known.key == fuelKey && known.accepts(reader.valueKinds())
+                        && (columns.rows == 0 || columns.hits > 0)) {
+                    rowCount = columns.rows;
+                    pageSum = columns.sum();
+                } else {
+                    List<JsonObject> rows = iterPayloadRows(page.toTree());
+                    rowCount = rows.size();
+                    if (rows.isEmpty()) return false;
+                    fuelKey = learn(rows, fuelKey, streamed ? reader.shape() : ShapeSignature.of(rows),
+                            streamed ? reader.valueKinds() : 0, columns);
+                    pageSum = columns.sum();
+                }
+            }
+            if (reader != null) Metrics.PARSE_PAGE.record(Metrics.micros(t0));
+            if (rowCount == 0) return false;
+            ledger.record(pnum - 1, hash, rowCount, pageSum, fuelKey,
+                    response.headers().get("ETag"), response.headers().get("Last-Modified"));
+            if (columns != null) index.replacePage(pnum - 1, columns);
+            return keep(pnum, rowCount, pageSum);
+        }
+
+        /**
+         * Tree path for a shape not learned with the query's key: keeps the key while it still
+         * matches rows of the page, otherwise detects one; either way the shape is learned with
+         * it. A page with no fuel field at all keeps the key the query has, possibly none, and
+         * sums to 0. Leaves the page's rows in {@code columns} and returns the key.
+         */
+        private FuelKeyAccessor learn(List<JsonObject> rows, FuelKeyAccessor key, long shape, int kinds,
+                                      PageColumns columns) {
+            if (key == null || collectRows(rows, key, columns) == 0) {
+                // No key yet, or this page stopped matching the cached one: detect again
+                long d0 = System.nanoTime();
+                String detected = detectFuelKey(rows);
+                if (detected == null) {
+                    // fetchFuel fails the refresh only if no page of it yields a key
+                    if (key == null) {
+                        keyless = true;
+                        collectRows(rows, FuelKeyAccessor.NONE, columns);
+                    }
+                    return key;
+                }
+                key = extractors.intern(FuelKeyAccessor.compile(detected, rows));
+                Metrics.DETECT_KEY.record(Metrics.micros(d0));
+                accessors.put(cacheKey, key);
+                collectRows(rows, key, columns);
+            }
+            ExtractorRegistry.Profile before = extractors.get(shape);
+            if (extractors.learn(shape, key, kinds | key.kindsIn(rows)) != before) Metrics.SHAPES_LEARNED.incrementAndGet();
+            return key;
+        }
+
+        private synchronized boolean keep(int pnum, int rowCount, double pageSum) {
+            if (pnum > rows.length) {
+                int n = Math.max(pnum, rows.length * 2);
+                rows = Arrays.copyOf(rows, n);
+                sums = Arrays.copyOf(sums, n);
+            }
+            rows[pnum - 1] = rowCount;
+            sums[pnum - 1] = pageSum;
+            return rowCount >= psize;
+        }
+
+        private synchronized void captured(int pnum, FuelPage page) {
+            if (bodies == null) bodies = new FuelPage[Math.max(pnum, 8)];
+            else if (pnum > bodies.length) bodies = Arrays.copyOf(bodies, Math.max(pnum, bodies.length * 2));
+            bodies[pnum - 1] = page;
+        }
+
+        /** Writes the pages summed into {@code totalInput} to capture mode, with the query that fetched them. */
+        void capture(double totalInput, double kgPerUnit) throws IOException {
+            Properties m = new Properties();
+            putIfSet(m, "accId", accId);
+            putIfSet(m, "specIds", specIds);
+            putIfSet(m, "proj", proj);
+            putIfSet(m, "groups", groups);
+            putIfSet(m, "lang", lang);
+            m.setProperty("psize", Integer.toString(psize));
+            m.setProperty("noDefaultFields", Boolean.toString(noDefaultFields));
+            m.setProperty("lastloc", Boolean.toString(lastloc));
+            FuelKeyAccessor key = accessors.get(cacheKey);
+            if (key != null) m.setProperty("fuelKey", key.dotted);
+            m.setProperty("kgPerUnit", Double.toString(kgPerUnit));
+            m.setProperty("fuel", Double.toString(totalInput));
+            FuelPage[] pages;
+            synchronized (this) {
+                pages = new FuelPage[foldedPages];
+                if (bodies != null) System.arraycopy(bodies, 0, pages, 0, Math.min(foldedPages, bodies.length));
+                m.setProperty("pages", Integer.toString(foldedPages));
+                m.setProperty("rows", Long.toString(foldedRows));
+            }
+            capture.write(cacheKey, m, pages);
+        }
+
+        /** Rows over every accepted page, for the rows/s metric. */
+        synchronized long rowsTotal() {
+            long n = 0;
+            for (int r : rows) n += r;
+            return n;
+        }
+
+        /**
+         * Sums pages up to the first empty or short one, in page order whatever order they
+         * arrived in, so the compensated total has the same bits as a sequential loop's.
+         */
+        synchronized double total() {
+            CompensatedSum total = new CompensatedSum();
+            int pages = 0;
+            long folded = 0;
+            while (pages < rows.length && rows[pages] > 0) {
+                total.add(sums[pages]);
+                folded += rows[pages];
+                if (rows[pages++] < psize) break;
+            }
+            foldedPages = pages;
+            foldedRows = folded;
+            ledger.retain(pages);
+            index.retain(pages);
+            return total.value();
+        }
+    }
+
+    private static void putIfSet(Properties p, String key, String value) {
+        if (value != null) p.setProperty(key, value);
+    }
+
+    /* ------------ helpers (mirror Python) ------------ */
+
+    static List<JsonObject> iterPayloadRows(JsonElement payload) {
+        List<JsonObject> out = new ArrayList<JsonObject>();
+        if (payload == null) return out;
+
+        if (payload.isJsonArray()) {
+            for (JsonElement e : payload.getAsJsonArray())
+                if (e.isJsonObject()) out.add(e.getAsJsonObject());
+            return out;
+        }
+        if (payload.isJsonObject()) {
+            JsonObject o = payload.getAsJsonObject();
+            for (String k : Arrays.asList("result", "data")) {
+                if (o.has(k)) {
+                    JsonElement v = o.get(k);
+                    if (v.isJsonArray()) {
+                        for (JsonElement e : v.getAsJsonArray())
+                            if (e.isJsonObject()) out.add(e.getAsJsonObject());
+                        return out;
+                    } else if (v.isJsonObject()) {
+                        out.add(v.getAsJsonObject());
+                        return out;
+                    }
+                }
+            }
+            out.add(o);
+        }
+        return out;
+    }
+
+    /** Leaves of the first row that {@code proj} did not ask for, or null if it is minimal. */
+    static String checkProjection(FuelPage page, String proj) throws IOException {
+        List<JsonObject> rows = iterPayloadRows(page.toTree());
+        if (rows.isEmpty()) return null;
+        final List<String> fields = new ArrayList<String>();
+        for (String f : proj.split(",")) if (!f.trim().isEmpty()) fields.add(f.trim().toLowerCase(Locale.US));
+        fields.add(FuelPageReader.ID);
+        final List<String> extra = new ArrayList<String>();
+        walkKeys(rows.get(0), "", new WalkCb() {
+            public void onLeaf(String key, JsonElement v) {
+                String k = key.toLowerCase(Locale.US);
+                for (String f : fields) {
+                    if (k.equals(f) || k.endsWith("." + f) || k.startsWith(f + ".")) return;
+                }
+                if (!extra.contains(key)) extra.add(key);
+            }
+        });
+        if (extra.isEmpty()) return null;
+        StringBuilder b = new StringBuilder("payload: ").append(extra.size())
+                .append(" field(s) per row beyond proj=").append(proj).append(": ");
+        for (int i = 0; i < Math.min(5, extra.size()); i++) b.append(i == 0 ? "" : ", ").append(extra.get(i));
+        if (extra.size() > 5) b.append(", ...");
+        return b.toString();
+    }
+
+    /** Replaces {@code out} with (row id, value) per row, as {@link FuelPageReader} would; returns the hits. */
+    static int collectRows(List<JsonObject> rows, FuelKeyAccessor key, PageColumns out) {
+        out.clear();
+        for (JsonObject r : rows) {
+            JsonElement id = r.get(FuelPageReader.ID);
+            JsonPrimitive p = id != null && id.isJsonPrimitive() ? id.getAsJsonPrimitive() : null;
+            out.add(p != null && (p.isString() || p.isNumber()) ? p.getAsString() : null, key.get(r));
+        }
+        return out.hits;
+    }
+
+    static String detectFuelKey(List<JsonObject> sampleRows) {
+        Set<String> lowers = new HashSet<String>();
+        for (JsonObject row : sampleRows) {
+            walkKeys(row, "", new WalkCb() {
+                public void onLeaf(String key, JsonElement v) {
+                    if (key != null && key.length() > 0 && (v.isJsonPrimitive() || v.isJsonNull()))
+                        lowers.add(key.toLowerCase(Locale.US));
+                }
+            });
+        }
+        String[] preferred = new String[] {
+            "total_fuel_consumed","data.total_fuel_consumed","fuel_consumed",
+            "total_fuel","fuel_total","fuel"
+        };
+        for (String p : preferred) if (lowers.contains(p.toLowerCase(Locale.US))) return p;
+        for (String k : lowers) if (k.contains("fuel") && (k.contains("consum") || k.contains("total"))) return k;
+        return null;
+    }
+
+    private interface WalkCb { void onLeaf(String key, JsonElement v); }
+    private static void walkKeys(JsonElement elem, String prefix, WalkCb cb) {
+        if (elem == null) return;
+        if (elem.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> e : elem.getAsJsonObject().entrySet()) {
+                String nk = prefix.isEmpty() ? e.getKey() : prefix + "." + e.getKey();
+                walkKeys(e.getValue(), nk, cb);
+            }
+        } else if (elem.isJsonArray()) {
+            for (JsonElement v : elem.getAsJsonArray()) walkKeys(v, prefix, cb);
+        } else {
+            cb.onLeaf(prefix, elem);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.example.tco2display.legacy;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+
+/**
+ * The part of {@link JsonReader} that {@link FuelPageReader} walks a page with. Names and strings
+ * come back as CharSequences valid until the next call, so {@link Utf8JsonScanner} can hand out
+ * its own buffer instead of a new String per token.
+ */
+interface JsonTokens {
+
+    JsonToken peek() throws IOException;
+    void beginObject() throws IOException;
+    void endObject() throws IOException;
+    void beginArray() throws IOException;
+    void endArray() throws IOException;
+    boolean hasNext() throws IOException;
+    CharSequence nextName() throws IOException;
+    /** Text of a STRING or NUMBER token, the number as written. */
+    CharSequence nextString() throws IOException;
+    void skipValue() throws IOException;
+
+    /** Plain delegation, for pages the byte scanner leaves to Gson. */
+    final class Gson implements JsonTokens {
+        private final JsonReader in;
+
+        Gson(JsonReader in) { this.in = in; }
+
+        @Override public JsonToken peek() throws IOException { return in.peek(); }
+        @Override public void beginObject() throws IOException { in.beginObject(); }
+        @Override public void endObject() throws IOException { in.endObject(); }
+        @Override public void beginArray() throws IOException { in.beginArray(); }
+        @Override public void endArray() throws IOException { in.endArray(); }
+        @Override public boolean hasNext() throws IOException { return in.hasNext(); }
+        @Override public CharSequence nextName() throws IOException { return in.nextName(); }
+        @Override public CharSequence nextString() throws IOException { return in.nextString(); }
+        @Override public void skipValue() throws IOException { in.skipValue(); }
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.tco2display.legacy;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The fixed set of hot-path measurements, shared process-wide. Times are recorded in
+ * microseconds and shown in ms; see {@link Histogram} for the recording cost.
+ */
+public final class Metrics {
+
+    /** Call start to the end of the response body, per page request. */
+    static final Histogram NET_PAGE = new Histogram("net.page", "ms", 1000);
+    /** Response body bytes as they came off the wire (before gzip is undone), per page. */
+    static final Histogram BYTES_PAGE = new Histogram("bytes.page", "B", 1);
+    /** JSON text per page after inflating, whether OkHttp or the page reader inflates it. */
+    static final Histogram BYTES_JSON = new Histogram("bytes.json", "B", 1);
+    /** Stream or tree parse of one page; pages reused by checksum or 304 are not parsed. */
+    static final Histogram PARSE_PAGE = new Histogram("parse.page", "ms", 1000);
+    /** detectFuelKey plus compiling the accessor. */
+    static final Histogram DETECT_KEY = new Histogram("detect.key", "ms", 1000);
+    /** One query, first request to total. */
+    static final Histogram CYCLE = new Histogram("cycle", "ms", 1000);
+    static final Histogram ROWS_PER_SEC = new Histogram("rows/s", "", 1);
+    static final Histogram GC_PER_CYCLE = new Histogram("gc/cycle", "", 1);
+    static final Histogram ALLOC_PER_CYCLE = new Histogram("alloc/cycle", "KB", 1024);
+    /** SevenSegmentView.onDraw at full fidelity, and in low-power mode. */
+    static final Histogram DRAW_FRAME = new Histogram("draw.frame", "ms", 1000);
+    static final Histogram DRAW_FRAME_LOW = new Histogram("draw.low", "ms", 1000);
+    /** New connections only: TCP connect through TLS handshake. */
+    static final Histogram CONNECT = new Histogram("connect", "ms", 1000);
+    static final Histogram TLS_HANDSHAKE = new Histogram("tls.handshake", "ms", 1000);
+    /** Push mode: parsing and applying one delta frame, from its arrival on the socket thread. */
+    static final Histogram DELTA_FRAME = new Histogram("delta.frame", "ms", 1000);
+
+    /** Calls that got a pooled connection, and TLS handshakes that resumed a cached session. */
+    static final AtomicLong REUSED = new AtomicLong();
+    static final AtomicLong RESUMED = new AtomicLong();
+    /** Push mode: resyncs from the pages, and reconnects of the delta socket. */
+    static final AtomicLong RESYNCS = new AtomicLong();
+    static final AtomicLong RECONNECTS = new AtomicLong();
+    /** Payload shapes learned on the tree, and queries whose first page needed no detection. */
+    static final AtomicLong SHAPES_LEARNED = new AtomicLong();
+    static final AtomicLong SHAPES_REUSED = new AtomicLong();
+    /**
+     * Frames that were due (a value changed, or a roll is running), per rendering mode, and those
+     * that came more than 1.5 vsync periods after they were due.
+     */
+    static final AtomicLong FRAMES_FULL = new AtomicLong();
+    static final AtomicLong JANK_FULL = new AtomicLong();
+    static final AtomicLong FRAMES_LOW = new AtomicLong();
+    static final AtomicLong JANK_LOW = new AtomicLong();
+    /** "full", or "low" and why. */
+    static volatile String renderMode = "full";
+    static volatile String protocol = "-";
+    /** Latest payload warning from the repository, e.g. fields the projection did not ask for. */
+    static volatile String payloadWarning;
+
+    private static final Histogram[] ALL = {
+        NET_PAGE, BYTES_PAGE, BYTES_JSON, PARSE_PAGE, DETECT_KEY, CYCLE, ROWS_PER_SEC, GC_PER_CYCLE, ALLOC_PER_CYCLE, DRAW_FRAME,
+        DRAW_FRAME_LOW, CONNECT, TLS_HANDSHAKE, DELTA_FRAME
+    };
+
+    private static final long MAX_DUMP_BYTES = 256 * 1024;
+
+    private Metrics() {}
+
+    static long micros(long startNanos) { return (System.nanoTime() - startNanos) / 1000; }
+
+    /** For callers outside this package, e.g. the app's GC counters and onDraw. */
+    public static void recordGc(long collections, long allocatedBytes) {
+        GC_PER_CYCLE.record(collections);
+        ALLOC_PER_CYCLE.record(allocatedBytes);
+    }
+
+    public static void recordDraw(long startNanos, boolean lowPower) {
+        (lowPower ? DRAW_FRAME_LOW : DRAW_FRAME).record(micros(startNanos));
+    }
+
+    /**
+     * A frame drawn {@code waitNanos} after it was asked for (the invalidate, or the previous frame
+     * of a roll); janky past 1.5 vsync periods.
+     */
+    public static void recordFrame(long waitNanos, long vsyncNanos, boolean lowPower) {
+        (lowPower ? FRAMES_LOW : FRAMES_FULL).incrementAndGet();
+        if (waitNanos * 2 > vsyncNanos * 3) (lowPower ? JANK_LOW : JANK_FULL).incrementAndGet();
+    }
+
+    public static void setRenderMode(String mode) { renderMode = mode; }
+
+    /** One line per measurement, for the debug overlay. */
+    public static String summary() {
+        StringBuilder b = new StringBuilder(512);
+        for (Histogram h : ALL) b.append(h.summary()).append('\n');
+        b.append("bytes.total=").append(BYTES_PAGE.sum()).append(" json.total=").append(BYTES_JSON.sum()).append('\n');
+        b.append("conn new=").append(CONNECT.count()).append(" reused=").append(REUSED.get())
+                .append(" tls full=").append(TLS_HANDSHAKE.count() - RESUMED.get())
+                .append(" resumed=").append(RESUMED.get()).append(' ').append(protocol);
+        b.append("\nrender ").append(renderMode)
+                .append(" frames full=").append(FRAMES_FULL.get()).append(" jank=").append(JANK_FULL.get())
+                .append(" low=").append(FRAMES_LOW.get()).append(" jank=").append(JANK_LOW.get());
+        if (DELTA_FRAME.count() > 0 || RESYNCS.get() > 0) {
+            b.append("\ndelta frames=").append(DELTA_FRAME.count()).append(" resyncs=").append(RESYNCS.get())
+                    .append(" reconnects=").append(RECONNECTS.get());
+        }
+        b.append("\nkeys detected=").append(DETECT_KEY.count()).append(" shapes learned=").append(SHAPES_LEARNED.get())
+                .append(" reused=").append(SHAPES_REUSED.get());
+        String warning = payloadWarning;
+        if (warning != null) b.append('\n').append(warning);
+        return b.toString();
+    }
+
+    /** Appends a timestamped summary; a file past 256 KB is moved to {@code file.1} first. */
+    public static void dumpTo(File file) throws IOException {
+        if (file.length() > MAX_DUMP_BYTES) {
+            File old = new File(file.getPath() + ".1");
+            if (old.exists() && !old.delete()) throw new IOException("Could not delete " + old);
+            if (!file.renameTo(old)) throw new IOException("Could not rotate " + file);
+        }
+        Writer w = new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8");
+        try {
+            w.write("# " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US).format(new Date()) + "\n");
+            w.write(summary());
+            w.write("\n\n");
+        } finally {
+            w.close();
+        }
+    }
+}
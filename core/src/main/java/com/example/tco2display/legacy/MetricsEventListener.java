@@ -0,0 +1,78 @@
+package com.example.tco2display.legacy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+import okhttp3.Call;
+import okhttp3.Connection;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+
+/**
+ * Times each call from enqueue to the end of its response body (so time queued in the Dispatcher
+ * counts) and records the body bytes read off the wire. Also counts pooled-connection reuse and
+ * times new connections and their TLS handshakes, telling resumed sessions from full ones.
+ */
+public final class MetricsEventListener extends EventListener {
+
+    public static final Factory FACTORY = new Factory() {
+        @Override public EventListener create(Call call) { return new MetricsEventListener(); }
+    };
+
+    private long startNanos, connectNanos, tlsNanos;
+    private long tlsStartMillis;
+    private boolean connected;
+
+    private MetricsEventListener() {}
+
+    @Override public void callStart(Call call) {
+        startNanos = System.nanoTime();
+    }
+
+    @Override public void connectStart(Call call, InetSocketAddress address, Proxy proxy) {
+        connected = true;
+        connectNanos = System.nanoTime();
+    }
+
+    @Override public void secureConnectStart(Call call) {
+        tlsNanos = System.nanoTime();
+        tlsStartMillis = System.currentTimeMillis();
+    }
+
+    @Override public void secureConnectEnd(Call call, Handshake handshake) {
+        Metrics.TLS_HANDSHAKE.record(Metrics.micros(tlsNanos));
+    }
+
+    @Override public void connectEnd(Call call, InetSocketAddress address, Proxy proxy, Protocol protocol) {
+        Metrics.CONNECT.record(Metrics.micros(connectNanos));
+        if (protocol != null) Metrics.protocol = protocol.toString();
+    }
+
+    @Override public void connectionAcquired(Call call, Connection connection) {
+        if (!connected) {
+            Metrics.REUSED.incrementAndGet();
+            return;
+        }
+        // A resumed session was created by an earlier handshake, before this one started
+        Socket socket = connection.socket();
+        if (tlsStartMillis != 0 && socket instanceof SSLSocket) {
+            SSLSession session = ((SSLSocket) socket).getSession();
+            if (session != null && session.getCreationTime() < tlsStartMillis) Metrics.RESUMED.incrementAndGet();
+        }
+    }
+
+    @Override public void responseBodyEnd(Call call, long byteCount) {
+        Metrics.NET_PAGE.record(Metrics.micros(startNanos));
+        Metrics.BYTES_PAGE.record(byteCount);
+    }
+
+    @Override public void callFailed(Call call, IOException ioe) {
+        Metrics.NET_PAGE.record(Metrics.micros(startNanos));
+    }
+}
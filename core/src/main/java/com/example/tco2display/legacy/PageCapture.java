@@ -0,0 +1,112 @@
+package com.example.tco2display.legacy;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Capture mode: the raw body of every page of a refresh, written as received (a gzip body stays
+ * gzip), next to a manifest with the query and the total the app summed from those pages, so
+ * parsing and key detection can be replayed offline against real responses (see :replay).
+ *
+ * <p>One directory per refresh and query, written under a temporary name and renamed when
+ * complete; the oldest are deleted beyond {@code keep}. A page that came back 304 is written
+ * from the body last captured for it, so every directory replays on its own.
+ */
+final class PageCapture {
+
+    static final String MANIFEST = "query.properties";
+    static final String TMP_SUFFIX = ".tmp";
+
+    private final File dir;
+    private final int keep;
+    /** Latest body per query and page (index = pnum - 1), standing in for 304 pages. */
+    private final Map<String, FuelPage[]> lastBodies = new ConcurrentHashMap<String, FuelPage[]>();
+
+    PageCapture(File dir, int keep) {
+        this.dir = dir;
+        this.keep = Math.max(1, keep);
+    }
+
+    static String pageFile(int pnum, boolean gzip) {
+        return String.format(Locale.US, "page-%04d.json%s", pnum, gzip ? ".gz" : "");
+    }
+
+    /**
+     * Writes one refresh of {@code query}: {@code bodies[i]} is page i + 1, null where it was 304.
+     * Returns false, writing nothing, when a 304 page has never been captured with a body
+     * (the first refreshes after a snapshot restore).
+     */
+    synchronized boolean write(String query, Properties manifest, FuelPage[] bodies) throws IOException {
+        FuelPage[] last = lastBodies.get(query);
+        FuelPage[] pages = last == null ? new FuelPage[bodies.length]
+                : Arrays.copyOf(last, Math.max(last.length, bodies.length));
+        boolean complete = true;
+        for (int i = 0; i < bodies.length; i++) {
+            if (bodies[i] != null) pages[i] = bodies[i];
+            else if (pages[i] == null) complete = false;
+        }
+        lastBodies.put(query, pages);
+        if (!complete) return false;
+
+        long now = System.currentTimeMillis();
+        String name = String.format(Locale.US, "%013d-%08x", now, query.hashCode());
+        File tmp = new File(dir, name + TMP_SUFFIX);
+        if (!tmp.isDirectory() && !tmp.mkdirs()) throw new IOException("Could not create " + tmp);
+        for (int i = 0; i < bodies.length; i++) {
+            writeFile(new File(tmp, pageFile(i + 1, pages[i].gzip)), pages[i].body);
+        }
+        manifest.setProperty("capturedAt", Long.toString(now));
+        manifest.setProperty("charset", bodies.length > 0 ? pages[0].charset.name() : "UTF-8");
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(new File(tmp, MANIFEST)));
+        try {
+            manifest.store(out, "vehicle/fuel_consumed capture");
+        } finally {
+            out.close();
+        }
+        if (!tmp.renameTo(new File(dir, name))) throw new IOException("Could not rename " + tmp);
+        prune();
+        return true;
+    }
+
+    /** Deletes the oldest captures beyond {@code keep}, and leftovers of a write cut short. */
+    private void prune() {
+        File[] captures = dir.listFiles();
+        if (captures == null) return;
+        Arrays.sort(captures);   // names start with the capture time
+        int n = 0;
+        for (File f : captures) {
+            if (!f.isDirectory()) continue;
+            if (f.getName().endsWith(TMP_SUFFIX)) deleteCapture(f);
+            else n++;
+        }
+        for (int i = 0; i < captures.length && n > keep; i++) {
+            if (captures[i].isDirectory()) {
+                deleteCapture(captures[i]);
+                n--;
+            }
+        }
+    }
+
+    private static void deleteCapture(File capture) {
+        File[] files = capture.listFiles();
+        if (files != null) for (File f : files) f.delete();
+        capture.delete();
+    }
+
+    private static void writeFile(File f, byte[] bytes) throws IOException {
+        FileOutputStream out = new FileOutputStream(f);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.tco2display.legacy;
+
+import java.util.Arrays;
+
+/**
+ * One fuel page as columns, filled row by row by {@link FuelPageReader} (or collectRows on the
+ * tree path) and reused for every page a thread parses, so a refresh allocates no per-row
+ * objects past the decoder's own strings. Fuel values are a {@code double[]} with 0.0 where a
+ * row has none, which the sum absorbs without changing a bit; a bitset marks the rows that
+ * have one. Vehicle ids that are plain decimals are kept as longs, others as text.
+ */
+final class PageColumns {
+
+    /** {@link #ids} entry of a row whose id is text (or absent), see {@link #textId}. */
+    static final long TEXT_ID = -1L;
+
+    private static final ThreadLocal<PageColumns> PER_THREAD = new ThreadLocal<PageColumns>() {
+        @Override protected PageColumns initialValue() { return new PageColumns(); }
+    };
+
+    int rows;
+    /** Rows with a fuel value. */
+    int hits;
+    double[] values = new double[256];
+    long[] ids = new long[256];
+    /** Bit per row, set when the row has a fuel value. */
+    long[] present = new long[4];
+    private String[] textIds;          // allocated on the first non-decimal id
+    private PageColumns aside;
+
+    /** This thread's buffer, cleared; valid until the thread's next call. */
+    static PageColumns forThread() {
+        PageColumns c = PER_THREAD.get();
+        c.clear();
+        return c;
+    }
+
+    void clear() {
+        if (textIds != null) Arrays.fill(textIds, 0, rows, null);
+        Arrays.fill(present, 0, (rows + 63) >>> 6, 0L);
+        rows = hits = 0;
+    }
+
+    /** Appends a row; {@code value} is {@link FuelKeyAccessor#MISSING} when it has none. */
+    void add(CharSequence id, double value) {
+        long numeric = parseId(id);
+        add(numeric, numeric == TEXT_ID && id != null ? id.toString() : null, value);
+    }
+
+    /** Same, with the id already split by {@link #parseId}: {@code textId} only when that gave TEXT_ID. */
+    void add(long id, String textId, double value) {
+        int r = rows;
+        if (r == values.length) grow();
+        ids[r] = id;
+        if (textId != null) {
+            if (textIds == null) textIds = new String[values.length];
+            textIds[r] = textId;
+        }
+        if (FuelKeyAccessor.isMissing(value)) {
+            values[r] = 0.0;
+        } else {
+            values[r] = value;
+            present[r >>> 6] |= 1L << r;
+            hits++;
+        }
+        rows = r + 1;
+    }
+
+    boolean hasValue(int row) { return (present[row >>> 6] & (1L << row)) != 0; }
+
+    /** Id of a row whose {@link #ids} entry is {@link #TEXT_ID}; null if the row had none. */
+    String textId(int row) { return textIds == null ? null : textIds[row]; }
+
+    /** {@link CompensatedSum} of the values in row order; the rows without one add nothing. */
+    double sum() {
+        return CompensatedSum.of(values, rows);
+    }
+
+    /** A second buffer kept with this one, for payloads that carry rows under two members. */
+    PageColumns aside() {
+        if (aside == null) aside = new PageColumns();
+        aside.clear();
+        return aside;
+    }
+
+    /** Exchanges contents with {@code other}; both stay usable. */
+    void swap(PageColumns other) {
+        int r = rows, h = hits;
+        double[] v = values;
+        long[] i = ids, p = present;
+        String[] t = textIds;
+        rows = other.rows; hits = other.hits; values = other.values; ids = other.ids;
+        present = other.present; textIds = other.textIds;
+        other.rows = r; other.hits = h; other.values = v; other.ids = i;
+        other.present = p; other.textIds = t;
+    }
+
+    private void grow() {
+        int n = values.length * 2;
+        values = Arrays.copyOf(values, n);
+        ids = Arrays.copyOf(ids, n);
+        present = Arrays.copyOf(present, (n + 63) >>> 6);
+        if (textIds != null) textIds = Arrays.copyOf(textIds, n);
+    }
+
+    /**
+     * The id as a long when it is a plain non-negative decimal that prints back the same
+     * (no sign, no leading zero, no exponent), else {@link #TEXT_ID}; so "7" and 7 are one
+     * vehicle, as before, but "007" stays text.
+     */
+    static long parseId(CharSequence s) {
+        if (s == null) return TEXT_ID;
+        int n = s.length();
+        if (n == 0 || n > 19 || (n > 1 && s.charAt(0) == '0')) return TEXT_ID;
+        long v = 0;
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9') return TEXT_ID;
+            v = v * 10 + (c - '0');
+        }
+        return v < 0 ? TEXT_ID : v;   // 19 digits past Long.MAX_VALUE wrap negative
+    }
+}
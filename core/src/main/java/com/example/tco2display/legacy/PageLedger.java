@@ -0,0 +1,143 @@
+package com.example.tco2display.legacy;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+
+/**
+ * Per-page partial sums, body checksums and HTTP validators from the previous refresh of one
+ * query. A page that comes back 304 or byte-identical reuses its recorded sum instead of being parsed.
+ */
+final class PageLedger {
+
+    private long[] hashes = new long[8];
+    private int[] rows = new int[8];
+    private double[] sums = new double[8];
+    private FuelKeyAccessor[] keys = new FuelKeyAccessor[8];
+    private String[] etags = new String[8];
+    private String[] lastModified = new String[8];
+    private long[] changedAt = new long[8];     // wall clock of the last content change
+    private int pages;
+
+    /**
+     * A page's identity for reuse: CRC32 of its JSON text in the low word, Adler-32 in the high
+     * word. CRC32 catches any change within 32 consecutive bits, but scattered changes slip past
+     * it one time in 2^32, and a sum reused by mistake stays wrong until the page changes again;
+     * the second, unrelated check makes that a far rarer accident. Not proof against a server
+     * crafting collisions. Cheap enough to run on every page.
+     */
+    static long checksum(CRC32 crc, Adler32 adler) {
+        return adler.getValue() << 32 | crc.getValue();
+    }
+
+    /** Row count recorded for an identical page summed with the same key, or -1. */
+    synchronized int rowsIfUnchanged(int index, long hash, FuelKeyAccessor key) {
+        if (index >= pages || keys[index] != key || hashes[index] != hash) return -1;
+        return rows[index];
+    }
+
+    /** Row count recorded for a page summed with {@code key}, whatever its bytes; -1 if none. */
+    synchronized int rowsIfRecorded(int index, FuelKeyAccessor key) {
+        if (index >= pages || keys[index] != key) return -1;
+        return rows[index];
+    }
+
+    synchronized double sum(int index) { return sums[index]; }
+
+    /** ETag to send as If-None-Match, only while the recorded sum is still usable with {@code key}. */
+    synchronized String etag(int index, FuelKeyAccessor key) {
+        return index < pages && keys[index] == key ? etags[index] : null;
+    }
+
+    /** Last-Modified to send as If-Modified-Since, under the same rule as {@link #etag}. */
+    synchronized String lastModified(int index, FuelKeyAccessor key) {
+        return index < pages && keys[index] == key ? lastModified[index] : null;
+    }
+
+    synchronized void record(int index, long hash, int rowCount, double sum, FuelKeyAccessor key,
+                             String etag, String modified) {
+        if (index >= hashes.length) grow(Math.max(index + 1, hashes.length * 2));
+        if (index >= pages || hashes[index] != hash) changedAt[index] = System.currentTimeMillis();
+        hashes[index] = hash;
+        rows[index] = rowCount;
+        sums[index] = sum;
+        keys[index] = key;
+        etags[index] = etag;
+        lastModified[index] = modified;
+        if (index >= pages) pages = index + 1;
+    }
+
+    /** Drops pages past the end of this cycle (the fleet shrank or pages shifted). */
+    synchronized void retain(int pageCount) {
+        if (pageCount >= pages) return;
+        Arrays.fill(keys, pageCount, pages, null);
+        Arrays.fill(etags, pageCount, pages, null);
+        Arrays.fill(lastModified, pageCount, pages, null);
+        pages = pageCount;
+    }
+
+    synchronized int pages() { return pages; }
+
+    /** Wall-clock time any page last changed content, 0 with no pages. */
+    synchronized long lastChange() {
+        long last = 0;
+        for (int i = 0; i < pages; i++) last = Math.max(last, changedAt[i]);
+        return last;
+    }
+
+    /**
+     * Writes the leading pages recorded with {@code key}, which are the only ones reusable after
+     * a restore; returns how many.
+     */
+    synchronized int writeTo(DataOutputStream out, FuelKeyAccessor key) throws IOException {
+        int n = 0;
+        while (n < pages && keys[n] == key) n++;
+        out.writeInt(n);
+        for (int i = 0; i < n; i++) {
+            out.writeLong(hashes[i]);
+            out.writeInt(rows[i]);
+            out.writeDouble(sums[i]);
+            out.writeLong(changedAt[i]);
+            writeNullable(out, etags[i]);
+            writeNullable(out, lastModified[i]);
+        }
+        return n;
+    }
+
+    static PageLedger readFrom(DataInputStream in, FuelKeyAccessor key) throws IOException {
+        PageLedger l = new PageLedger();
+        int n = in.readInt();
+        if (n < 0) throw new IOException("Bad page count " + n);
+        for (int i = 0; i < n; i++) {
+            long hash = in.readLong();
+            int rowCount = in.readInt();
+            double sum = in.readDouble();
+            long changed = in.readLong();
+            l.record(i, hash, rowCount, sum, key, readNullable(in), readNullable(in));
+            l.changedAt[i] = changed;
+        }
+        return l;
+    }
+
+    static void writeNullable(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null) out.writeUTF(s);
+    }
+
+    static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private void grow(int n) {
+        hashes = Arrays.copyOf(hashes, n);
+        rows = Arrays.copyOf(rows, n);
+        sums = Arrays.copyOf(sums, n);
+        keys = Arrays.copyOf(keys, n);
+        etags = Arrays.copyOf(etags, n);
+        lastModified = Arrays.copyOf(lastModified, n);
+        changedAt = Arrays.copyOf(changedAt, n);
+    }
+}
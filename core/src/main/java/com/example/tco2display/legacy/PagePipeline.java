@@ -0,0 +1,110 @@
+package com.example.tco2display.legacy;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Keeps up to {@code window} page requests in flight through Call.enqueue, so OkHttp's
+ * Dispatcher still applies its per-host limit. Stops issuing once a page marks the end. Pages
+ * past the ones the last refresh had are only asked for once the last of those comes back full,
+ * so a fleet that fits in fewer pages than the window costs no requests for pages it lacks.
+ */
+final class PagePipeline {
+
+    interface Pages {
+        Call<FuelPage> call(int pnum);
+        /** Consumes one page off the network thread; false when it is the last one. */
+        boolean accept(int pnum, Response<FuelPage> response) throws Exception;
+    }
+
+    private final Pages pages;
+    private final int window;
+
+    // guarded by this
+    private final Map<Integer, Call<FuelPage>> inFlight = new HashMap<Integer, Call<FuelPage>>();
+    private int next;
+    private int end = Integer.MAX_VALUE;
+    private int reach = Integer.MAX_VALUE;   // last page issued before the one before it is known full
+    private Exception error;
+
+    PagePipeline(Pages pages, int window) {
+        this.pages = pages;
+        this.window = Math.max(1, window);
+    }
+
+    /**
+     * Blocks until every page up to the end has been accepted, or rethrows the first failure.
+     * {@code knownPages} is how many pages the last refresh had, 0 if unknown: the window does
+     * not open past them until the last one comes back full.
+     */
+    synchronized void run(int firstPage, int knownPages) throws Exception {
+        next = firstPage;
+        reach = knownPages > 0 ? Math.max(knownPages, firstPage) : Integer.MAX_VALUE;
+        fill();
+        try {
+            while (!inFlight.isEmpty()) wait();
+        } catch (InterruptedException e) {
+            cancelAbove(0);
+            throw e;
+        }
+        if (error != null) throw error;
+    }
+
+    /** Cancels every page in flight; {@link #run} (even one not started yet) throws "Canceled". */
+    synchronized void cancel() {
+        if (error == null) error = new IOException("Canceled");
+        cancelAbove(0);
+        notifyAll();
+    }
+
+    private void fill() {
+        while (error == null && inFlight.size() < window && next <= end && next <= reach) {
+            final int pnum = next++;
+            Call<FuelPage> call = pages.call(pnum);
+            inFlight.put(pnum, call);
+            call.enqueue(new Callback<FuelPage>() {
+                @Override public void onResponse(Call<FuelPage> c, Response<FuelPage> r) { done(pnum, r, null); }
+                @Override public void onFailure(Call<FuelPage> c, Throwable t) { done(pnum, null, t); }
+            });
+        }
+    }
+
+    private void done(int pnum, Response<FuelPage> response, Throwable failure) {
+        boolean wanted;
+        synchronized (this) { wanted = error == null && pnum <= end; }
+
+        boolean more = false;
+        Exception err = null;
+        if (wanted && failure == null) {
+            try { more = pages.accept(pnum, response); } catch (Exception e) { err = e; }
+        } else if (wanted) {
+            err = failure instanceof Exception ? (Exception) failure : new IOException(failure);
+        }
+
+        synchronized (this) {
+            inFlight.remove(pnum);
+            if (err != null && error == null && pnum <= end) {
+                error = err;
+                cancelAbove(0);
+            } else if (wanted && !more && pnum < end) {
+                end = pnum;
+                cancelAbove(end);             // pages past a short one are not needed
+            } else if (wanted && more && pnum >= reach) {
+                reach = Integer.MAX_VALUE;    // the fleet grew past last time's pages
+            }
+            fill();
+            notifyAll();
+        }
+    }
+
+    private void cancelAbove(int pnum) {
+        for (Map.Entry<Integer, Call<FuelPage>> e : inFlight.entrySet()) {
+            if (e.getKey() > pnum) e.getValue().cancel();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.tco2display.legacy;
+
+/**
+ * Decides when the display should drop to its low-power rendering, from what API 18 can report:
+ * the battery's charge, charger, temperature and health, plus power-save mode where the platform
+ * has one (API 21+). There is no thermal API before 29, so battery temperature stands in for the
+ * device's heat; a tablet charging 24/7 in a warm enclosure shows up there first. Both limits have
+ * hysteresis, so a reading hovering at a limit does not flip the mode back and forth.
+ * Not thread-safe; fed from the main thread.
+ */
+final class PowerPressure {
+
+    static final int HOT_TENTHS_C = 450;        // most chargers stop at 45 C
+    static final int COOLED_TENTHS_C = 410;
+    static final int LOW_PERCENT = 15;          // on battery only
+    static final int RECOVERED_PERCENT = 25;
+
+    private boolean hot, drained;
+    private String reason;
+
+    /**
+     * Feeds one reading; returns true if the mode or its reason changed.
+     *
+     * @param percent     charge 0..100, or -1 if unknown
+     * @param charging    on a charger, whatever its kind
+     * @param tempTenthsC battery temperature in tenths of a degree, Integer.MIN_VALUE if unknown
+     * @param overheat    the battery reports BATTERY_HEALTH_OVERHEAT
+     */
+    boolean update(int percent, boolean charging, int tempTenthsC, boolean overheat, boolean powerSave) {
+        hot = tempTenthsC >= (hot ? COOLED_TENTHS_C : HOT_TENTHS_C);
+        drained = !charging && percent >= 0 && percent <= (drained ? RECOVERED_PERCENT : LOW_PERCENT);
+        String r = overheat ? "battery overheat"
+                : hot ? "battery hot"
+                : drained ? "battery low"
+                : powerSave ? "power save" : null;
+        boolean changed = r == null ? reason != null : !r.equals(reason);
+        reason = r;
+        return changed;
+    }
+
+    boolean low() { return reason != null; }
+
+    /** Why the display is in low-power mode, null when it is not. */
+    String reason() { return reason; }
+}
@@ -0,0 +1,132 @@
+package com.example.tco2display.legacy;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Totals several {@link QueryProfile}s in one refresh. Profiles on the same account, projection
+ * and groups are split by spec id into regions of identical membership, so a spec id shared by
+ * several profiles is fetched once; a lone profile stays one query with its own spec list.
+ * Regions run concurrently through the repository, hence through one OkHttp client: its
+ * connection pool and Dispatcher limits are shared by every profile.
+ */
+public final class ProfileFanOut {
+
+    private static final class Region {
+        final String accId, specIds, proj, groups;
+        final int[] profiles;          // members, ascending; the first one's unit converts fleet totals
+        Region(String accId, String specIds, String proj, String groups, int[] profiles) {
+            this.accId = accId;
+            this.specIds = specIds;
+            this.proj = proj;
+            this.groups = groups;
+            this.profiles = profiles;
+        }
+    }
+
+    private final IntanglesRepository repo;
+    private final List<QueryProfile> profiles;
+    private final Executor executor;
+    private final Region[] regions;
+
+    /** {@code executor} only blocks on regions past the first, which runs on the calling thread. */
+    public ProfileFanOut(IntanglesRepository repo, List<QueryProfile> profiles, Executor executor) {
+        if (profiles.isEmpty()) throw new IllegalArgumentException("No query profiles");
+        this.repo = repo;
+        this.profiles = new ArrayList<QueryProfile>(profiles);
+        this.executor = executor;
+        this.regions = split(this.profiles);
+    }
+
+    public int queries() { return regions.length; }
+
+    public FleetTotals fetch(final String token, final int psize, final String lang,
+                             final boolean noDefaultFields, final boolean lastloc) throws Exception {
+        List<FutureTask<Double>> tasks = new ArrayList<FutureTask<Double>>(regions.length);
+        for (final Region r : regions) {
+            final double kgPerUnit = profiles.get(r.profiles[0]).kgPerUnit;
+            tasks.add(new FutureTask<Double>(new Callable<Double>() {
+                @Override public Double call() throws Exception {
+                    return repo.fetchFuel(token, r.accId, r.specIds, psize, lang, noDefaultFields,
+                            r.proj, r.groups, lastloc, kgPerUnit);
+                }
+            }));
+        }
+        for (int i = 1; i < tasks.size(); i++) executor.execute(tasks.get(i));
+        tasks.get(0).run();
+
+        // Wait for every region, then report the first failure in region order
+        double[] fuel = new double[regions.length];
+        Exception error = null;
+        for (int i = 0; i < tasks.size(); i++) {
+            try {
+                fuel[i] = tasks.get(i).get();
+            } catch (ExecutionException e) {
+                if (error == null) error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+        }
+        if (error != null) throw error;
+
+        // Region order, not completion order, so the same totals give the same bits every run
+        CompensatedSum fleet = new CompensatedSum();
+        CompensatedSum[] sums = new CompensatedSum[profiles.size()];
+        for (int p = 0; p < sums.length; p++) sums[p] = new CompensatedSum();
+        for (int i = 0; i < regions.length; i++) {
+            int[] members = regions[i].profiles;
+            fleet.add(IntanglesRepository.toTco2(fuel[i], profiles.get(members[0]).kgPerUnit));
+            for (int p : members) sums[p].add(IntanglesRepository.toTco2(fuel[i], profiles.get(p).kgPerUnit));
+        }
+        double[] perProfile = new double[sums.length];
+        for (int p = 0; p < sums.length; p++) perProfile[p] = sums[p].value();
+        String[] names = new String[profiles.size()];
+        for (int p = 0; p < names.length; p++) names[p] = profiles.get(p).name;
+        return new FleetTotals(fleet.value(), regions.length, names, perProfile);
+    }
+
+    private static Region[] split(List<QueryProfile> profiles) {
+        // (accId, proj, groups) -> spec id -> member profiles, both in first-seen order
+        Map<String, Map<String, BitSet>> scopes = new LinkedHashMap<String, Map<String, BitSet>>();
+        Map<String, QueryProfile> scopeSample = new LinkedHashMap<String, QueryProfile>();
+        for (int p = 0; p < profiles.size(); p++) {
+            QueryProfile q = profiles.get(p);
+            String scope = q.accId + "|" + q.proj + "|" + q.groups;
+            Map<String, BitSet> specs = scopes.get(scope);
+            if (specs == null) {
+                specs = new LinkedHashMap<String, BitSet>();
+                scopes.put(scope, specs);
+                scopeSample.put(scope, q);
+            }
+            for (String id : q.specIds) {
+                BitSet members = specs.get(id);
+                if (members == null) { members = new BitSet(); specs.put(id, members); }
+                members.set(p);
+            }
+        }
+
+        List<Region> out = new ArrayList<Region>();
+        for (Map.Entry<String, Map<String, BitSet>> scope : scopes.entrySet()) {
+            QueryProfile q = scopeSample.get(scope.getKey());
+            // spec ids with the same members share one query
+            Map<BitSet, StringBuilder> byMembers = new LinkedHashMap<BitSet, StringBuilder>();
+            for (Map.Entry<String, BitSet> spec : scope.getValue().entrySet()) {
+                StringBuilder ids = byMembers.get(spec.getValue());
+                if (ids == null) byMembers.put(spec.getValue(), new StringBuilder(spec.getKey()));
+                else ids.append(',').append(spec.getKey());
+            }
+            for (Map.Entry<BitSet, StringBuilder> region : byMembers.entrySet()) {
+                BitSet members = region.getKey();
+                int[] idx = new int[members.cardinality()];
+                for (int i = 0, p = members.nextSetBit(0); p >= 0; p = members.nextSetBit(p + 1)) idx[i++] = p;
+                out.add(new Region(q.accId, region.getValue().toString(), q.proj, q.groups, idx));
+            }
+        }
+        return out.toArray(new Region[out.size()]);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.tco2display.legacy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/** One fleet to total: which account and spec ids to query, and how its fuel converts to TCO2. */
+public final class QueryProfile {
+
+    public final String name;
+    public final String accId;
+    /** Spec ids in their configured order, trimmed and without duplicates. */
+    public final List<String> specIds;
+    public final String proj;
+    public final String groups;
+    public final String lngUnit;
+    public final double lngDensity;
+    final double kgPerUnit;
+
+    public QueryProfile(String name, String accId, String specIds, String proj, String groups,
+                        String lngUnit, double lngDensity) {
+        this.name = name;
+        this.accId = accId;
+        Set<String> ids = new LinkedHashSet<String>();
+        for (String id : specIds.split(",")) {
+            id = id.trim();
+            if (!id.isEmpty()) ids.add(id);
+        }
+        if (ids.isEmpty()) throw new IllegalArgumentException("No spec ids in profile " + name);
+        this.specIds = new ArrayList<String>(ids);
+        this.proj = proj;
+        this.groups = groups == null ? "" : groups;
+        this.lngUnit = lngUnit;
+        this.lngDensity = lngDensity;
+        this.kgPerUnit = IntanglesRepository.kgPerUnit(lngUnit, lngDensity);
+    }
+
+    /**
+     * Parses {@code name|accId|specIds|proj|lngUnit|lngDensity[|groups]} entries separated by
+     * ';' (specIds comma-separated), the format of the INTANGLES_PROFILES build property.
+     */
+    public static List<QueryProfile> parseList(String spec) {
+        List<QueryProfile> out = new ArrayList<QueryProfile>();
+        for (String entry : spec.split(";")) {
+            if (entry.trim().isEmpty()) continue;
+            String[] f = entry.split("\\|", -1);
+            if (f.length != 6 && f.length != 7)
+                throw new IllegalArgumentException("Bad profile (want 6 or 7 '|' fields): " + entry);
+            out.add(new QueryProfile(f[0].trim(), f[1].trim(), f[2], f[3].trim(),
+                    f.length == 7 ? f[6].trim() : "", f[4].trim(), Double.parseDouble(f[5].trim())));
+        }
+        return out;
+    }
+}
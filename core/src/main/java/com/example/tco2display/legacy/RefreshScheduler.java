@@ -0,0 +1,74 @@
+package com.example.tco2display.legacy;
+
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Picks the delay before the next refresh. Keeps a steady start-to-start period while the total
+ * moves, stretches it while the total sits still, and backs off with jitter on failures.
+ * Not thread-safe; driven from the UI thread after each cycle completes, so cycles never overlap.
+ */
+final class RefreshScheduler {
+
+    private static final long MIN_GAP_MS = 250L;
+
+    private final long baseMs, maxIdleMs, maxBackoffMs;
+    private final int idleAfter;
+    private final Random jitter = new Random();
+
+    private double lastValue = Double.NaN;
+    private int unchanged, failures;
+
+    // last cycle, for tuning
+    private long lastFetchMs, lastDelayMs;
+    private boolean lastOk;
+
+    /**
+     * @param baseMs       period while the total is moving
+     * @param maxIdleMs    longest period once the total has not moved for {@code idleAfter} cycles
+     * @param maxBackoffMs longest wait after consecutive failures
+     */
+    RefreshScheduler(long baseMs, long maxIdleMs, long maxBackoffMs, int idleAfter) {
+        this.baseMs = baseMs;
+        this.maxIdleMs = maxIdleMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.idleAfter = idleAfter;
+    }
+
+    /** Delay from now (end of the cycle) until the next one should start. */
+    long onSuccess(double value, long fetchMs) {
+        failures = 0;
+        if (value == lastValue) unchanged++;
+        else unchanged = 0;
+        lastValue = value;
+
+        long period = baseMs;
+        if (unchanged >= idleAfter) period = Math.min(maxIdleMs, baseMs << Math.min(16, unchanged - idleAfter + 1));
+        return record(true, fetchMs, Math.max(MIN_GAP_MS, period - fetchMs));
+    }
+
+    long onFailure(long fetchMs) {
+        failures++;
+        long backoff = Math.min(maxBackoffMs, baseMs << Math.min(16, failures));
+        long half = backoff / 2;
+        return record(false, fetchMs, half + (long) (jitter.nextDouble() * half));
+    }
+
+    /** Forget idle/backoff state, e.g. when the display comes back to the foreground. */
+    void reset() {
+        unchanged = failures = 0;
+        lastValue = Double.NaN;
+    }
+
+    String describe() {
+        return String.format(Locale.US, "%s in %d ms, next in %d ms (unchanged=%d, failures=%d)",
+                lastOk ? "ok" : "failed", lastFetchMs, lastDelayMs, unchanged, failures);
+    }
+
+    private long record(boolean ok, long fetchMs, long delayMs) {
+        lastOk = ok;
+        lastFetchMs = fetchMs;
+        lastDelayMs = delayMs;
+        return delayMs;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.tco2display.legacy;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonToken;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 64-bit FNV-1a hash of a page's shape: the member names of its first row, in document order,
+ * with nested objects followed and arrays and leaves marked but not opened. Values, leaf types
+ * and array lengths are left out, so rows of one schema agree however their vehicles differ.
+ * {@link FuelPageReader} hashes the stream as it reads; {@link #of} hashes the tree the same way.
+ * A row that repeats a member name is the exception: the tree keeps one member, the stream hashes
+ * both. That is harmless, as only payloads the reader declines are learned under {@link #of}, and
+ * those are never looked up.
+ */
+final class ShapeSignature {
+
+    /** No rows; also where each row's hash starts. */
+    static final long EMPTY = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private ShapeSignature() {}
+
+    /** Folds in a member's name; {@link #value} follows. Separate, as a scanner's name dies at its next peek. */
+    static long name(long h, CharSequence name) {
+        int n = name.length();
+        h = mix(h, n);
+        for (int i = 0; i < n; i++) h = mix(h, name.charAt(i));
+        return h;
+    }
+
+    /** Folds in whether the member's value is an object, an array or a leaf. */
+    static long value(long h, JsonToken value) {
+        return mix(h, value == JsonToken.BEGIN_OBJECT ? '{' : value == JsonToken.BEGIN_ARRAY ? '[' : ':');
+    }
+
+    /** Closes an object, so a member after it is not mistaken for one inside it. */
+    static long end(long h) { return mix(h, '}'); }
+
+    /** Shape of the first of {@code rows}, as iterPayloadRows returns them. */
+    static long of(List<JsonObject> rows) {
+        return rows.isEmpty() ? EMPTY : of(EMPTY, rows.get(0));
+    }
+
+    private static long of(long h, JsonObject o) {
+        for (Map.Entry<String, JsonElement> e : o.entrySet()) {
+            JsonElement v = e.getValue();
+            h = value(name(h, e.getKey()), v.isJsonObject() ? JsonToken.BEGIN_OBJECT
+                    : v.isJsonArray() ? JsonToken.BEGIN_ARRAY : JsonToken.STRING);
+            if (v.isJsonObject()) h = of(h, v.getAsJsonObject());
+        }
+        return end(h);
+    }
+
+    private static long mix(long h, int c) { return (h ^ c) * PRIME; }
+}
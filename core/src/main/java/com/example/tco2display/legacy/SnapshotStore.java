@@ -0,0 +1,115 @@
+package com.example.tco2display.legacy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Last displayed total plus the repository's learned shapes, keys and page ledgers, in one small
+ * binary file.
+ * Saves write a temp file, fsync it and rename it over the old one, so a crash or power cut
+ * leaves either the previous snapshot or the new one, never half of each.
+ *
+ * <p>The header (save time and total) comes first so the UI can show the last value, and how
+ * old it is, with a tiny read before the rest is restored off the main thread.
+ */
+final class SnapshotStore {
+
+    private static final int MAGIC = 0x54434F32;   // "TCO2"
+    private static final int VERSION = 7;   // 2: per-vehicle index after each ledger; 3: learned shapes first;
+                                            // 4: no save time, no per-page change times
+                                            // 5: no TCO2 in the per-vehicle index
+                                            // 6: TCO2 back in the per-vehicle index, for topVehicles
+                                            // 7: save time and per-page change times back
+
+    private final File file;
+    private final File tmp;
+
+    private double lastTotal = Double.NaN;
+    private long savedAt;
+
+    SnapshotStore(File file) {
+        this.file = file;
+        this.tmp = new File(file.getPath() + ".tmp");
+    }
+
+    /** Total from the last snapshot, or NaN if there is none or it is unreadable. */
+    synchronized double readTotal() {
+        DataInputStream in = null;
+        try {
+            in = open();
+            if (in == null) return Double.NaN;
+            savedAt = in.readLong();
+            return lastTotal = in.readDouble();
+        } catch (IOException e) {
+            return Double.NaN;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    /** Wall-clock time of the snapshot last read or written, 0 if none. */
+    synchronized long savedAt() { return savedAt; }
+
+    /**
+     * Restores keys and ledgers into {@code repo}, leaving out the ledgers of queries whose pages
+     * last changed before {@code oldestChange}; returns false if there was nothing usable.
+     */
+    synchronized boolean restoreInto(IntanglesRepository repo, long oldestChange) {
+        DataInputStream in = null;
+        try {
+            in = open();
+            if (in == null) return false;
+            savedAt = in.readLong();
+            lastTotal = in.readDouble();
+            repo.readState(in, oldestChange);
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    synchronized void save(double total, IntanglesRepository repo) throws IOException {
+        long now = System.currentTimeMillis();
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(now);
+            out.writeDouble(total);
+            repo.writeState(out);
+            out.flush();
+            fos.getFD().sync();
+        } finally {
+            fos.close();
+        }
+        if (!tmp.renameTo(file)) throw new IOException("Could not replace " + file);
+        lastTotal = total;
+        savedAt = now;
+    }
+
+    synchronized double lastTotal() { return lastTotal; }
+
+    private DataInputStream open() throws IOException {
+        if (!file.isFile()) return null;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            in.close();
+            return null;
+        }
+        return in;
+    }
+
+    private static void closeQuietly(DataInputStream in) {
+        if (in == null) return;
+        try { in.close(); } catch (IOException ignored) {}
+    }
+}
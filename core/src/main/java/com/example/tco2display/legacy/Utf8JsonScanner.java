@@ -0,0 +1,422 @@
+package com.example.tco2display.legacy;
+
+import com.google.gson.stream.JsonToken;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * {@link JsonTokens} straight off a page's UTF-8 bytes, inflating gzip bodies itself, with no
+ * allocation per token: names and strings are decoded into one reused char buffer, skipped
+ * strings are never decoded, and the inflater and its window are reused for every page.
+ *
+ * <p>It only vouches for plain, well-formed JSON in well-formed UTF-8. Anything else (another
+ * charset, a byte-order mark, an escape or byte sequence it does not expect, a syntax error, a
+ * gzip member it cannot check) throws {@link Fallback}, and the caller re-reads the page with
+ * Gson, which then decides and reports exactly as it always did. One per thread.
+ */
+final class Utf8JsonScanner implements JsonTokens {
+
+    /** Preallocated and without a stack trace: the page is left to Gson. */
+    static final class Fallback extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Fallback() { super("page left to Gson"); }
+        @Override public synchronized Throwable fillInStackTrace() { return this; }
+    }
+
+    private static final Fallback FALLBACK = new Fallback();
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final ThreadLocal<Utf8JsonScanner> PER_THREAD = new ThreadLocal<Utf8JsonScanner>() {
+        @Override protected Utf8JsonScanner initialValue() { return new Utf8JsonScanner(); }
+    };
+
+    // peeked tokens
+    private static final int NONE = 0, BEGIN_OBJECT = 1, END_OBJECT = 2, BEGIN_ARRAY = 3, END_ARRAY = 4,
+            NAME = 5, STRING = 6, NUMBER = 7, TRUE = 8, FALSE = 9, NULL = 10, END_DOCUMENT = 11;
+    // scopes, as in JsonReader
+    private static final int EMPTY_ARRAY = 1, NONEMPTY_ARRAY = 2, EMPTY_OBJECT = 3, DANGLING_NAME = 4,
+            NONEMPTY_OBJECT = 5, EMPTY_DOCUMENT = 6, NONEMPTY_DOCUMENT = 7;
+
+    // input: the body itself, or the window the inflater fills
+    private byte[] in;
+    private int pos, limit;
+    private boolean gzip;
+    private FuelPage page;
+    private byte[] body;
+    private final byte[] window = new byte[8192];
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final Adler32 adler = new Adler32();    // with crc, the page's checksum once inflated
+
+    private int[] stack = new int[32];
+    private int depth;
+    private int peeked;
+    /** The last name, string or number; what nextName/nextString hand out. */
+    private final Text text = new Text();
+
+    private Utf8JsonScanner() {}
+
+    static Utf8JsonScanner forThread() { return PER_THREAD.get(); }
+
+    /** Starts on {@code page}; false if it is not something this scanner reads (Gson reads it then). */
+    boolean reset(FuelPage page) {
+        if (!UTF_8.equals(page.charset)) return false;
+        this.page = page;
+        body = page.body;
+        gzip = page.gzip;
+        depth = 0;
+        stack[depth++] = EMPTY_DOCUMENT;
+        peeked = NONE;
+        if (!gzip) {
+            in = body;
+            pos = 0;
+            limit = body.length;
+            return true;
+        }
+        int start = gzipHeader(body);
+        if (start < 0) return false;
+        inflater.reset();
+        inflater.setInput(body, start, body.length - 8 - start);
+        crc.reset();
+        adler.reset();
+        in = window;
+        pos = limit = 0;
+        return true;
+    }
+
+    /* ------------ JsonTokens ------------ */
+
+    @Override public JsonToken peek() {
+        switch (peekToken()) {
+            case BEGIN_OBJECT: return JsonToken.BEGIN_OBJECT;
+            case END_OBJECT: return JsonToken.END_OBJECT;
+            case BEGIN_ARRAY: return JsonToken.BEGIN_ARRAY;
+            case END_ARRAY: return JsonToken.END_ARRAY;
+            case NAME: return JsonToken.NAME;
+            case STRING: return JsonToken.STRING;
+            case NUMBER: return JsonToken.NUMBER;
+            case TRUE: case FALSE: return JsonToken.BOOLEAN;
+            case NULL: return JsonToken.NULL;
+            default: return JsonToken.END_DOCUMENT;
+        }
+    }
+
+    @Override public void beginObject() { expect(BEGIN_OBJECT); push(EMPTY_OBJECT); }
+    @Override public void endObject() { expect(END_OBJECT); depth--; }
+    @Override public void beginArray() { expect(BEGIN_ARRAY); push(EMPTY_ARRAY); }
+    @Override public void endArray() { expect(END_ARRAY); depth--; }
+
+    @Override public boolean hasNext() {
+        int p = peekToken();
+        return p != END_OBJECT && p != END_ARRAY && p != END_DOCUMENT;
+    }
+
+    @Override public CharSequence nextName() {
+        expect(NAME);
+        readString(true);
+        return text;
+    }
+
+    @Override public CharSequence nextString() {
+        int p = peekToken();
+        if (p == STRING) readString(true);
+        else if (p != NUMBER) throw FALLBACK;   // the number's text was read while peeking
+        peeked = NONE;
+        return text;
+    }
+
+    @Override public void skipValue() {
+        int count = 0;
+        do {
+            int p = peekToken();
+            peeked = NONE;
+            switch (p) {
+                case BEGIN_ARRAY: push(EMPTY_ARRAY); count++; break;
+                case BEGIN_OBJECT: push(EMPTY_OBJECT); count++; break;
+                case END_ARRAY: case END_OBJECT: depth--; count--; break;
+                case NAME: case STRING: readString(false); break;
+                case END_DOCUMENT: throw FALLBACK;
+                default: break;                       // numbers and literals are consumed by peeking
+            }
+        } while (count > 0);
+    }
+
+    /* ------------ tokens ------------ */
+
+    private void expect(int token) {
+        if (peekToken() != token) throw FALLBACK;
+        peeked = NONE;
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) stack = Arrays.copyOf(stack, depth * 2);
+        stack[depth++] = scope;
+    }
+
+    private int peekToken() {
+        return peeked != NONE ? peeked : (peeked = doPeek());
+    }
+
+    private int doPeek() {
+        int scope = stack[depth - 1];
+        int c;
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                break;
+            case NONEMPTY_ARRAY:
+                c = nextNonWhitespace();
+                if (c == ']') return END_ARRAY;
+                if (c != ',') throw FALLBACK;
+                break;
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                stack[depth - 1] = DANGLING_NAME;
+                c = nextNonWhitespace();
+                if (c == '}' && scope == EMPTY_OBJECT) return END_OBJECT;
+                if (scope == NONEMPTY_OBJECT) {
+                    if (c == '}') return END_OBJECT;
+                    if (c != ',') throw FALLBACK;
+                    c = nextNonWhitespace();
+                }
+                if (c != '"') throw FALLBACK;
+                return NAME;                          // the name itself is read by nextName
+            case DANGLING_NAME:
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                if (nextNonWhitespace() != ':') throw FALLBACK;
+                break;
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                break;
+            default:                                  // NONEMPTY_DOCUMENT: only whitespace may follow
+                if (nextNonWhitespace() == -1) return END_DOCUMENT;
+                throw FALLBACK;
+        }
+
+        c = nextNonWhitespace();
+        switch (c) {
+            case ']':
+                if (scope == EMPTY_ARRAY) return END_ARRAY;
+                throw FALLBACK;
+            case '"': return STRING;                  // read or skipped when consumed
+            case '{': return BEGIN_OBJECT;
+            case '[': return BEGIN_ARRAY;
+            case 't': return keyword("rue", TRUE);
+            case 'f': return keyword("alse", FALSE);
+            case 'n': return keyword("ull", NULL);
+            default: return number(c);
+        }
+    }
+
+    private int keyword(String rest, int token) {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) throw FALLBACK;
+        }
+        if (!isDelimiter(peekByte())) throw FALLBACK;
+        return token;
+    }
+
+    /** -?(0|[1-9][0-9]*)(\.[0-9]+)?([eE][+-]?[0-9]+)? into {@link #text}, as written. */
+    private int number(int c) {
+        Text t = text;
+        t.len = 0;
+        if (c == '-') {
+            t.add(c);
+            c = read();
+        }
+        if (c == '0') {
+            t.add(c);
+        } else if (c >= '1' && c <= '9') {
+            t.add(c);
+            while (isDigit(peekByte())) t.add(read());
+        } else {
+            throw FALLBACK;
+        }
+        if (peekByte() == '.') {
+            t.add(read());
+            if (!isDigit(peekByte())) throw FALLBACK;
+            while (isDigit(peekByte())) t.add(read());
+        }
+        int p = peekByte();
+        if (p == 'e' || p == 'E') {
+            t.add(read());
+            p = peekByte();
+            if (p == '+' || p == '-') t.add(read());
+            if (!isDigit(peekByte())) throw FALLBACK;
+            while (isDigit(peekByte())) t.add(read());
+        }
+        if (!isDelimiter(peekByte())) throw FALLBACK;
+        return NUMBER;
+    }
+
+    /** Rest of a string after its opening quote; decoded into {@link #text} only if {@code keep}. */
+    private void readString(boolean keep) {
+        Text t = text;
+        t.len = 0;
+        for (;;) {
+            int c = read();
+            if (c == '"') return;
+            if (c < 0x20) throw FALLBACK;             // end of input, or a raw control character
+            if (c == '\\') {
+                c = escape();
+                if (keep) t.add(c);
+            } else if (c < 0x80) {
+                if (keep) t.add(c);
+            } else if (keep) {
+                decode(c, t);
+            }
+            // a skipped string's other bytes never matter: no UTF-8 byte sequence can hide a quote
+        }
+    }
+
+    private int escape() {
+        int c = read();
+        switch (c) {
+            case '"': case '\\': case '/': return c;
+            case 'b': return '\b';
+            case 'f': return '\f';
+            case 'n': return '\n';
+            case 'r': return '\r';
+            case 't': return '\t';
+            case 'u':
+                int v = 0;
+                for (int i = 0; i < 4; i++) {
+                    int h = read();
+                    if (h >= '0' && h <= '9') v = v * 16 + h - '0';
+                    else if (h >= 'a' && h <= 'f') v = v * 16 + h - 'a' + 10;
+                    else if (h >= 'A' && h <= 'F') v = v * 16 + h - 'A' + 10;
+                    else throw FALLBACK;
+                }
+                return v;
+            default:
+                throw FALLBACK;
+        }
+    }
+
+    /** One multi-byte UTF-8 sequence from its lead byte; only the shortest, valid forms. */
+    private void decode(int lead, Text t) {
+        if (lead < 0xC2) throw FALLBACK;
+        if (lead < 0xE0) {
+            t.add(((lead & 0x1F) << 6) | continuation(0x80, 0xBF));
+        } else if (lead < 0xF0) {
+            int c1 = continuation(lead == 0xE0 ? 0xA0 : 0x80, lead == 0xED ? 0x9F : 0xBF);
+            t.add(((lead & 0x0F) << 12) | (c1 << 6) | continuation(0x80, 0xBF));
+        } else if (lead < 0xF5) {
+            int c1 = continuation(lead == 0xF0 ? 0x90 : 0x80, lead == 0xF4 ? 0x8F : 0xBF);
+            int c2 = continuation(0x80, 0xBF);
+            int cp = ((lead & 0x07) << 18) | (c1 << 12) | (c2 << 6) | continuation(0x80, 0xBF);
+            t.add(0xD800 + ((cp - 0x10000) >>> 10));
+            t.add(0xDC00 + (cp & 0x3FF));
+        } else {
+            throw FALLBACK;
+        }
+    }
+
+    private int continuation(int min, int max) {
+        int b = read();
+        if (b < min || b > max) throw FALLBACK;
+        return b & 0x3F;
+    }
+
+    private static boolean isDigit(int c) { return c >= '0' && c <= '9'; }
+
+    private static boolean isDelimiter(int c) {
+        return c == -1 || c == ',' || c == ']' || c == '}' || c == ' ' || c == '\n' || c == '\r' || c == '\t';
+    }
+
+    /* ------------ bytes ------------ */
+
+    private int nextNonWhitespace() {
+        for (;;) {
+            int c = read();
+            if (c != ' ' && c != '\n' && c != '\r' && c != '\t') return c;
+        }
+    }
+
+    private int read() {
+        int c = peekByte();
+        if (c >= 0) pos++;
+        return c;
+    }
+
+    /** Next byte without consuming it, -1 at the end. */
+    private int peekByte() {
+        if (pos == limit && (!gzip || !inflate())) return -1;
+        return in[pos] & 0xff;
+    }
+
+    /**
+     * Refills the window; false at the end of the member, once its trailer has been checked and
+     * the page told what it inflated to.
+     */
+    private boolean inflate() {
+        try {
+            for (;;) {
+                int n = inflater.inflate(window);
+                if (n > 0) {
+                    crc.update(window, 0, n);
+                    adler.update(window, 0, n);
+                    pos = 0;
+                    limit = n;
+                    return true;
+                }
+                if (inflater.finished()) break;
+                if (inflater.needsInput() || inflater.needsDictionary()) throw FALLBACK;
+            }
+        } catch (DataFormatException e) {
+            throw FALLBACK;
+        }
+        // The trailer GZIPInputStream would check; anything after it (another member) is Gson's
+        int t = body.length - 8;
+        if (inflater.getRemaining() != 0 || (int) crc.getValue() != le32(body, t)
+                || (int) inflater.getBytesWritten() != le32(body, t + 4)) {
+            throw FALLBACK;
+        }
+        page.inflated(crc, adler, inflater.getBytesWritten());
+        return false;
+    }
+
+    /** Offset of the deflate data after an RFC 1952 header, or -1 for a header left to GZIPInputStream. */
+    private static int gzipHeader(byte[] b) {
+        int flags = b[3] & 0xff;
+        if (b[2] != 8 || (flags & 0xE0) != 0) return -1;
+        int p = 10;
+        if ((flags & 4) != 0) p += 2 + ((b[p] & 0xff) | (b[p + 1] & 0xff) << 8);    // FEXTRA
+        for (int f = 8; f <= 16; f += 8) {                                          // FNAME, FCOMMENT
+            if ((flags & f) == 0) continue;
+            while (p < b.length && b[p] != 0) p++;
+            p++;
+        }
+        if ((flags & 2) != 0) p += 2;                                               // FHCRC
+        return p <= b.length - 8 ? p : -1;
+    }
+
+    private static int le32(byte[] b, int at) {
+        return (b[at] & 0xff) | (b[at + 1] & 0xff) << 8 | (b[at + 2] & 0xff) << 16 | (b[at + 3] & 0xff) << 24;
+    }
+
+    /** Growable char buffer handed out as the current token's text. */
+    private static final class Text implements CharSequence {
+        char[] chars = new char[64];
+        int len;
+
+        void add(int c) {
+            if (len == chars.length) chars = Arrays.copyOf(chars, len * 2);
+            chars[len++] = (char) c;
+        }
+
+        @Override public int length() { return len; }
+
+        @Override public char charAt(int i) {
+            if (i >= len) throw new IndexOutOfBoundsException("index " + i + ", length " + len);
+            return chars[i];
+        }
+
+        @Override public CharSequence subSequence(int start, int end) { return toString().substring(start, end); }
+        @Override public String toString() { return new String(chars, 0, len); }
+    }
+}
@@ -0,0 +1,331 @@
+package com.example.tco2display.legacy;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Per-vehicle fuel totals of one query, built from the same page parse as the scalar sum.
+ * Each page keeps its (vehicle slot, value) pairs, so a re-parsed page swaps only its own
+ * contributions and a page reused through a 304 or its checksum keeps them unchanged.
+ * Vehicle ids map to slots in open-addressing tables, one over longs for decimal ids and one
+ * over strings for the rest; totals are plain double arrays, and a re-parsed page refills its
+ * previous arrays when they are large enough. {@link DeltaChannel} reads a vehicle's total
+ * here to turn a pushed value into a change of the query's sum; {@link #top} walks the same
+ * arrays with a size-n min-heap, so a leaderboard costs no more than one pass over the slots.
+ */
+final class VehicleIndex {
+
+    /** Bucket for rows that carry a fuel value but no id. */
+    static final String NO_ID = "?";
+
+    // vehicle id -> slot + 1, 0 = empty (open addressing, linear probing, power-of-two size)
+    private long[] numTable = new long[64];
+    private int[] numSlots = new int[64];
+    private String[] textTable = new String[16];
+    private int[] textSlots = new int[16];
+    private int numCount, textCount;
+
+    // slot -> vehicle; counts[slot] == 0 marks a vehicle no page mentions any more
+    private long[] ids = new long[32];           // PageColumns.TEXT_ID: see textIds
+    private String[] textIds = new String[32];
+    private double[] totals = new double[32];
+    private int[] counts = new int[32];
+    private int slots, live;
+
+    // page index -> contributions; arrays may be longer than pageRows
+    private int[][] pageSlots = new int[8][];
+    private double[][] pageValues = new double[8][];
+    private int[] pageRows = new int[8];
+    private int pages;
+
+    // last published refresh of this query
+    private double tco2 = Double.NaN;
+    private double tco2PerUnit = Double.NaN;
+
+    /** Replaces page {@code page}'s contributions with the rows of {@code columns} that have a value. */
+    synchronized void replacePage(int page, PageColumns columns) {
+        if (page >= pageSlots.length) {
+            int size = Math.max(page + 1, pageSlots.length * 2);
+            pageSlots = Arrays.copyOf(pageSlots, size);
+            pageValues = Arrays.copyOf(pageValues, size);
+            pageRows = Arrays.copyOf(pageRows, size);
+        }
+        dropPage(page);
+        int n = columns.hits;
+        int[] s = pageSlots[page];
+        double[] v = pageValues[page];
+        if (s == null || s.length < n) {
+            pageSlots[page] = s = new int[n];
+            pageValues[page] = v = new double[n];
+        }
+        long[] rowIds = columns.ids;
+        double[] values = columns.values;
+        for (int r = 0, k = 0; k < n; r++) {
+            if (!columns.hasValue(r)) continue;
+            long id = rowIds[r];
+            s[k] = id != PageColumns.TEXT_ID ? slotOf(id) : slotOf(columns.textId(r));
+            v[k] = values[r];
+            add(s[k], v[k]);
+            k++;
+        }
+        pageRows[page] = n;
+        if (page >= pages) pages = page + 1;
+        if (slots - live > 256 && slots > 2 * live) compact();
+    }
+
+    /** Drops pages past the end of this cycle, like {@link PageLedger#retain}. */
+    synchronized void retain(int pageCount) {
+        for (int p = pageCount; p < pages; p++) {
+            dropPage(p);
+            pageSlots[p] = null;
+            pageValues[p] = null;
+        }
+        if (pageCount < pages) pages = pageCount;
+    }
+
+    /** Records the query's TCO2 and the factor from summed fuel units to TCO2. */
+    synchronized void publish(double tco2, double tco2PerUnit) {
+        this.tco2 = tco2;
+        this.tco2PerUnit = tco2PerUnit;
+    }
+
+    synchronized double tco2() { return tco2; }
+
+    synchronized int vehicles() { return live; }
+
+    /** Summed fuel of vehicle {@code id} on the current pages, in the API's units; NaN if none has it. */
+    synchronized double fuelOf(String id) {
+        int slot = -1;
+        long numeric = PageColumns.parseId(id);
+        if (numeric != PageColumns.TEXT_ID) {
+            int mask = numTable.length - 1;
+            for (int i = mix(hash(numeric)) & mask, s; (s = numSlots[i]) != 0; i = (i + 1) & mask) {
+                if (numTable[i] == numeric) { slot = s - 1; break; }
+            }
+        } else if (id != null) {
+            int mask = textTable.length - 1;
+            for (int i = mix(id.hashCode()) & mask; textTable[i] != null; i = (i + 1) & mask) {
+                if (textTable[i].equals(id)) { slot = textSlots[i] - 1; break; }
+            }
+        }
+        return slot >= 0 && counts[slot] > 0 ? totals[slot] : Double.NaN;
+    }
+
+    /** The {@code n} largest vehicles in TCO2, largest first; null before the first publish. */
+    synchronized FleetBreakdown top(int n) {
+        if (Double.isNaN(tco2PerUnit)) return null;
+        int k = Math.min(n, live);
+        int[] heap = new int[k];
+        int size = 0;
+        // min-heap on totals: the root is the smallest of the k largest seen so far
+        for (int s = 0; s < slots && k > 0; s++) {
+            if (counts[s] == 0) continue;
+            if (size < k) {
+                heap[size] = s;
+                siftUp(heap, size++);
+            } else if (totals[s] > totals[heap[0]]) {
+                heap[0] = s;
+                siftDown(heap, size, 0);
+            }
+        }
+        String[] topIds = new String[size];
+        double[] topTco2 = new double[size];
+        for (int i = size - 1; i >= 0; i--) {
+            int s = heap[0];
+            topIds[i] = id(s);
+            topTco2[i] = totals[s] * tco2PerUnit;
+            heap[0] = heap[i];
+            siftDown(heap, i, 0);
+        }
+        return new FleetBreakdown(tco2, live, topIds, topTco2);
+    }
+
+    /** Writes the first {@code pageCount} pages, the ones the ledger wrote alongside. */
+    synchronized void writeTo(DataOutputStream out, int pageCount) throws IOException {
+        int n = Math.min(pageCount, pages);
+        out.writeDouble(tco2);
+        out.writeDouble(tco2PerUnit);
+        out.writeInt(n);
+        for (int p = 0; p < n; p++) {
+            int rows = pageRows[p];
+            out.writeInt(rows);
+            for (int i = 0; i < rows; i++) {
+                out.writeUTF(id(pageSlots[p][i]));
+                out.writeDouble(pageValues[p][i]);
+            }
+        }
+    }
+
+    static VehicleIndex readFrom(DataInputStream in) throws IOException {
+        VehicleIndex index = new VehicleIndex();
+        index.tco2 = in.readDouble();
+        index.tco2PerUnit = in.readDouble();
+        int n = in.readInt();
+        if (n < 0) throw new IOException("Bad page count " + n);
+        PageColumns columns = new PageColumns();
+        for (int p = 0; p < n; p++) {
+            int rows = in.readInt();
+            if (rows < 0) throw new IOException("Bad row count " + rows);
+            columns.clear();
+            for (int i = 0; i < rows; i++) {
+                String id = in.readUTF();
+                columns.add(id, in.readDouble());
+            }
+            if (columns.hits != rows) throw new IOException("Missing value on page " + p);
+            index.replacePage(p, columns);
+        }
+        return index;
+    }
+
+    /** Takes the page's contributions out of the totals; its arrays stay for the next parse. */
+    private void dropPage(int page) {
+        int[] s = pageSlots[page];
+        double[] v = pageValues[page];
+        for (int i = 0, n = pageRows[page]; i < n; i++) remove(s[i], v[i]);
+        pageRows[page] = 0;
+    }
+
+    private void add(int slot, double v) {
+        if (counts[slot]++ == 0) live++;
+        totals[slot] += v;
+    }
+
+    private void remove(int slot, double v) {
+        if (--counts[slot] == 0) {
+            live--;
+            totals[slot] = 0.0;               // no drift left behind for a vehicle that reappears
+        } else {
+            totals[slot] -= v;
+        }
+    }
+
+    private String id(int slot) {
+        return ids[slot] != PageColumns.TEXT_ID ? Long.toString(ids[slot]) : textIds[slot];
+    }
+
+    private int slotOf(long id) {
+        int mask = numTable.length - 1;
+        int i = mix(hash(id)) & mask;
+        for (int s; (s = numSlots[i]) != 0; i = (i + 1) & mask) {
+            if (numTable[i] == id) return s - 1;
+        }
+        int slot = newSlot(id, null);
+        numTable[i] = id;
+        numSlots[i] = slot + 1;
+        if (++numCount * 2 > numTable.length) rehash(numTable.length * 2, textTable.length);
+        return slot;
+    }
+
+    /** Slot of a text id; a row without one counts under {@link #NO_ID}. */
+    private int slotOf(String id) {
+        if (id == null) id = NO_ID;
+        int mask = textTable.length - 1;
+        int i = mix(id.hashCode()) & mask;
+        for (String t; (t = textTable[i]) != null; i = (i + 1) & mask) {
+            if (t.equals(id)) return textSlots[i] - 1;
+        }
+        int slot = newSlot(PageColumns.TEXT_ID, id);
+        textTable[i] = id;
+        textSlots[i] = slot + 1;
+        if (++textCount * 2 > textTable.length) rehash(numTable.length, textTable.length * 2);
+        return slot;
+    }
+
+    private int newSlot(long id, String text) {
+        if (slots == ids.length) {
+            int size = slots * 2;
+            ids = Arrays.copyOf(ids, size);
+            textIds = Arrays.copyOf(textIds, size);
+            totals = Arrays.copyOf(totals, size);
+            counts = Arrays.copyOf(counts, size);
+        }
+        ids[slots] = id;
+        textIds[slots] = text;
+        return slots++;
+    }
+
+    private void rehash(int numSize, int textSize) {
+        numTable = new long[numSize];
+        numSlots = new int[numSize];
+        textTable = new String[textSize];
+        textSlots = new int[textSize];
+        numCount = textCount = 0;
+        int numMask = numSize - 1, textMask = textSize - 1;
+        for (int s = 0; s < slots; s++) {
+            if (ids[s] != PageColumns.TEXT_ID) {
+                int i = mix(hash(ids[s])) & numMask;
+                while (numSlots[i] != 0) i = (i + 1) & numMask;
+                numTable[i] = ids[s];
+                numSlots[i] = s + 1;
+                numCount++;
+            } else {
+                int i = mix(textIds[s].hashCode()) & textMask;
+                while (textTable[i] != null) i = (i + 1) & textMask;
+                textTable[i] = textIds[s];
+                textSlots[i] = s + 1;
+                textCount++;
+            }
+        }
+    }
+
+    /** Forgets vehicles no page mentions any more and renumbers the rest. */
+    private void compact() {
+        int[] remap = new int[slots];
+        int n = 0;
+        for (int s = 0; s < slots; s++) {
+            if (counts[s] == 0) { remap[s] = -1; continue; }
+            remap[s] = n;
+            ids[n] = ids[s];
+            textIds[n] = textIds[s];
+            totals[n] = totals[s];
+            counts[n] = counts[s];
+            n++;
+        }
+        Arrays.fill(textIds, n, slots, null);
+        Arrays.fill(totals, n, slots, 0.0);
+        Arrays.fill(counts, n, slots, 0);
+        slots = n;
+        for (int p = 0; p < pages; p++) {
+            int[] s = pageSlots[p];
+            for (int i = 0, rows = pageRows[p]; i < rows; i++) s[i] = remap[s[i]];
+        }
+        int numSize = 64, textSize = 16;
+        int texts = 0;
+        for (int s = 0; s < slots; s++) if (ids[s] == PageColumns.TEXT_ID) texts++;
+        while (numSize < (slots - texts) * 2) numSize *= 2;
+        while (textSize < texts * 2) textSize *= 2;
+        rehash(numSize, textSize);
+    }
+
+    private void siftUp(int[] heap, int i) {
+        int s = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (totals[heap[parent]] <= totals[s]) break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = s;
+    }
+
+    private void siftDown(int[] heap, int size, int i) {
+        if (size == 0) return;
+        int s = heap[i];
+        for (int child; (child = 2 * i + 1) < size; i = child) {
+            if (child + 1 < size && totals[heap[child + 1]] < totals[heap[child]]) child++;
+            if (totals[s] <= totals[heap[child]]) break;
+            heap[i] = heap[child];
+        }
+        heap[i] = s;
+    }
+
+    private static int hash(long id) {
+        return (int) (id ^ (id >>> 32));
+    }
+
+    private static int mix(int h) {
+        return h ^ (h >>> 16);
+    }
+}
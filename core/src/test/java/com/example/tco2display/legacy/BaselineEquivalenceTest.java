@@ -0,0 +1,341 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Retrofit;
+
+/**
+ * fetchFuel (streamed pages, ledger reuse, concurrent page window) against the tree walk the
+ * repository started from, both reading the same server: pages over several refreshes, some
+ * unchanged and some changed, answered 304 where the server sends ETags, with fuel written as
+ * numbers, plain and separated strings, nulls, text and under another case.
+ */
+public class BaselineEquivalenceTest {
+
+    private static final int PSIZE = 7;
+    private static final String EMPTY = "{\"status\":\"ok\",\"result\":[]}";
+
+    /** Pages per acc_id, page 1 first; past the last one the server answers with no rows. */
+    private final Map<String, String[]> pages = new ConcurrentHashMap<String, String[]>();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private volatile boolean etags, gzip;
+    private MockWebServer server;
+    private OkHttpClient plain;
+    private int baselineRequests;
+
+    @Before public void serve() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override public MockResponse dispatch(RecordedRequest request) {
+                String[] bodies = pages.get(request.getRequestUrl().queryParameter("acc_id"));
+                int pnum = Integer.parseInt(request.getRequestUrl().queryParameter("pnum"));
+                String body = bodies != null && pnum <= bodies.length ? bodies[pnum - 1] : EMPTY;
+                MockResponse response = new MockResponse();
+                if (etags) {
+                    String etag = "\"" + Integer.toHexString(body.hashCode()) + "-" + body.length() + "\"";
+                    if (etag.equals(request.getHeader("If-None-Match"))) {
+                        notModified.incrementAndGet();
+                        return response.setResponseCode(304).setHeader("ETag", etag);
+                    }
+                    response.setHeader("ETag", etag);
+                }
+                response.setHeader("Content-Type", "application/json");
+                String accept = request.getHeader("Accept-Encoding");
+                if (gzip && accept != null && accept.contains("gzip")) {
+                    try {
+                        return response.setHeader("Content-Encoding", "gzip")
+                                .setBody(new Buffer().write(FuelPageTest.gzip(body)));
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+                return response.setBody(body);
+            }
+        });
+        server.start();
+        plain = new OkHttpClient();
+    }
+
+    @After public void shutDown() throws IOException {
+        server.shutdown();
+    }
+
+    private IntanglesRepository repository(boolean compactTransfer) {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .callbackExecutor(new Executor() {
+                    @Override public void execute(Runnable task) { task.run(); }
+                })
+                .addConverterFactory(FuelPageConverterFactory.create())
+                .build();
+        return new IntanglesRepository(retrofit.create(IntanglesApi.class), 4, compactTransfer);
+    }
+
+    /* ------------ the fleets ------------ */
+
+    /** Query {@code i}: how its rows are wrapped, and where the fuel sits in them. */
+    private static final String[] WRAPPERS = {"{\"status\":\"ok\",\"result\":[%s]}", "{\"data\":[%s]}", "[%s]"};
+
+    private static String fuel(Random r, boolean numeric) {
+        double v = Math.round(r.nextDouble() * 500000) / 100.0;
+        if (numeric) return Double.toString(v);
+        switch (r.nextInt(9)) {
+            case 0: return "\"" + v + "\"";
+            case 1: return "\" " + String.format(Locale.US, "%,.2f", v * 10) + " \"";
+            case 2: return "\"" + (long) v + "\"";
+            case 3: return "null";
+            case 4: return "\"n/a\"";
+            case 5: return Long.toString((long) v);
+            default: return Double.toString(v);
+        }
+    }
+
+    /** One vehicle row; the first of a fleet always has a plain number, as key detection samples page 1. */
+    private static String row(Random r, int vehicle, boolean nested, boolean first) {
+        String id = vehicle % 4 == 0 ? "\"KA-" + vehicle + "\"" : "\"" + vehicle + "\"";
+        StringBuilder row = new StringBuilder("{\"id\":").append(id).append(",\"odo\":").append(r.nextInt(99999));
+        int form = first ? 0 : r.nextInt(12);
+        String name = form == 11 ? "Total_Fuel_Consumed" : "total_fuel_consumed";
+        String field = form == 10 ? "" : "\"" + name + "\":" + fuel(r, first || form < 4);
+        if (nested) {
+            row.append(",\"data\":{\"unit\":\"kg\"").append(field.isEmpty() ? "" : "," + field).append("}");
+        } else if (!field.isEmpty()) {
+            row.append(",").append(field);
+        }
+        return row.append(",\"loc\":{\"lat\":").append(r.nextInt(90)).append("}}").toString();
+    }
+
+    private static String[] fleet(Random r, String wrapper, boolean nested, int vehicles) {
+        int n = (vehicles + PSIZE - 1) / PSIZE;
+        String[] bodies = new String[vehicles % PSIZE == 0 ? n + 1 : n];
+        for (int p = 0; p < n; p++) bodies[p] = page(r, wrapper, nested, p * PSIZE, Math.min(vehicles, (p + 1) * PSIZE));
+        if (bodies.length > n) bodies[n] = String.format(wrapper, "");
+        return bodies;
+    }
+
+    private static String page(Random r, String wrapper, boolean nested, int from, int to) {
+        StringBuilder rows = new StringBuilder();
+        for (int v = from; v < to; v++) {
+            if (v > from) rows.append(',');
+            rows.append(row(r, v, nested, v == 0));
+        }
+        return String.format(wrapper, rows);
+    }
+
+    /** Changes a few pages of a fleet of {@code vehicles} and leaves the rest byte for byte. */
+    private static String[] refresh(Random r, String[] bodies, String wrapper, boolean nested, int vehicles) {
+        String[] next = bodies.clone();
+        for (int p = 0; p * PSIZE < vehicles; p++) {
+            if (r.nextInt(3) == 0) next[p] = page(r, wrapper, nested, p * PSIZE, Math.min(vehicles, (p + 1) * PSIZE));
+        }
+        return next;
+    }
+
+    private void assertLikeTheTreeWalk(IntanglesRepository repo) throws Exception {
+        Random r = new Random(1);
+        int[] vehicles = new int[6];
+        String[][] fleets = new String[vehicles.length][];
+        for (int refresh = 0; refresh < 12; refresh++) {
+            for (int q = 0; q < fleets.length; q++) {
+                String wrapper = WRAPPERS[q % 3];
+                boolean nested = q >= 3;
+                if (refresh == 0 || r.nextInt(5) == 0) {
+                    // a new fleet size, pages exactly full (then an empty one) now and then
+                    vehicles[q] = r.nextInt(4) == 0 ? PSIZE * (1 + r.nextInt(5)) : 1 + r.nextInt(8 * PSIZE);
+                    fleets[q] = fleet(r, wrapper, nested, vehicles[q]);
+                } else {
+                    fleets[q] = refresh(r, fleets[q], wrapper, nested, vehicles[q]);
+                }
+                pages.put("q" + q, fleets[q]);
+                double expected = baseline("q" + q);
+                double actual = repo.fetchFuel("t", "q" + q, "s", PSIZE, "en", true, "", "", false, 1.0);
+                assertEquals("query " + q + ", refresh " + refresh, expected, actual, Math.abs(expected) * 1e-12);
+            }
+        }
+    }
+
+    @Test public void plainPagesRevalidatedWithETags() throws Exception {
+        etags = true;
+        assertLikeTheTreeWalk(repository(false));
+        assertTrue(notModified.get() > 0);
+    }
+
+    @Test public void gzipPagesRevalidatedWithETags() throws Exception {
+        etags = true;
+        gzip = true;
+        assertLikeTheTreeWalk(repository(true));
+        assertTrue(notModified.get() > 0);
+    }
+
+    @Test public void pagesWithoutETagsReusedByChecksum() throws Exception {
+        long parsed = Metrics.PARSE_PAGE.count();
+        assertLikeTheTreeWalk(repository(false));
+        assertEquals(0, notModified.get());
+        // unchanged pages were summed from the ledger, not parsed again
+        assertTrue(Metrics.PARSE_PAGE.count() - parsed < server.getRequestCount() - baselineRequests);
+    }
+
+    /* ------------ the tree walk, as the repository first had it ------------ */
+
+    /** Summed fuel of the query, each page fetched in turn without revalidation and read as a tree. */
+    private double baseline(String accId) throws Exception {
+        double totalInput = 0.0;
+        String fuelKey = null;
+        int pnum = 1;
+        while (true) {
+            Request request = new Request.Builder()
+                    .url(server.url("/vehicle/fuel_consumed").newBuilder()
+                            .addQueryParameter("pnum", Integer.toString(pnum))
+                            .addQueryParameter("acc_id", accId).build())
+                    .build();
+            okhttp3.Response response = plain.newCall(request).execute();
+            baselineRequests++;
+            JsonElement payload;
+            try {
+                payload = JsonParser.parseString(response.body().string());
+            } finally {
+                response.close();
+            }
+
+            List<JsonObject> rows = iterPayloadRows(payload);
+            if (rows.isEmpty()) break;
+
+            if (fuelKey == null) {
+                fuelKey = detectFuelKey(rows);
+                if (fuelKey == null) throw new RuntimeException("Could not detect a fuel field");
+            }
+
+            double pageSum = 0.0;
+            for (JsonObject row : rows) {
+                Double v = getValueByDotted(row, fuelKey);
+                if (v != null) pageSum += v;
+            }
+            totalInput += pageSum;
+
+            if (rows.size() < PSIZE) break;
+            pnum++;
+        }
+        return totalInput;
+    }
+
+    private static List<JsonObject> iterPayloadRows(JsonElement payload) {
+        List<JsonObject> out = new ArrayList<JsonObject>();
+        if (payload == null) return out;
+        if (payload.isJsonArray()) {
+            for (JsonElement e : payload.getAsJsonArray())
+                if (e.isJsonObject()) out.add(e.getAsJsonObject());
+            return out;
+        }
+        if (payload.isJsonObject()) {
+            JsonObject o = payload.getAsJsonObject();
+            for (String k : Arrays.asList("result", "data")) {
+                if (o.has(k)) {
+                    JsonElement v = o.get(k);
+                    if (v.isJsonArray()) {
+                        for (JsonElement e : v.getAsJsonArray())
+                            if (e.isJsonObject()) out.add(e.getAsJsonObject());
+                        return out;
+                    } else if (v.isJsonObject()) {
+                        out.add(v.getAsJsonObject());
+                        return out;
+                    }
+                }
+            }
+            out.add(o);
+        }
+        return out;
+    }
+
+    private static String detectFuelKey(List<JsonObject> sampleRows) {
+        final Set<String> lowers = new HashSet<String>();
+        for (JsonObject row : sampleRows) {
+            walkKeys(row, "", new WalkCb() {
+                public void onLeaf(String key, JsonElement v) {
+                    if (key != null && key.length() > 0 && (v.isJsonPrimitive() || v.isJsonNull()))
+                        lowers.add(key.toLowerCase(Locale.US));
+                }
+            });
+        }
+        String[] preferred = new String[] {
+            "total_fuel_consumed", "data.total_fuel_consumed", "fuel_consumed",
+            "total_fuel", "fuel_total", "fuel"
+        };
+        for (String p : preferred) if (lowers.contains(p.toLowerCase(Locale.US))) return p;
+        for (String k : lowers) if (k.contains("fuel") && (k.contains("consum") || k.contains("total"))) return k;
+        return null;
+    }
+
+    private interface WalkCb { void onLeaf(String key, JsonElement v); }
+
+    private static void walkKeys(JsonElement elem, String prefix, WalkCb cb) {
+        if (elem == null) return;
+        if (elem.isJsonObject()) {
+            for (Map.Entry<String, JsonElement> e : elem.getAsJsonObject().entrySet()) {
+                String nk = prefix.isEmpty() ? e.getKey() : prefix + "." + e.getKey();
+                walkKeys(e.getValue(), nk, cb);
+            }
+        } else if (elem.isJsonArray()) {
+            for (JsonElement v : elem.getAsJsonArray()) walkKeys(v, prefix, cb);
+        } else {
+            cb.onLeaf(prefix, elem);
+        }
+    }
+
+    private static Double getValueByDotted(JsonObject row, final String dotted) {
+        String[] parts = dotted.split("\\.");
+        JsonElement cur = row;
+        for (String p : parts) {
+            if (cur != null && cur.isJsonObject() && cur.getAsJsonObject().has(p)) {
+                cur = cur.getAsJsonObject().get(p);
+            } else {
+                final Double[] found = new Double[1];
+                walkKeys(row, "", new WalkCb() {
+                    public void onLeaf(String key, JsonElement v) {
+                        if (key.equalsIgnoreCase(dotted)) {
+                            if (v != null && v.isJsonPrimitive()) {
+                                try { found[0] = v.getAsDouble(); } catch (Exception ignored) {}
+                            }
+                        }
+                    }
+                });
+                return found[0];
+            }
+        }
+        if (cur != null && cur.isJsonPrimitive()) {
+            JsonPrimitive p = cur.getAsJsonPrimitive();
+            if (p.isNumber()) return p.getAsDouble();
+            if (p.isString()) {
+                try { return Double.parseDouble(p.getAsString().trim().replace(",", "")); } catch (Exception ignored) {}
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CompensatedSumTest {
+
+    private static final double U = Math.ulp(1.0) / 2;     // unit roundoff, 2^-53
+
+    private static BigDecimal exact(double[] v) {
+        BigDecimal s = BigDecimal.ZERO;
+        for (double x : v) s = s.add(new BigDecimal(x));
+        return s;
+    }
+
+    private static double added(double[] v) {
+        CompensatedSum s = new CompensatedSum();
+        for (double x : v) s.add(x);
+        return s.value();
+    }
+
+    private static void assertBits(double expected, double actual) {
+        assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+    }
+
+    /** Within the class doc's bound: one rounding of the total plus gamma(n-1)^2 times the sum of magnitudes. */
+    private static void assertAccurate(double[] v) {
+        BigDecimal exact = exact(v);
+        double total = exact.doubleValue();
+        double magnitudes = 0.0;
+        for (double x : v) magnitudes += Math.abs(x);
+        double nu = (v.length - 1) * U;
+        double gamma = nu / (1 - nu);
+        double bound = U * Math.abs(total) + gamma * gamma * magnitudes * 1.01;
+        for (double result : new double[] {added(v), CompensatedSum.of(v, v.length)}) {
+            double err = new BigDecimal(result).subtract(exact).abs().doubleValue();
+            assertTrue("error " + err + " over bound " + bound, err <= bound);
+        }
+    }
+
+    @Test public void cancellationKeepsTheSmallTerm() {
+        double[] v = {1e16, 1.0, -1e16};
+        assertBits(1.0, added(v));
+        assertBits(1.0, CompensatedSum.of(v, v.length));
+        assertEquals(0.0, 1e16 + 1.0 - 1e16, 0.0);           // what plain addition gives
+
+        double[] w = {1.0, 1e-16, 1e-16, 1e-16, 1e-16, -1.0};
+        assertEquals(exact(w).doubleValue(), added(w), Math.ulp(4e-16));
+    }
+
+    @Test public void illConditionedSumsMatchBigDecimal() {
+        Random r = new Random(20);
+        for (int t = 0; t < 2000; t++) {
+            int n = 1 + r.nextInt(600);
+            double[] v = new double[n];
+            for (int i = 0; i < n; i++) {
+                // huge terms that cancel, around small ones of every sign
+                v[i] = (r.nextBoolean() ? 1 : -1) * r.nextDouble() * Math.pow(10, r.nextInt(32) - 16);
+            }
+            for (int i = 0; i + 1 < n; i += 7) v[i + 1] = -v[i];
+            assertAccurate(v);
+        }
+    }
+
+    @Test public void fuelLikeSumsAreFaithful() {
+        Random r = new Random(3);
+        for (int t = 0; t < 500; t++) {
+            double[] v = new double[300];
+            for (int i = 0; i < v.length; i++) v[i] = Math.round(r.nextDouble() * 1e7) / 100.0;
+            BigDecimal exact = exact(v);
+            double nearest = exact.round(MathContext.DECIMAL128).doubleValue();
+            assertEquals(nearest, added(v), Math.ulp(nearest));
+            assertBits(added(v), CompensatedSum.of(v, v.length));
+        }
+    }
+
+    @Test public void zerosChangeNoBits() {
+        double[] v = {0.1, 0.2, 0.3, 1e-17, 12345.678};
+        double[] withZeros = {0.0, 0.1, 0.0, 0.2, 0.3, 0.0, 1e-17, 12345.678, 0.0};
+        assertBits(CompensatedSum.of(v, v.length), CompensatedSum.of(withZeros, withZeros.length));
+    }
+
+    @Test public void nanAndInfinitiesComeThroughAsPlainAddition() {
+        assertBits(Double.NaN, added(new double[] {1.0, Double.NaN, 2.0}));
+        assertBits(Double.POSITIVE_INFINITY, added(new double[] {1.0, Double.POSITIVE_INFINITY, -1e300}));
+        assertBits(Double.NEGATIVE_INFINITY, added(new double[] {Double.NEGATIVE_INFINITY, 0.5}));
+        assertBits(Double.NaN, added(new double[] {Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY}));
+        assertBits(Double.POSITIVE_INFINITY, added(new double[] {Double.MAX_VALUE, Double.MAX_VALUE}));
+        double[] v = {3.0, Double.POSITIVE_INFINITY, 4.0};
+        assertBits(Double.POSITIVE_INFINITY, CompensatedSum.of(v, v.length));
+        v = new double[] {3.0, Double.NaN};
+        assertBits(Double.NaN, CompensatedSum.of(v, v.length));
+    }
+
+    @Test public void clearResetsForReuse() {
+        CompensatedSum s = new CompensatedSum();
+        s.add(1e16);
+        s.add(1.0);
+        s.add(Double.NaN);
+        s.clear();
+        assertBits(0.0, s.value());
+        double[] v = {1e16, 1.0, -1e16, 0.25};
+        for (double x : v) s.add(x);
+        assertBits(added(v), s.value());
+        assertBits(1.25, s.value());
+    }
+
+    @Test public void mergingInAFixedOrderIsReproducible() {
+        Random r = new Random(11);
+        double[][] pages = new double[40][];
+        for (int p = 0; p < pages.length; p++) {
+            pages[p] = new double[1 + r.nextInt(300)];
+            for (int i = 0; i < pages[p].length; i++) pages[p][i] = r.nextDouble() * Math.pow(10, r.nextInt(12));
+        }
+        double first = Double.NaN;
+        for (int round = 0; round < 5; round++) {
+            // partials summed in any order, as the page pipeline's threads would finish them
+            CompensatedSum[] partials = new CompensatedSum[pages.length];
+            for (int k = 0; k < pages.length; k++) {
+                int p = (k * 7 + round * 13) % pages.length;
+                partials[p] = new CompensatedSum();
+                for (double x : pages[p]) partials[p].add(x);
+            }
+            CompensatedSum total = new CompensatedSum();
+            for (CompensatedSum part : partials) total.add(part);
+            if (round == 0) first = total.value();
+            assertBits(first, total.value());
+        }
+        int n = 0;
+        for (double[] page : pages) n += page.length;
+        double[] all = new double[n];
+        n = 0;
+        for (double[] page : pages) for (double x : page) all[n++] = x;
+        assertEquals(exact(all).doubleValue(), first, Math.ulp(first));
+    }
+}
@@ -0,0 +1,386 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Drives a {@link DeltaChannel} by hand: socket callbacks are called directly, io tasks run only
+ * when the test says so, and the repository is a stub whose page fetch can deliver frames or
+ * stop the channel while it is "on the network".
+ */
+public class DeltaChannelTest {
+
+    private static final long BACKOFF_MS = 2000L;       // the backoff's ceiling
+    private static final long RESYNC_MS = 600000L;
+
+    private final Io io = new Io();
+    private final Sockets client = new Sockets();
+    private final Repo repo = new Repo();
+    private final List<Double> totals = new ArrayList<Double>();
+    private final List<Exception> errors = new ArrayList<Exception>();
+    private DeltaChannel channel;
+
+    @Before public void setUp() {
+        QueryProfile q = new QueryProfile("t", "acc", "s1", "total_fuel_consumed", "", "kg", 1.0);
+        channel = new DeltaChannel(client, "wss://example.test/vehicle/fuel_deltas", repo, q, "", 300, "en",
+                true, true, io, RESYNC_MS, new RefreshScheduler(200L, 200L, BACKOFF_MS, 1),
+                new DeltaChannel.Listener() {
+                    @Override public void onFuel(double fuel) { totals.add(fuel); }
+                    @Override public void onError(Exception e) { errors.add(e); }
+                });
+        repo.fuel.put("7", 10.0);
+        repo.fuel.put("8", 20.0);
+    }
+
+    /** Starts, opens the socket and runs the first resync against a fleet total of 100. */
+    private void startSynced() {
+        channel.start();
+        client.last().listener.onOpen(client.last(), null);
+        io.runQueued();
+        assertEquals(1, repo.fetches);
+        assertEquals(100.0, lastTotal(), 0.0);
+    }
+
+    private void frame(String text) {
+        client.last().listener.onMessage(client.last(), text);
+    }
+
+    private static String rows(long seq, String id, double fuel) {
+        return "{\"seq\":" + seq + ",\"rows\":[{\"id\":\"" + id + "\",\"fuel\":" + fuel + "}]}";
+    }
+
+    private double lastTotal() {
+        return totals.get(totals.size() - 1);
+    }
+
+    @Test public void inOrderFramesApplyTheirDifference() {
+        startSynced();
+        frame(rows(1, "7", 12.0));
+        assertEquals(102.0, lastTotal(), 0.0);          // 10 -> 12
+        frame(rows(2, "7", 15.5));
+        assertEquals(105.5, lastTotal(), 0.0);          // 12 -> 15.5: the last pushed value, not the page
+        frame(rows(3, "9", 1.25));
+        assertEquals(106.75, lastTotal(), 0.0);         // a vehicle no page had
+        frame("{\"seq\":4,\"rows\":[{\"id\":\"8\",\"fuel\":21},{\"id\":\"8\",\"fuel\":25},{\"id\":\"7\",\"fuel\":null}]}");
+        assertEquals(111.75, lastTotal(), 0.0);
+        assertEquals(4, channel.lastSeq());
+        assertEquals(1, repo.fetches);
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test public void duplicateAndOlderFramesAreIgnored() {
+        startSynced();
+        frame(rows(1, "7", 12.0));
+        frame(rows(2, "7", 13.0));
+        int seen = totals.size();
+        frame(rows(2, "7", 99.0));
+        frame(rows(1, "7", 98.0));
+        assertEquals(seen, totals.size());
+        assertEquals(103.0, lastTotal(), 0.0);
+        assertEquals(2, channel.lastSeq());
+        frame(rows(3, "8", 21.0));
+        assertEquals(104.0, lastTotal(), 0.0);
+        assertEquals(1, repo.fetches);
+    }
+
+    @Test public void aGapResyncsFromThePages() {
+        startSynced();
+        frame(rows(1, "7", 12.0));
+        repo.total = 150.0;
+        int seen = totals.size();
+        frame(rows(3, "7", 14.0));                      // 2 is missing
+        assertEquals(seen, totals.size());              // not applied: the fetch will be newer
+        assertEquals(3, channel.lastSeq());
+        frame(rows(4, "8", 30.0));                      // still resyncing: dropped as well
+        assertEquals(seen, totals.size());
+        io.runQueued();
+        assertEquals(2, repo.fetches);
+        assertEquals(150.0, lastTotal(), 0.0);
+        frame(rows(5, "7", 11.0));                      // against the page value again, 10 -> 11
+        assertEquals(151.0, lastTotal(), 0.0);
+    }
+
+    @Test public void resetResyncs() {
+        startSynced();
+        frame(rows(1, "7", 12.0));
+        repo.total = 90.0;
+        frame("{\"seq\":40,\"reset\":true}");
+        assertEquals(40, channel.lastSeq());
+        io.runQueued();
+        assertEquals(2, repo.fetches);
+        assertEquals(90.0, lastTotal(), 0.0);
+        frame(rows(41, "8", 22.0));
+        assertEquals(92.0, lastTotal(), 0.0);
+    }
+
+    @Test public void unreadableFrameResyncs() {
+        startSynced();
+        frame("{\"rows\":[]}");                         // no seq
+        frame("not json");
+        assertEquals(2, errors.size());
+        io.runQueued();
+        assertEquals(2, repo.fetches);
+    }
+
+    @Test public void framesDuringTheFetchAreHeldAndAppliedAfterIt() {
+        channel.start();
+        client.last().listener.onOpen(client.last(), null);
+        repo.duringFetch = new Runnable() {
+            @Override public void run() {
+                frame(rows(1, "7", 12.0));
+                frame(rows(2, "8", 25.0));
+                frame(rows(3, "7", 13.0));
+            }
+        };
+        io.runQueued();
+        assertEquals(1, repo.fetches);
+        assertEquals(1, totals.size());                 // one total, after the fetch and its held frames
+        assertEquals(108.0, lastTotal(), 0.0);          // 100 + (13 - 10) + (25 - 20)
+        frame(rows(4, "7", 14.0));
+        assertEquals(109.0, lastTotal(), 0.0);
+    }
+
+    @Test public void aGapWhileFetchingFetchesAgain() {
+        startSynced();
+        frame(rows(1, "7", 12.0));
+        frame(rows(3, "7", 14.0));                      // gap: resync queued
+        repo.total = 200.0;
+        repo.duringFetch = new Runnable() {
+            @Override public void run() {
+                repo.duringFetch = null;
+                frame(rows(4, "8", 21.0));
+                frame(rows(6, "8", 22.0));              // another gap, during the fetch
+            }
+        };
+        io.runQueued();
+        assertEquals(3, repo.fetches);                  // the gap's resync, then one more for the gap inside it
+        assertEquals(200.0, lastTotal(), 0.0);
+        assertEquals(6, channel.lastSeq());
+        frame(rows(7, "8", 23.0));
+        assertEquals(203.0, lastTotal(), 0.0);
+    }
+
+    @Test public void stopDuringTheFetchDiscardsItsResult() {
+        channel.start();
+        WebSocketListener first = client.last().listener;
+        first.onOpen(client.last(), null);
+        repo.duringFetch = new Runnable() {
+            @Override public void run() {
+                frame(rows(1, "7", 12.0));
+                channel.stop();
+            }
+        };
+        io.runQueued();
+        assertEquals(1, repo.fetches);
+        assertEquals(1, repo.cancels);
+        assertTrue(totals.isEmpty());                   // the stale generation's total never reaches the listener
+        assertEquals(-1, channel.lastSeq());
+        assertTrue(client.last().closed);
+
+        // A late callback from the old socket is ignored; a restart resyncs from scratch
+        repo.duringFetch = null;
+        first.onMessage(client.last(), rows(2, "7", 50.0));
+        assertTrue(totals.isEmpty());
+        channel.start();
+        assertEquals(2, client.sockets.size());
+        assertNull(client.last().request.url().queryParameter("since"));
+        client.last().listener.onOpen(client.last(), null);
+        io.runQueued();
+        assertEquals(2, repo.fetches);
+        assertEquals(100.0, lastTotal(), 0.0);
+    }
+
+    @Test public void reconnectAsksForWhatFollowedTheLastFrame() {
+        startSynced();
+        frame(rows(1, "7", 12.0));
+        frame(rows(2, "7", 13.0));
+        Fake old = client.last();
+        old.listener.onFailure(old, new java.io.IOException("reset by peer"), null);
+        assertEquals(1, errors.size());
+        old.listener.onMessage(old, rows(3, "7", 50.0));      // late, from the dead socket
+        assertEquals(103.0, lastTotal(), 0.0);
+        io.advance(BACKOFF_MS);
+        assertEquals(2, client.sockets.size());
+        assertEquals("2", client.last().request.url().queryParameter("since"));
+        client.last().listener.onOpen(client.last(), null);
+        io.runQueued();
+        assertEquals(1, repo.fetches);                  // still synced: the replay continues the stream
+        frame(rows(3, "7", 14.0));
+        assertEquals(104.0, lastTotal(), 0.0);
+    }
+
+    @Test public void aFailedResyncRetriesAndAppliesNothingMeanwhile() {
+        channel.start();
+        client.last().listener.onOpen(client.last(), null);
+        repo.failures = 1;
+        io.runQueued();
+        assertEquals(1, errors.size());
+        assertTrue(totals.isEmpty());
+        frame(rows(1, "7", 12.0));                      // resyncing: dropped
+        assertTrue(totals.isEmpty());
+        io.advance(BACKOFF_MS);
+        assertEquals(2, repo.fetches);
+        assertEquals(100.0, lastTotal(), 0.0);
+        assertFalse(client.last().closed);
+    }
+
+    @Test public void resyncsPeriodicallyWhileFramesFlow() {
+        startSynced();
+        frame(rows(1, "7", 12.0));
+        io.advance(RESYNC_MS / 2);
+        assertEquals(1, repo.fetches);
+        repo.total = 120.0;
+        io.advance(RESYNC_MS / 2);
+        assertEquals(2, repo.fetches);
+        assertEquals(120.0, lastTotal(), 0.0);
+        frame(rows(2, "7", 12.5));                      // the pages hold 10 for vehicle 7 again
+        assertEquals(122.5, lastTotal(), 0.0);
+    }
+
+    /* ------------ fakes ------------ */
+
+    private static final class Repo extends IntanglesRepository {
+        final Map<String, Double> fuel = new HashMap<String, Double>();
+        double total = 100.0;
+        int fetches, cancels, failures;
+        Runnable duringFetch;
+
+        Repo() { super(null); }
+
+        @Override double fetchFuel(String token, String accId, String specIds, int psize, String lang,
+                                   boolean noDefaultFields, String proj, String groups, boolean lastloc,
+                                   double kgPerUnit) throws Exception {
+            fetches++;
+            if (duringFetch != null) duringFetch.run();
+            if (failures > 0) {
+                failures--;
+                throw new java.io.IOException("page 2 failed");
+            }
+            return total;
+        }
+
+        @Override double vehicleFuel(String accId, String specIds, String proj, String groups, String id) {
+            Double v = fuel.get(id);
+            return v == null ? Double.NaN : v;
+        }
+
+        @Override public void cancel() { cancels++; }
+    }
+
+    private static final class Fake implements WebSocket {
+        final Request request;
+        final WebSocketListener listener;
+        boolean closed;
+
+        Fake(Request request, WebSocketListener listener) {
+            this.request = request;
+            this.listener = listener;
+        }
+
+        @Override public Request request() { return request; }
+        @Override public long queueSize() { return 0; }
+        @Override public boolean send(String text) { return !closed; }
+        @Override public boolean send(ByteString bytes) { return !closed; }
+        @Override public boolean close(int code, String reason) { closed = true; return true; }
+        @Override public void cancel() { closed = true; }
+    }
+
+    private static final class Sockets extends OkHttpClient {
+        final List<Fake> sockets = new ArrayList<Fake>();
+
+        @Override public WebSocket newWebSocket(Request request, WebSocketListener listener) {
+            Fake ws = new Fake(request, listener);
+            sockets.add(ws);
+            return ws;
+        }
+
+        Fake last() { return sockets.get(sockets.size() - 1); }
+    }
+
+    /** Runs nothing by itself: queued tasks on runQueued, delayed ones when advance() reaches them. */
+    private static final class Io extends AbstractExecutorService implements ScheduledExecutorService {
+        private final List<Runnable> queued = new ArrayList<Runnable>();
+        private final List<Task> scheduled = new ArrayList<Task>();
+        private long now;
+
+        void runQueued() {
+            while (!queued.isEmpty()) queued.remove(0).run();
+        }
+
+        void advance(long ms) {
+            now += ms;
+            List<Task> due = new ArrayList<Task>();
+            for (Task t : scheduled) if (t.due <= now) due.add(t);
+            scheduled.removeAll(due);
+            for (Task t : due) if (!t.cancelled) t.task.run();
+            runQueued();
+        }
+
+        @Override public void execute(Runnable task) { queued.add(task); }
+
+        @Override public ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+            Task t = new Task(task, now + unit.toMillis(delay));
+            scheduled.add(t);
+            return t;
+        }
+
+        @Override public <V> ScheduledFuture<V> schedule(Callable<V> task, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initial, long period, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public ScheduledFuture<?> scheduleWithFixedDelay(Runnable task, long initial, long delay, TimeUnit unit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override public void shutdown() {}
+        @Override public List<Runnable> shutdownNow() { return new ArrayList<Runnable>(); }
+        @Override public boolean isShutdown() { return false; }
+        @Override public boolean isTerminated() { return false; }
+        @Override public boolean awaitTermination(long timeout, TimeUnit unit) { return true; }
+    }
+
+    private static final class Task implements ScheduledFuture<Object> {
+        final Runnable task;
+        final long due;
+        boolean cancelled;
+
+        Task(Runnable task, long due) {
+            this.task = task;
+            this.due = due;
+        }
+
+        @Override public long getDelay(TimeUnit unit) { return 0; }
+        @Override public int compareTo(Delayed o) { return 0; }
+        @Override public boolean cancel(boolean interrupt) { cancelled = true; return true; }
+        @Override public boolean isCancelled() { return cancelled; }
+        @Override public boolean isDone() { return cancelled; }
+        @Override public Object get() { return null; }
+        @Override public Object get(long timeout, TimeUnit unit) { return null; }
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Retrofit;
+
+public class ExtractorRegistryTest {
+
+    private static final int PSIZE = 50;
+
+    /** Rows with the fuel nested under data, one as a separated string. */
+    private static final String NESTED = "{\"status\":\"ok\",\"result\":[{\"id\":\"1\",\"data\":{\"total_fuel_consumed\":10.5}},"
+            + "{\"id\":\"2\",\"data\":{\"total_fuel_consumed\":\"1,000\"}}]}";
+    /** Same shape, other values. */
+    private static final String NESTED_LATER = "{\"status\":\"ok\",\"result\":[{\"id\":\"1\",\"data\":{\"total_fuel_consumed\":12}},"
+            + "{\"id\":\"2\",\"data\":{\"total_fuel_consumed\":\"2,000.5\"}}]}";
+    /** Flat rows under another name. */
+    private static final String FLAT = "{\"result\":[{\"id\":\"3\",\"fuel_consumed\":4.25,\"odo\":1},"
+            + "{\"id\":\"4\",\"fuel_consumed\":5,\"odo\":2}]}";
+
+    private final Map<String, String> bodies = new ConcurrentHashMap<String, String>();
+    private MockWebServer server;
+    private IntanglesRepository repo;
+
+    @Before public void serve() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override public MockResponse dispatch(RecordedRequest request) {
+                String body = bodies.get(request.getRequestUrl().queryParameter("acc_id"));
+                if (body == null || !"1".equals(request.getRequestUrl().queryParameter("pnum"))) {
+                    body = "{\"status\":\"ok\",\"result\":[]}";
+                }
+                return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+            }
+        });
+        server.start();
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .callbackExecutor(new Executor() {
+                    @Override public void execute(Runnable task) { task.run(); }
+                })
+                .addConverterFactory(FuelPageConverterFactory.create())
+                .build();
+        repo = new IntanglesRepository(retrofit.create(IntanglesApi.class), 2);
+    }
+
+    @After public void shutDown() throws IOException {
+        server.shutdown();
+    }
+
+    private double fetch(String accId) throws Exception {
+        return repo.fetchFuel("t", accId, "s", PSIZE, "en", true, "", "", false, 1.0);
+    }
+
+    private String key(String accId) {
+        return repo.fuelKey(accId, "s", "", "");
+    }
+
+    /* ------------ registry ------------ */
+
+    @Test public void shapesKeepTheirOwnKeys() {
+        ExtractorRegistry registry = new ExtractorRegistry();
+        FuelKeyAccessor nested = FuelKeyAccessor.of("data.total_fuel_consumed", null);
+        FuelKeyAccessor flat = FuelKeyAccessor.of("fuel_consumed", null);
+        registry.learn(1L, nested, ExtractorRegistry.NUMBERS);
+        registry.learn(2L, flat, ExtractorRegistry.STRINGS);
+        assertSame(nested, registry.get(1L).key);
+        assertSame(flat, registry.get(2L).key);
+        assertEquals(ExtractorRegistry.NUMBERS, registry.get(1L).kinds);
+        assertEquals(ExtractorRegistry.STRINGS, registry.get(2L).kinds);
+        assertNull(registry.get(3L));
+        assertEquals(2, registry.size());
+    }
+
+    @Test public void keysAreInterned() {
+        ExtractorRegistry registry = new ExtractorRegistry();
+        FuelKeyAccessor first = registry.intern(FuelKeyAccessor.of("fuel", null));
+        assertSame(first, registry.intern(FuelKeyAccessor.of("fuel", null)));
+        assertSame(first, registry.learn(9L, FuelKeyAccessor.of("fuel", null), ExtractorRegistry.NUMBERS).key);
+        FuelKeyAccessor spelt = registry.intern(FuelKeyAccessor.of("fuel", new String[] {"FUEL"}));
+        assertNotSame(first, spelt);
+        assertSame(spelt, registry.intern(FuelKeyAccessor.of("fuel", new String[] {"FUEL"})));
+        assertNotSame(spelt, registry.intern(FuelKeyAccessor.of("fuel", new String[] {"Fuel"})));
+        assertNotSame(first, registry.intern(FuelKeyAccessor.of("fuel", new String[0])));
+    }
+
+    @Test public void relearningWidensKindsUnderTheSameKeyAndReplacesOtherKeys() {
+        ExtractorRegistry registry = new ExtractorRegistry();
+        FuelKeyAccessor fuel = FuelKeyAccessor.of("fuel", null);
+        ExtractorRegistry.Profile numbers = registry.learn(5L, fuel, ExtractorRegistry.NUMBERS);
+        assertSame(numbers, registry.learn(5L, fuel, ExtractorRegistry.NUMBERS));
+        assertSame(numbers, registry.learn(5L, fuel, 0));
+        ExtractorRegistry.Profile wider = registry.learn(5L, fuel, ExtractorRegistry.kindOf("1,024"));
+        assertEquals(ExtractorRegistry.NUMBERS | ExtractorRegistry.STRINGS | ExtractorRegistry.SEPARATED, wider.kinds);
+        assertTrue(wider.accepts(ExtractorRegistry.STRINGS));
+        assertTrue(!numbers.accepts(ExtractorRegistry.STRINGS));
+
+        FuelKeyAccessor other = FuelKeyAccessor.of("total_fuel", null);
+        ExtractorRegistry.Profile replaced = registry.learn(5L, other, ExtractorRegistry.STRINGS);
+        assertSame(other, registry.get(5L).key);
+        assertEquals(ExtractorRegistry.STRINGS, replaced.kinds);
+    }
+
+    @Test public void leastRecentlyUsedShapesAreDropped() {
+        ExtractorRegistry registry = new ExtractorRegistry();
+        FuelKeyAccessor fuel = FuelKeyAccessor.of("fuel", null);
+        for (long shape = 0; shape < 64; shape++) registry.learn(shape, fuel, ExtractorRegistry.NUMBERS);
+        registry.get(0L);
+        registry.learn(64L, fuel, ExtractorRegistry.NUMBERS);
+        assertEquals(64, registry.size());
+        assertTrue(registry.get(0L) != null);
+        assertNull(registry.get(1L));
+    }
+
+    @Test public void profilesSurviveASnapshot() throws IOException {
+        ExtractorRegistry registry = new ExtractorRegistry();
+        registry.learn(1L, FuelKeyAccessor.of("data.total_fuel_consumed", null), ExtractorRegistry.NUMBERS);
+        registry.learn(2L, FuelKeyAccessor.of("fuel", new String[] {"Fuel"}), ExtractorRegistry.STRINGS | ExtractorRegistry.SEPARATED);
+        registry.learn(3L, FuelKeyAccessor.of("fuel", new String[] {"Fuel"}), ExtractorRegistry.NUMBERS);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        registry.writeTo(new DataOutputStream(bytes));
+
+        ExtractorRegistry restored = new ExtractorRegistry();
+        restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(3, restored.size());
+        for (long shape = 1; shape <= 3; shape++) {
+            assertEquals(registry.get(shape).key.dotted, restored.get(shape).key.dotted);
+            assertEquals(registry.get(shape).kinds, restored.get(shape).kinds);
+        }
+        assertSame(restored.get(2L).key, restored.get(3L).key);
+        assertEquals("Fuel", restored.get(2L).key.fallback[0]);
+        assertNull(restored.get(1L).key.fallback);
+    }
+
+    /* ------------ through the repository ------------ */
+
+    @Test public void differentlyShapedQueriesKeepSeparateKeys() throws Exception {
+        bodies.put("nested", NESTED);
+        bodies.put("flat", FLAT);
+        long learned = Metrics.SHAPES_LEARNED.get();
+        assertEquals(1010.5, fetch("nested"), 0.0);
+        assertEquals(9.25, fetch("flat"), 0.0);
+        assertEquals("data.total_fuel_consumed", key("nested"));
+        assertEquals("fuel_consumed", key("flat"));
+        assertEquals(learned + 2, Metrics.SHAPES_LEARNED.get());
+
+        // Changed pages of known shapes are streamed with their own keys, nothing learned again
+        bodies.put("nested", NESTED_LATER);
+        bodies.put("flat", FLAT.replace("4.25", "6.75"));
+        long detected = Metrics.DETECT_KEY.count();
+        assertEquals(2012.5, fetch("nested"), 0.0);
+        assertEquals(11.75, fetch("flat"), 0.0);
+        assertEquals("data.total_fuel_consumed", key("nested"));
+        assertEquals("fuel_consumed", key("flat"));
+        assertEquals(learned + 2, Metrics.SHAPES_LEARNED.get());
+        assertEquals(detected, Metrics.DETECT_KEY.count());
+    }
+
+    @Test public void aNewQueryOnALearnedShapeTakesItsKeyWithoutDetection() throws Exception {
+        bodies.put("first", NESTED);
+        bodies.put("second", NESTED_LATER);
+        fetch("first");
+        long detected = Metrics.DETECT_KEY.count(), reused = Metrics.SHAPES_REUSED.get();
+        assertEquals(2012.5, fetch("second"), 0.0);
+        assertEquals("data.total_fuel_consumed", key("second"));
+        assertEquals(detected, Metrics.DETECT_KEY.count());
+        assertEquals(reused + 1, Metrics.SHAPES_REUSED.get());
+    }
+
+    @Test public void aQueryWhoseSchemaChangesDetectsOnceAndLeavesOthersAlone() throws Exception {
+        bodies.put("moving", NESTED);
+        bodies.put("steady", NESTED_LATER);
+        fetch("moving");
+        fetch("steady");
+
+        bodies.put("moving", FLAT);
+        long detected = Metrics.DETECT_KEY.count();
+        assertEquals(9.25, fetch("moving"), 0.0);
+        assertEquals("fuel_consumed", key("moving"));
+        assertEquals(detected + 1, Metrics.DETECT_KEY.count());
+
+        bodies.put("moving", FLAT.replace("\"fuel_consumed\":5", "\"fuel_consumed\":7"));
+        bodies.put("steady", NESTED);
+        assertEquals(11.25, fetch("moving"), 0.0);
+        assertEquals(1010.5, fetch("steady"), 0.0);
+        assertEquals("data.total_fuel_consumed", key("steady"));
+        assertEquals(detected + 1, Metrics.DETECT_KEY.count());
+    }
+}
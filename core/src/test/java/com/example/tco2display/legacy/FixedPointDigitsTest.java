@@ -0,0 +1,110 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FixedPointDigitsTest {
+
+    private final FixedPointDigits digits = new FixedPointDigits();
+
+    private String format(double v) {
+        digits.set(v);
+        return new String(digits.chars, 0, digits.intLength()) + "."
+                + new String(digits.chars, digits.intLength(), FixedPointDigits.FRAC_DIGITS);
+    }
+
+    private void assertLikeFormatter(double v) {
+        assertEquals("for " + v, String.format(Locale.US, "%.3f", v), format(v));
+    }
+
+    @Test public void plainValues() {
+        double[] values = {0.0, 1.0, 0.001, 0.009, 0.999, 9.9994, 12.5, 100.0, 1234.567, 98765.4321, 1e11 - 0.001};
+        for (double v : values) {
+            assertLikeFormatter(v);
+            assertLikeFormatter(-v);
+        }
+    }
+
+    @Test public void halfThousandthsRoundHalfUp() {
+        // None of these is exact in binary; several sit just below the tie
+        double[] ties = {0.0005, 0.0015, 0.0025, 1.0005, 2.0015, 1.2345, 0.1235, 10.0045, 123.4565, 9999.9995, 12345678.9125};
+        for (double v : ties) {
+            assertLikeFormatter(v);
+            assertLikeFormatter(-v);
+        }
+        assertEquals("1.001", format(1.0005));
+        assertEquals("-1.001", format(-1.0005));
+    }
+
+    @Test public void everyTieBelowAThousand() {
+        for (int i = 0; i < 1000000; i++) {
+            assertLikeFormatter((i * 10 + 5) / 10000.0);
+        }
+    }
+
+    @Test public void neighboursOfTiesRoundTheExactBinaryValue() {
+        // One ulp either side of a tie is no longer a 4-decimal number: the Dekker path decides
+        Random r = new Random(8);
+        for (int i = 0; i < 200000; i++) {
+            double tie = (r.nextInt(100000000) * 10L + 5) / 10000.0;
+            assertLikeFormatter(Math.nextUp(tie));
+            assertLikeFormatter(Math.nextDown(tie));
+        }
+        assertEquals("0.000", format(Math.nextDown(0.0005)));
+        assertEquals("0.001", format(Math.nextUp(0.0005)));
+    }
+
+    @Test public void randomValuesBelowTheExactLimit() {
+        Random r = new Random(42);
+        for (int i = 0; i < 500000; i++) {
+            double scale = Math.pow(10, r.nextInt(12) - 1);
+            double v = r.nextDouble() * scale;
+            if (v >= 1e11) continue;
+            assertLikeFormatter(v);
+            assertLikeFormatter(-v);
+        }
+    }
+
+    @Test public void negativeZeroKeepsItsSign() {
+        assertEquals("-0.000", format(-0.0));
+        assertLikeFormatter(-0.0);
+        assertLikeFormatter(-0.0004);
+        assertEquals(2, digits.intLength());
+    }
+
+    @Test public void nanShowsDashes() {
+        assertEquals("-.---", format(Double.NaN));
+        assertEquals(1, digits.intLength());
+        assertEquals(4, digits.length());
+    }
+
+    @Test public void infinitiesAndHugeValuesSaturate() {
+        assertEquals("999999999999.999", format(Double.POSITIVE_INFINITY));
+        assertEquals("-999999999999.999", format(Double.NEGATIVE_INFINITY));
+        assertEquals("999999999999.999", format(1e12));
+        assertEquals("999999999999.999", format(9.99999999999e300));
+        assertEquals("-999999999999.999", format(-1e15));
+        assertEquals("999999999999.999", format(999999999999.9996));
+        assertEquals(FixedPointDigits.MAX_INT_DIGITS + FixedPointDigits.FRAC_DIGITS, digits.length());
+    }
+
+    @Test public void largeValuesBelowSaturation() {
+        // Above 1e11 only values within an ulp of a tie may differ; these are not
+        double[] values = {1e11, 123456789012.25, 999999999999.0, 500000000000.125, 314159265358.75};
+        for (double v : values) {
+            assertLikeFormatter(v);
+            assertLikeFormatter(-v);
+        }
+    }
+
+    @Test public void reuseOverwritesShorterAndLongerValues() {
+        assertEquals("-123456.789", format(-123456.789));
+        assertEquals("1.500", format(1.5));
+        assertEquals("-.---", format(Double.NaN));
+        assertEquals("42.000", format(42));
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class FuelPageReaderTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String[] IDS = {
+        "\"17\"", "17", "\"007\"", "\"V-\\u00e9\\ud83d\\ude00\"", "\"\u00e9t\u00e9\"", "null", "true", "4.5",
+        "\"9223372036854775808\"", "\"\"",
+    };
+    private static final String[] VALUES = {
+        "12.5", "-0.0", "1e3", "1.5E-7", "123456789012345678", "0.1234567890123456789", "4.9e-324",
+        "\"17.25\"", "\" 42 \"", "\"1,024.5\"", "\"1e2\"", "\"abc\"", "\"\"", "null", "true", "{}", "[1]",
+        "\"\\u0031\\u0032.5\"",
+    };
+
+    /** Rows of the same shape with the fuel value nested, missing, misspelt or odd now and then. */
+    static String page(Random r, int rows, String wrapper) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) b.append(',');
+            b.append('{');
+            int idForm = r.nextInt(IDS.length + 1);
+            if (idForm < IDS.length) b.append("\"id\":").append(IDS[idForm]).append(',');
+            b.append("\"note\":\"esc \\\" \\\\ \\/ \\b\\f\\n\\r\\t \\u00e9 \\ud83d\\ude00 \uD83D\uDE00 \u00e9\",");
+            b.append("\"data\":{\"odo\":").append(r.nextInt(100000)).append(",\"tags\":[\"a\",{\"fuel\":1}],");
+            String value = r.nextInt(3) == 0 ? VALUES[r.nextInt(VALUES.length)]
+                    : String.format(Locale.US, "%." + r.nextInt(6) + "f", r.nextDouble() * 1000);
+            switch (r.nextInt(8)) {
+                case 0: break;                                                       // missing
+                case 1: b.append("\"Total_Fuel_Consumed\":").append(value).append(','); break;
+                case 2: b.append("\"total\\u005ffuel_consumed\":").append(value).append(','); break;
+                case 3: b.append("\"total_fuel_consumed\":1,\"total_fuel_consumed\":").append(value).append(','); break;
+                default: b.append("\"total_fuel_consumed\":").append(value).append(',');
+            }
+            b.append("\"unit\":\"l\"}}");
+        }
+        return String.format(wrapper, b);
+    }
+
+    private static void assertLikeTree(FuelPage page, String dotted) throws IOException {
+        List<JsonObject> rows = IntanglesRepository.iterPayloadRows(page.toTree());
+        FuelKeyAccessor key = FuelKeyAccessor.compile(dotted, rows);
+        PageColumns expected = new PageColumns();
+        IntanglesRepository.collectRows(rows, key, expected);
+        PageColumns actual = new PageColumns();
+        assertTrue(new FuelPageReader(key).read(page, actual));
+        assertSameColumns(expected, actual);
+        assertEquals(Double.doubleToLongBits(expected.sum()), Double.doubleToLongBits(actual.sum()));
+    }
+
+    static void assertSameColumns(PageColumns expected, PageColumns actual) {
+        assertEquals("rows", expected.rows, actual.rows);
+        assertEquals("hits", expected.hits, actual.hits);
+        for (int i = 0; i < expected.rows; i++) {
+            assertEquals("value of row " + i, expected.hasValue(i), actual.hasValue(i));
+            assertEquals("value of row " + i, Double.doubleToLongBits(expected.values[i]), Double.doubleToLongBits(actual.values[i]));
+            assertEquals("id of row " + i, expected.ids[i], actual.ids[i]);
+            assertEquals("id of row " + i, expected.textId(i), actual.textId(i));
+        }
+    }
+
+    private static FuelPage utf8(String json) {
+        return new FuelPage(json.getBytes(UTF_8), UTF_8);
+    }
+
+    @Test public void streamedColumnsMatchTheTree() throws IOException {
+        Random r = new Random(19);
+        String[] wrappers = {"{\"status\":\"ok\",\"result\":[%s]}", "{\"data\":[%s]}", "[%s]",
+                "{\"data\":[{\"id\":\"x\",\"total_fuel_consumed\":1}],\"result\":[%s]}"};
+        for (int i = 0; i < 400; i++) {
+            String json = page(r, r.nextInt(40), wrappers[i % wrappers.length]);
+            assertLikeTree(utf8(json), "data.total_fuel_consumed");
+            assertLikeTree(new FuelPage(FuelPageTest.gzip(json), UTF_8), "data.total_fuel_consumed");
+        }
+    }
+
+    @Test public void flatAndSingleRowPayloads() throws IOException {
+        assertLikeTree(utf8("{\"result\":{\"id\":\"3\",\"fuel\":\"2,500\"}}"), "fuel");
+        assertLikeTree(utf8("{\"result\":[{\"id\":1,\"FUEL\":2},{\"id\":2}]}"), "fuel");
+        assertLikeTree(utf8("{\"result\":[]}"), "fuel");
+        assertLikeTree(utf8("[]"), "fuel");
+        assertLikeTree(utf8("[{\"id\":1,\"a\":{\"b\":{\"c\":[{\"fuel\":4}]}}}]"), "a.b.c.fuel");
+    }
+
+    @Test public void pagesTheScannerDeclinesAreReadByGson() throws IOException {
+        String json = page(new Random(5), 30, "{\"result\":[%s]}");
+        // A byte-order mark, another charset, and a multi-member gzip body all go through Gson
+        assertLikeTree(utf8("\uFEFF" + json), "data.total_fuel_consumed");
+        Charset latin = Charset.forName("ISO-8859-1");
+        String ascii = json.replace("\uD83D\uDE00", "").replace("\u00e9", "e");
+        assertLikeTree(new FuelPage(ascii.getBytes(latin), latin), "data.total_fuel_consumed");
+        int cut = json.length() / 2;
+        assertLikeTree(new FuelPage(FuelPageTest.gzip(json.substring(0, cut), json.substring(cut)), UTF_8),
+                "data.total_fuel_consumed");
+    }
+
+    @Test public void malformedPagesFailLikeGson() throws IOException {
+        String[] broken = {"{\"result\":[{\"id\":1,\"fuel\":2}", "{\"result\":[{\"id\":1,\"fuel\":2}]} x", "{'result':[]}"};
+        for (String json : broken) {
+            try {
+                new FuelPageReader(FuelKeyAccessor.of("fuel", null)).read(utf8(json), new PageColumns());
+                fail("read " + json);
+            } catch (IOException expected) {
+                // Gson's own error
+            } catch (RuntimeException expected) {
+                assertTrue(expected.toString(), !(expected instanceof Utf8JsonScanner.Fallback));
+            }
+        }
+    }
+
+    /* ------------ toDouble ------------ */
+
+    private static void assertLikeParseDouble(String s) {
+        for (boolean dropCommas : new boolean[] {false, true}) {
+            double expected;
+            try {
+                expected = Double.parseDouble(dropCommas ? s.trim().replace(",", "") : s);
+            } catch (NumberFormatException e) {
+                expected = FuelKeyAccessor.MISSING;
+            }
+            assertEquals(s + (dropCommas ? " without commas" : ""),
+                    Double.doubleToLongBits(expected), Double.doubleToLongBits(FuelPageReader.toDouble(s, dropCommas)));
+        }
+    }
+
+    @Test public void toDoubleExponents() {
+        String[] values = {"1e0", "1e22", "1e23", "1e-22", "1e-23", "1.5e22", "1.5E-22", "123e-5", "1E+3", "-2e-3",
+                "1e308", "1e309", "1e-400", "0e999", "-0e-999", "1e", "1e+", "1e-", "e5", "1e1000", "1e0001", "9.99e-21"};
+        for (String s : values) assertLikeParseDouble(s);
+    }
+
+    @Test public void toDoubleLongMantissas() {
+        String[] values = {"123456789012345", "1234567890123456", "12345678901234567890", "0.1234567890123456789",
+                "9007199254740993", "9007199254740992.5", "2.2250738585072012e-308", "179769313486231570000000000",
+                "0.000000000000000000000000000001", "100000000000000000000000", "000000000000000000001.5"};
+        for (String s : values) assertLikeParseDouble(s);
+    }
+
+    @Test public void toDoubleSubnormals() {
+        String[] values = {"4.9e-324", "2.4703282292062327e-324", "2.4703282292062328e-324", "1e-310",
+                "2.2250738585072014E-308", "2.225073858507201E-308", "-1.0e-320"};
+        for (String s : values) assertLikeParseDouble(s);
+        assertLikeParseDouble(Double.toString(Double.MIN_VALUE));
+        assertLikeParseDouble(Double.toString(Math.nextDown(Double.MIN_NORMAL)));
+    }
+
+    @Test public void toDoubleOddText() {
+        String[] values = {"", " ", "-", "+", ".", "+.5", "-.5", "5.", " 12 ", "\t7\n", "1,024.5", ",1,", "1,,2",
+                "1 000", "0x1p3", "NaN", "-Infinity", "Infinity", "1d", "2f", "1e5f", "--1", "1.2.3", "1e1,0", "abc",
+                "\u0661", "1_000"};
+        for (String s : values) assertLikeParseDouble(s);
+    }
+
+    @Test public void toDoubleRandomDecimals() {
+        Random r = new Random(20);
+        for (int i = 0; i < 300000; i++) {
+            String s;
+            switch (i % 4) {
+                case 0: s = Double.toString(Double.longBitsToDouble(r.nextLong())); break;
+                case 1: s = Double.toString(r.nextDouble() * Math.pow(10, r.nextInt(40) - 20)); break;
+                case 2: s = new BigDecimal(r.nextLong()).movePointLeft(r.nextInt(30)).toPlainString(); break;
+                default: s = String.format(Locale.US, "%,." + r.nextInt(8) + "f", (r.nextDouble() - 0.5) * 1e9);
+            }
+            assertLikeParseDouble(s);
+        }
+    }
+}
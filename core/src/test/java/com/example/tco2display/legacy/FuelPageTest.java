@@ -0,0 +1,92 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class FuelPageTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String TEXT = "{\"status\":\"ok\",\"result\":[{\"id\":\"1\",\"total_fuel_consumed\":12.5},"
+            + "{\"id\":\"2\",\"total_fuel_consumed\":\"1,024.25\"}]}";
+
+    static byte[] gzip(String... members) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String m : members) {
+            GZIPOutputStream gz = new GZIPOutputStream(out);
+            gz.write(m.getBytes(UTF_8));
+            gz.finish();
+        }
+        return out.toByteArray();
+    }
+
+    @Test public void gzipAndPlainTextShareChecksumAndLength() throws IOException {
+        FuelPage plain = new FuelPage(TEXT.getBytes(UTF_8), UTF_8);
+        FuelPage packed = new FuelPage(gzip(TEXT), UTF_8);
+        assertEquals(plain.checksum(), packed.checksum());
+        assertEquals(TEXT.length(), plain.jsonLength());
+        assertEquals(TEXT.length(), packed.jsonLength());
+    }
+
+    @Test public void multiMemberGzipCoversEveryMember() throws IOException {
+        int cut = TEXT.indexOf("{\"id\":\"2\"");
+        FuelPage plain = new FuelPage(TEXT.getBytes(UTF_8), UTF_8);
+        FuelPage split = new FuelPage(gzip(TEXT.substring(0, cut), TEXT.substring(cut)), UTF_8);
+        assertEquals(plain.checksum(), split.checksum());
+        assertEquals(TEXT.length(), split.jsonLength());
+        assertEquals(plain.toTree(), split.toTree());
+    }
+
+    @Test public void aChangeInAnEarlierMemberChangesTheChecksum() throws IOException {
+        int cut = TEXT.indexOf("{\"id\":\"2\"");
+        String edited = TEXT.substring(0, cut).replace("12.5", "13.5");
+        FuelPage before = new FuelPage(gzip(TEXT.substring(0, cut), TEXT.substring(cut)), UTF_8);
+        FuelPage after = new FuelPage(gzip(edited, TEXT.substring(cut)), UTF_8);
+        assertNotEquals(before.checksum(), after.checksum());
+    }
+
+    @Test public void theParsingReadMeasuresAGzipPage() throws IOException {
+        FuelPage plain = new FuelPage(TEXT.getBytes(UTF_8), UTF_8);
+        assertTrue(plain.isMeasured());
+        int cut = TEXT.indexOf("{\"id\":\"2\"");
+        FuelPage[] pages = {
+            new FuelPage(gzip(TEXT), UTF_8),                                        // scanner
+            new FuelPage(gzip(TEXT.substring(0, cut), TEXT.substring(cut)), UTF_8),  // Gson
+        };
+        for (FuelPage page : pages) {
+            assertFalse(page.isMeasured());
+            assertTrue(new FuelPageReader(FuelKeyAccessor.of("total_fuel_consumed", null)).read(page, new PageColumns()));
+            assertTrue(page.isMeasured());
+            assertEquals(plain.checksum(), page.checksum());
+            assertEquals(TEXT.length(), page.jsonLength());
+        }
+        FuelPage tree = new FuelPage(gzip(TEXT), UTF_8);
+        tree.toTree();
+        assertTrue(tree.isMeasured());
+        assertEquals(plain.checksum(), tree.checksum());
+    }
+
+    @Test public void aReadThatStopsEarlyLeavesTheChecksumToAnInflate() throws IOException {
+        String bare = "{\"id\":\"1\",\"total_fuel_consumed\":12.5}";
+        FuelPage page = new FuelPage(gzip(bare), UTF_8);
+        assertFalse(new FuelPageReader(FuelKeyAccessor.of("total_fuel_consumed", null)).read(page, new PageColumns()));
+        assertEquals(new FuelPage(bare.getBytes(UTF_8), UTF_8).checksum(), page.checksum());
+        assertEquals(bare.length(), page.jsonLength());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedGzipFails() throws IOException {
+        byte[] body = gzip(TEXT);
+        byte[] cut = new byte[body.length - 6];
+        System.arraycopy(body, 0, cut, 0, cut.length);
+        new FuelPage(cut, UTF_8).checksum();
+    }
+}
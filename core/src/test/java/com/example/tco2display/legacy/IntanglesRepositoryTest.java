@@ -0,0 +1,190 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import retrofit2.Retrofit;
+
+public class IntanglesRepositoryTest {
+
+    private static final int PSIZE = 2;
+    private static final String EMPTY = "{\"status\":\"ok\",\"result\":[]}";
+
+    /** Pages per acc_id, or acc_id/groups, page 1 first; past the last one the server answers with no rows. */
+    private final Map<String, String[]> pages = new ConcurrentHashMap<String, String[]>();
+    private MockWebServer server;
+    private IntanglesRepository repo;
+
+    @Before public void serve() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override public MockResponse dispatch(RecordedRequest request) {
+                String accId = request.getRequestUrl().queryParameter("acc_id");
+                String groups = request.getRequestUrl().queryParameter("groups");
+                String[] bodies = pages.get(groups == null || groups.isEmpty() ? accId : accId + "/" + groups);
+                int pnum = Integer.parseInt(request.getRequestUrl().queryParameter("pnum"));
+                String body = bodies != null && pnum <= bodies.length ? bodies[pnum - 1] : EMPTY;
+                return new MockResponse().setHeader("Content-Type", "application/json").setBody(body);
+            }
+        });
+        server.start();
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .callbackExecutor(new Executor() {
+                    @Override public void execute(Runnable task) { task.run(); }
+                })
+                .addConverterFactory(FuelPageConverterFactory.create())
+                .build();
+        repo = new IntanglesRepository(retrofit.create(IntanglesApi.class), 4);
+    }
+
+    @After public void shutDown() throws IOException {
+        server.shutdown();
+    }
+
+    private double fetch(String accId) throws Exception {
+        return repo.fetchFuel("t", accId, "s", PSIZE, "en", true, "", "", false, 1.0);
+    }
+
+    private double tco2(String accId, String groups) throws Exception {
+        return repo.fetchAndSumTco2("t", accId, "s", PSIZE, "en", true, "", groups, false, "kg", 1.0);
+    }
+
+    private static String fuelPage(String id1, String fuel1, String id2, String fuel2) {
+        return "{\"status\":\"ok\",\"result\":[{\"id\":\"" + id1 + "\",\"total_fuel_consumed\":" + fuel1 + "},"
+                + "{\"id\":\"" + id2 + "\",\"total_fuel_consumed\":" + fuel2 + "}]}";
+    }
+
+    private static String fuelLessPage(String id1, String id2) {
+        return "{\"status\":\"ok\",\"result\":[{\"id\":\"" + id1 + "\",\"odo\":1},{\"id\":\"" + id2 + "\",\"odo\":2}]}";
+    }
+
+    /* ------------ pages without a fuel field ------------ */
+
+    @Test public void aFuelLessPageInTheMiddleCountsZero() throws Exception {
+        pages.put("a", new String[] {fuelPage("1", "10", "2", "\"20.5\""), fuelLessPage("3", "4"),
+                fuelPage("5", "1", "6", "2"), "{\"result\":[{\"id\":\"7\",\"total_fuel_consumed\":4}]}"});
+        assertEquals(37.5, fetch("a"), 0.0);
+        assertEquals("total_fuel_consumed", repo.fuelKey("a", "s", "", ""));
+        assertTrue(Double.isNaN(repo.vehicleFuel("a", "s", "", "", "3")));
+        assertEquals(1.0, repo.vehicleFuel("a", "s", "", "", "5"), 0.0);
+
+        // Again with the key cached, the fuel-less page reused or read again
+        assertEquals(37.5, fetch("a"), 0.0);
+        pages.get("a")[1] = fuelLessPage("3", "9");
+        pages.get("a")[2] = fuelPage("5", "2", "6", "2");
+        assertEquals(38.5, fetch("a"), 0.0);
+        assertEquals("total_fuel_consumed", repo.fuelKey("a", "s", "", ""));
+    }
+
+    @Test public void aFuelLessFirstPageTakesTheKeyOfALaterOne() throws Exception {
+        pages.put("b", new String[] {fuelLessPage("1", "2"), fuelPage("3", "5", "4", "6"), EMPTY});
+        assertEquals(11.0, fetch("b"), 0.0);
+        assertEquals("total_fuel_consumed", repo.fuelKey("b", "s", "", ""));
+        assertEquals(11.0, fetch("b"), 0.0);
+    }
+
+    @Test public void noPageWithAFuelFieldFailsTheRefresh() throws Exception {
+        pages.put("c", new String[] {fuelLessPage("1", "2"), fuelLessPage("3", "4"), EMPTY});
+        try {
+            fetch("c");
+            fail("summed a fleet without a fuel field");
+        } catch (RuntimeException expected) {
+            assertEquals("Could not detect a fuel field", expected.getMessage());
+        }
+        assertNull(repo.fuelKey("c", "s", "", ""));
+        pages.put("c", new String[] {fuelPage("1", "1", "2", "2"), EMPTY});
+        assertEquals(3.0, fetch("c"), 0.0);
+    }
+
+    /* ------------ groups and leaderboards ------------ */
+
+    @Test public void groupSubtotalsSumToTheFleetTotal() throws Exception {
+        pages.put("g", new String[] {fuelPage("1", "10", "2", "20"), fuelPage("3", "\"5.5\"", "4", "7"), EMPTY});
+        pages.put("g/north", new String[] {fuelPage("1", "10", "3", "\"5.5\""), EMPTY});
+        pages.put("g/south", new String[] {fuelPage("2", "20", "4", "7"), EMPTY});
+        assertTrue(repo.groupTotals("g", "s", "").isEmpty());
+        for (int refresh = 0; refresh < 2; refresh++) {
+            double fleet = tco2("g", "");
+            double north = tco2("g", "north"), south = tco2("g", "south");
+            Map<String, Double> groups = repo.groupTotals("g", "s", "");
+            assertEquals(Arrays.asList("north", "south"), new ArrayList<String>(groups.keySet()));
+            assertEquals(north, groups.get("north"), 0.0);
+            assertEquals(south, groups.get("south"), 0.0);
+            assertEquals(fleet, north + south, 1e-12);
+
+            // vehicle 4 moves on: the fleet's second page and south's only page change
+            pages.get("g")[1] = fuelPage("3", "\"5.5\"", "4", "30");
+            pages.get("g/south")[0] = fuelPage("2", "20", "4", "30");
+        }
+        assertEquals(IntanglesRepository.toTco2(65.5, 1.0), tco2("g", ""), 1e-12);
+    }
+
+    @Test public void topVehiclesFollowTheLastRefresh() throws Exception {
+        assertNull(repo.topVehicles("h", "s", "", "", 2));
+        pages.put("h", new String[] {fuelPage("1", "10", "2", "20"), fuelPage("3", "\"5.5\"", "4", "7"), EMPTY});
+        double fleet = tco2("h", "");
+        FleetBreakdown top = repo.topVehicles("h", "s", "", "", 2);
+        assertEquals(fleet, top.totalTco2, 0.0);
+        assertEquals(4, top.vehicles);
+        assertEquals(2, top.size());
+        assertEquals("2", top.id(0));
+        assertEquals("1", top.id(1));
+        assertEquals(IntanglesRepository.toTco2(20, 1.0), top.tco2(0), 1e-12);
+
+        // one changed page: vehicle 4 overtakes, vehicle 3 leaves the fleet
+        pages.get("h")[1] = "{\"result\":[{\"id\":\"4\",\"total_fuel_consumed\":\"1,000\"}]}";
+        fleet = tco2("h", "");
+        top = repo.topVehicles("h", "s", "", "", 10);
+        assertEquals(fleet, top.totalTco2, 0.0);
+        assertEquals(3, top.vehicles);
+        assertEquals(Arrays.asList("4", "2", "1"), Arrays.asList(top.id(0), top.id(1), top.id(2)));
+        assertEquals(IntanglesRepository.toTco2(1000, 1.0), top.tco2(0), 1e-12);
+        double sum = 0;
+        for (int rank = 0; rank < top.size(); rank++) sum += top.tco2(rank);
+        assertEquals(fleet, sum, 1e-12);
+    }
+
+    /* ------------ how many pages are asked for ------------ */
+
+    @Test public void aOnePageFleetCostsOneRequestPerRefresh() throws Exception {
+        pages.put("e", new String[] {"{\"result\":[{\"id\":\"1\",\"total_fuel_consumed\":3}]}"});
+        assertEquals(3.0, fetch("e"), 0.0);
+        for (int i = 0; i < 3; i++) {
+            int before = server.getRequestCount();
+            assertEquals(3.0, fetch("e"), 0.0);
+            assertEquals(1, server.getRequestCount() - before);
+        }
+    }
+
+    @Test public void aFleetThatGrowsIsReadToItsNewEnd() throws Exception {
+        pages.put("f", new String[] {fuelPage("1", "1", "2", "2"), EMPTY});
+        assertEquals(3.0, fetch("f"), 0.0);
+        pages.put("f", new String[] {fuelPage("1", "1", "2", "2"), fuelPage("3", "3", "4", "4"),
+                fuelPage("5", "5", "6", "6"), "{\"result\":[{\"id\":\"7\",\"total_fuel_consumed\":7}]}"});
+        assertEquals(28.0, fetch("f"), 0.0);
+        pages.put("f", new String[] {fuelPage("1", "1", "2", "2"), EMPTY});
+        assertEquals(3.0, fetch("f"), 0.0);
+    }
+
+    @Test public void anEmptyFleetIsNotAnError() throws Exception {
+        pages.put("d", new String[] {EMPTY});
+        assertEquals(0.0, fetch("d"), 0.0);
+    }
+}
@@ -0,0 +1,285 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okio.Timeout;
+import org.junit.Test;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+public class PagePipelineTest {
+
+    private static final long WAIT_MS = 5000;
+
+    /** A request the test answers by hand, on its own thread; it shows up in {@code issued} once enqueued. */
+    static final class FakeCall implements Call<FuelPage> {
+        final int pnum;
+        private final BlockingQueue<FakeCall> issued;
+        private volatile Callback<FuelPage> callback;
+        private volatile boolean canceled;
+
+        FakeCall(int pnum, BlockingQueue<FakeCall> issued) {
+            this.pnum = pnum;
+            this.issued = issued;
+        }
+
+        void respond() { callback.onResponse(this, Response.success((FuelPage) null)); }
+
+        void fail(IOException e) { callback.onFailure(this, e); }
+
+        @Override public Response<FuelPage> execute() { throw new UnsupportedOperationException(); }
+        @Override public void enqueue(Callback<FuelPage> callback) {
+            this.callback = callback;
+            issued.add(this);
+        }
+        @Override public boolean isExecuted() { return callback != null; }
+        @Override public void cancel() { canceled = true; }
+        @Override public boolean isCanceled() { return canceled; }
+        @Override public Call<FuelPage> clone() { return new FakeCall(pnum, issued); }
+        @Override public Request request() { return new Request.Builder().url("http://localhost/" + pnum).build(); }
+        @Override public Timeout timeout() { return Timeout.NONE; }
+    }
+
+    /** A fleet of {@code fleetPages} pages, the last one short; {@code failing} throws in accept. */
+    static final class Fleet implements PagePipeline.Pages {
+        final int fleetPages;
+        int failing = -1;
+        final BlockingQueue<FakeCall> issued = new LinkedBlockingQueue<FakeCall>();
+        final List<FakeCall> all = new ArrayList<FakeCall>();
+        final List<Integer> accepted = new ArrayList<Integer>();
+        int inFlight, maxInFlight;
+
+        Fleet(int fleetPages) { this.fleetPages = fleetPages; }
+
+        @Override public synchronized Call<FuelPage> call(int pnum) {
+            FakeCall c = new FakeCall(pnum, issued);
+            all.add(c);
+            maxInFlight = Math.max(maxInFlight, ++inFlight);
+            return c;
+        }
+
+        @Override public synchronized boolean accept(int pnum, Response<FuelPage> response) throws Exception {
+            if (pnum == failing) throw new IllegalStateException("bad page " + pnum);
+            accepted.add(pnum);
+            return pnum < fleetPages;
+        }
+
+        FakeCall next() throws InterruptedException {
+            FakeCall c = issued.poll(WAIT_MS, TimeUnit.MILLISECONDS);
+            assertNotNull("no request issued", c);
+            return c;
+        }
+
+        /** Answers {@code c} as the network would, counting it out of flight first. */
+        void respond(FakeCall c) {
+            synchronized (this) { inFlight--; }
+            c.respond();
+        }
+
+        void fail(FakeCall c, IOException e) {
+            synchronized (this) { inFlight--; }
+            c.fail(e);
+        }
+
+        synchronized List<Integer> issuedPages() {
+            List<Integer> p = new ArrayList<Integer>();
+            for (FakeCall c : all) p.add(c.pnum);
+            return p;
+        }
+
+        synchronized List<Integer> acceptedPages() { return new ArrayList<Integer>(accepted); }
+    }
+
+    /** PagePipeline.run on a thread of its own; what it threw, if anything, after {@link #join}. */
+    static final class Runner extends Thread {
+        final PagePipeline pipeline;
+        final int knownPages;
+        volatile Exception thrown;
+
+        Runner(PagePipeline pipeline, int knownPages) {
+            this.pipeline = pipeline;
+            this.knownPages = knownPages;
+            start();
+        }
+
+        @Override public void run() {
+            try {
+                pipeline.run(1, knownPages);
+            } catch (Exception e) {
+                thrown = e;
+            }
+        }
+
+        Exception finish() throws InterruptedException {
+            join(WAIT_MS);
+            assertFalse("run did not return", isAlive());
+            return thrown;
+        }
+    }
+
+    /** Waits until nothing new is issued for a moment; the pipeline issues from the answering thread. */
+    private static void assertNothingMoreIssued(Fleet fleet) throws InterruptedException {
+        assertNull(fleet.issued.poll(50, TimeUnit.MILLISECONDS));
+    }
+
+    @Test public void pagesAreAcceptedAsTheyArriveAndTheWindowSlides() throws Exception {
+        Fleet fleet = new Fleet(10);
+        Runner run = new Runner(new PagePipeline(fleet, 3), 0);
+        List<FakeCall> pending = new ArrayList<FakeCall>();
+        for (int i = 0; i < 3; i++) pending.add(fleet.next());
+        assertNothingMoreIssued(fleet);
+        while (!pending.isEmpty()) {
+            // out of order: the newest request answers first
+            FakeCall c = pending.remove(pending.size() - 1);
+            fleet.respond(c);
+            FakeCall more;
+            while ((more = fleet.issued.poll(20, TimeUnit.MILLISECONDS)) != null) pending.add(more);
+        }
+        assertNull(run.finish());
+        List<Integer> accepted = fleet.acceptedPages();
+        assertEquals(10, accepted.size());
+        for (int p = 1; p <= 10; p++) assertTrue("page " + p, accepted.contains(p));
+        assertTrue(fleet.maxInFlight <= 3);
+    }
+
+    @Test public void aShortPageEndsItAndCancelsThePagesAfterIt() throws Exception {
+        Fleet fleet = new Fleet(2);
+        Runner run = new Runner(new PagePipeline(fleet, 4), 0);
+        FakeCall[] calls = {fleet.next(), fleet.next(), fleet.next(), fleet.next()};
+        fleet.respond(calls[1]);                          // page 2 is short: the end
+        assertFalse(calls[0].isCanceled());
+        assertTrue(calls[2].isCanceled());
+        assertTrue(calls[3].isCanceled());
+        fleet.respond(calls[3]);                          // late answers past the end are dropped
+        fleet.fail(calls[2], new IOException("Canceled"));
+        fleet.respond(calls[0]);
+        assertNull(run.finish());
+        assertEquals(Arrays.asList(2, 1), fleet.acceptedPages());
+        assertEquals(Arrays.asList(1, 2, 3, 4), fleet.issuedPages());
+    }
+
+    @Test public void knownPagesCapTheWindow() throws Exception {
+        // One page last time, one page now: nothing else is asked for
+        Fleet single = new Fleet(1);
+        Runner run = new Runner(new PagePipeline(single, 4), 1);
+        fleetRespondInOrder(single);
+        assertNull(run.finish());
+        assertEquals(Arrays.asList(1), single.issuedPages());
+
+        // Three pages last time: all three at once, the fourth only once page 3 is full
+        Fleet grown = new Fleet(5);
+        run = new Runner(new PagePipeline(grown, 4), 3);
+        FakeCall[] first = {grown.next(), grown.next(), grown.next()};
+        assertNothingMoreIssued(grown);
+        grown.respond(first[0]);
+        grown.respond(first[1]);
+        assertNothingMoreIssued(grown);
+        grown.respond(first[2]);
+        FakeCall four = grown.next(), five = grown.next();
+        assertEquals(4, four.pnum);
+        assertEquals(5, five.pnum);
+        fleetRespondInOrder(grown, four, five);
+        assertNull(run.finish());
+        assertEquals(Arrays.asList(1, 2, 3, 4, 5), grown.acceptedPages());
+    }
+
+    @Test public void aFleetThatShrankStillEnds() throws Exception {
+        Fleet fleet = new Fleet(1);
+        Runner run = new Runner(new PagePipeline(fleet, 4), 3);
+        FakeCall[] calls = {fleet.next(), fleet.next(), fleet.next()};
+        fleet.respond(calls[0]);
+        assertTrue(calls[1].isCanceled());
+        assertTrue(calls[2].isCanceled());
+        fleet.respond(calls[2]);
+        fleet.respond(calls[1]);
+        assertNull(run.finish());
+        assertEquals(Arrays.asList(1), fleet.acceptedPages());
+    }
+
+    @Test public void cancelStopsTheRunAndEveryRequest() throws Exception {
+        Fleet fleet = new Fleet(10);
+        PagePipeline pipeline = new PagePipeline(fleet, 3);
+        Runner run = new Runner(pipeline, 0);
+        FakeCall[] calls = {fleet.next(), fleet.next(), fleet.next()};
+        fleet.respond(calls[0]);
+        FakeCall fourth = fleet.next();
+        pipeline.cancel();
+        for (FakeCall c : new FakeCall[] {calls[1], calls[2], fourth}) {
+            assertTrue(c.isCanceled());
+            fleet.fail(c, new IOException("Canceled"));
+        }
+        Exception thrown = run.finish();
+        assertTrue(thrown instanceof IOException);
+        assertEquals("Canceled", thrown.getMessage());
+        assertEquals(Arrays.asList(1), fleet.acceptedPages());
+        assertNothingMoreIssued(fleet);
+    }
+
+    @Test public void cancelBeforeRunMakesItThrow() throws Exception {
+        Fleet fleet = new Fleet(3);
+        PagePipeline pipeline = new PagePipeline(fleet, 3);
+        pipeline.cancel();
+        Exception thrown = new Runner(pipeline, 0).finish();
+        assertEquals("Canceled", thrown.getMessage());
+        assertTrue(fleet.issuedPages().isEmpty());
+    }
+
+    @Test public void aFailingPageInTheMiddleFailsTheRun() throws Exception {
+        Fleet fleet = new Fleet(10);
+        fleet.failing = 2;
+        Runner run = new Runner(new PagePipeline(fleet, 4), 0);
+        FakeCall[] calls = {fleet.next(), fleet.next(), fleet.next(), fleet.next()};
+        fleet.respond(calls[2]);
+        FakeCall fifth = fleet.next();
+        fleet.respond(calls[1]);                          // accept throws
+        assertTrue(calls[0].isCanceled());
+        assertTrue(calls[3].isCanceled());
+        assertTrue(fifth.isCanceled());
+        fleet.respond(calls[0]);                          // answered anyway: not accepted
+        fleet.fail(calls[3], new IOException("Canceled"));
+        fleet.fail(fifth, new IOException("Canceled"));
+        Exception thrown = run.finish();
+        assertTrue(thrown instanceof IllegalStateException);
+        assertEquals("bad page 2", thrown.getMessage());
+        assertEquals(Arrays.asList(3), fleet.acceptedPages());
+        assertNothingMoreIssued(fleet);
+    }
+
+    @Test public void aNetworkFailureInTheMiddleFailsTheRun() throws Exception {
+        Fleet fleet = new Fleet(10);
+        Runner run = new Runner(new PagePipeline(fleet, 2), 0);
+        FakeCall one = fleet.next(), two = fleet.next();
+        IOException reset = new IOException("connection reset");
+        fleet.fail(two, reset);
+        assertTrue(one.isCanceled());
+        fleet.respond(one);
+        assertSame(reset, run.finish());
+        assertTrue(fleet.acceptedPages().isEmpty());
+    }
+
+    /** Answers {@code calls}, then whatever each answer issues, in page order, until the run stops asking. */
+    private static void fleetRespondInOrder(Fleet fleet, FakeCall... calls) throws InterruptedException {
+        List<FakeCall> pending = new ArrayList<FakeCall>(Arrays.asList(calls));
+        FakeCall more;
+        while ((more = fleet.issued.poll(50, TimeUnit.MILLISECONDS)) != null) pending.add(more);
+        while (!pending.isEmpty()) {
+            fleet.respond(pending.remove(0));
+            while ((more = fleet.issued.poll(20, TimeUnit.MILLISECONDS)) != null) pending.add(more);
+        }
+    }
+}
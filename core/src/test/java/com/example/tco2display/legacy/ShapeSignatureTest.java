@@ -0,0 +1,121 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ShapeSignatureTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final String KEY = "data.total_fuel_consumed";
+
+    private static FuelPage utf8(String json) {
+        return new FuelPage(json.getBytes(UTF_8), UTF_8);
+    }
+
+    private static long tree(String json) throws IOException {
+        return ShapeSignature.of(IntanglesRepository.iterPayloadRows(utf8(json).toTree()));
+    }
+
+    private static long streamed(String json) throws IOException {
+        FuelPageReader reader = new FuelPageReader(FuelKeyAccessor.NONE);
+        assertTrue(reader.read(utf8(json), new PageColumns()));
+        return reader.shape();
+    }
+
+    /**
+     * The signature and value kinds the reader takes while streaming are those taken from the
+     * tree; a first row that repeats a name only signs the same with itself (see ShapeSignature).
+     */
+    private static void assertLikeTree(FuelPage page, String dotted, boolean repeatsAName) throws IOException {
+        List<JsonObject> rows = IntanglesRepository.iterPayloadRows(page.toTree());
+        FuelKeyAccessor key = FuelKeyAccessor.compile(dotted, rows);
+        FuelPageReader reader = new FuelPageReader(key);
+        assertTrue(reader.read(page, new PageColumns()));
+        assertEquals("kinds", key.kindsIn(rows), reader.valueKinds());
+
+        FuelPageReader shapeOnly = new FuelPageReader(FuelKeyAccessor.NONE);
+        assertTrue(shapeOnly.read(page, new PageColumns()));
+        assertEquals("shape without a key", reader.shape(), shapeOnly.shape());
+        assertEquals(0, shapeOnly.valueKinds());
+        if (repeatsAName) assertNotEquals("shape", ShapeSignature.of(rows), reader.shape());
+        else assertEquals("shape", ShapeSignature.of(rows), reader.shape());
+    }
+
+    /** FuelPageReaderTest.page writes the key twice in some rows; true if the first row is one. */
+    private static boolean firstRowRepeatsAName(String json) {
+        int rows = json.indexOf("\"result\":[") >= 0 ? json.indexOf("\"result\":[") : 0;
+        int twice = json.indexOf("\"total_fuel_consumed\":1,\"total_fuel_consumed\"", rows);
+        return twice >= 0 && twice < json.indexOf("\"unit\":\"l\"}}", rows);
+    }
+
+    @Test public void streamedPagesSignLikeTheTree() throws IOException {
+        Random r = new Random(23);
+        String[] wrappers = {"{\"status\":\"ok\",\"result\":[%s]}", "{\"data\":[%s]}", "[%s]",
+                "{\"data\":[{\"id\":\"x\",\"total_fuel_consumed\":1}],\"result\":[%s]}"};
+        for (int i = 0; i < 400; i++) {
+            String json = FuelPageReaderTest.page(r, r.nextInt(40), wrappers[i % wrappers.length]);
+            boolean repeats = firstRowRepeatsAName(json);
+            assertLikeTree(utf8(json), KEY, repeats);
+            assertLikeTree(new FuelPage(FuelPageTest.gzip(json), UTF_8), KEY, repeats);
+            assertLikeTree(utf8(json), "total_fuel_consumed", repeats);
+        }
+    }
+
+    @Test public void pagesReadByGsonSignLikeTheTree() throws IOException {
+        String json = FuelPageReaderTest.page(new Random(7), 20, "{\"result\":[%s]}");
+        assertLikeTree(utf8("\uFEFF" + json), KEY, firstRowRepeatsAName(json));
+        int cut = json.length() / 3;
+        assertLikeTree(new FuelPage(FuelPageTest.gzip(json.substring(0, cut), json.substring(cut)), UTF_8), KEY,
+                firstRowRepeatsAName(json));
+    }
+
+    @Test public void valuesAndArrayContentsDoNotChangeTheShape() throws IOException {
+        String row = "[{\"id\":1,\"data\":{\"fuel\":2.5,\"unit\":\"l\"},\"tags\":[1,{\"a\":2}]}]";
+        long shape = tree(row);
+        assertEquals(shape, streamed(row));
+        String[] same = {
+            "[{\"id\":\"V-9\",\"data\":{\"fuel\":\"1,024\",\"unit\":null},\"tags\":[]}]",
+            "{\"result\":[{\"id\":true,\"data\":{\"fuel\":null,\"unit\":7},\"tags\":[[[]]]}]}",
+            "[{\"id\":1,\"data\":{\"fuel\":2.5,\"unit\":\"l\"},\"tags\":[1]},{\"other\":1}]",
+        };
+        for (String json : same) {
+            assertEquals(json, shape, tree(json));
+            assertEquals(json, shape, streamed(json));
+        }
+    }
+
+    @Test public void namesOrderAndNestingChangeTheShape() throws IOException {
+        long shape = tree("[{\"id\":1,\"data\":{\"fuel\":2.5},\"tags\":[]}]");
+        String[] differ = {
+            "[{\"id\":1,\"data\":{\"Fuel\":2.5},\"tags\":[]}]",                // spelling
+            "[{\"data\":{\"fuel\":2.5},\"id\":1,\"tags\":[]}]",                // order
+            "[{\"id\":1,\"data\":{\"fuel\":2.5,\"tags\":[]}}]",                // member moved into the object
+            "[{\"id\":1,\"data\":2.5,\"tags\":[]}]",                          // object became a leaf
+            "[{\"id\":1,\"data\":{\"fuel\":2.5},\"tags\":{}}]",                // array became an object
+            "[{\"id\":1,\"data\":{\"fuel\":2.5}}]",                           // member dropped
+            "[{\"id\":1,\"data\":{\"fuel\":2.5},\"tags\":[],\"x\":0}]",        // member added
+        };
+        for (String json : differ) {
+            assertNotEquals(json, shape, tree(json));
+            assertEquals(json, tree(json), streamed(json));
+        }
+    }
+
+    @Test public void pagesWithoutRowsHaveTheEmptyShape() throws IOException {
+        String[] empty = {"[]", "{\"result\":[]}", "{\"data\":[]}", "{\"result\":[1,\"x\",null]}"};
+        for (String json : empty) {
+            assertEquals(json, ShapeSignature.EMPTY, tree(json));
+            assertEquals(json, ShapeSignature.EMPTY, streamed(json));
+        }
+        assertNotEquals(ShapeSignature.EMPTY, tree("[{}]"));
+    }
+}
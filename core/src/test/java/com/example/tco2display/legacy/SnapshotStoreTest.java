@@ -0,0 +1,169 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import retrofit2.Retrofit;
+
+public class SnapshotStoreTest {
+
+    private static final int PSIZE = 2;
+    private static final String EMPTY = "{\"status\":\"ok\",\"result\":[]}";
+    private static final String[] FLEET = {
+        "{\"result\":[{\"id\":\"1\",\"total_fuel_consumed\":10},{\"id\":\"2\",\"total_fuel_consumed\":\"2,000\"}]}",
+        "{\"result\":[{\"id\":\"3\",\"total_fuel_consumed\":4.5}]}",
+    };
+
+    @Rule public final TemporaryFolder folder = new TemporaryFolder();
+
+    /** Pages per acc_id, served with an ETag each; a matching If-None-Match gets a 304. */
+    private final Map<String, String[]> pages = new ConcurrentHashMap<String, String[]>();
+    private final AtomicInteger notModified = new AtomicInteger();
+    private MockWebServer server;
+    private File file;
+
+    @Before public void serve() throws IOException {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override public MockResponse dispatch(RecordedRequest request) {
+                String[] bodies = pages.get(request.getRequestUrl().queryParameter("acc_id"));
+                int pnum = Integer.parseInt(request.getRequestUrl().queryParameter("pnum"));
+                String body = bodies != null && pnum <= bodies.length ? bodies[pnum - 1] : EMPTY;
+                String etag = "\"" + Integer.toHexString(body.hashCode()) + "\"";
+                if (etag.equals(request.getHeader("If-None-Match"))) {
+                    notModified.incrementAndGet();
+                    return new MockResponse().setResponseCode(304).setHeader("ETag", etag);
+                }
+                return new MockResponse().setHeader("ETag", etag)
+                        .setHeader("Content-Type", "application/json").setBody(body);
+            }
+        });
+        server.start();
+    }
+
+    @After public void shutDown() throws IOException {
+        server.shutdown();
+    }
+
+    private IntanglesRepository repository() {
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .callbackExecutor(new Executor() {
+                    @Override public void execute(Runnable task) { task.run(); }
+                })
+                .addConverterFactory(FuelPageConverterFactory.create())
+                .build();
+        return new IntanglesRepository(retrofit.create(IntanglesApi.class), 2);
+    }
+
+    private static double fetch(IntanglesRepository repo, String accId) throws Exception {
+        return repo.fetchFuel("t", accId, "s", PSIZE, "en", true, "", "", false, 1.0);
+    }
+
+    /** A repository that has summed {@code FLEET} once, saved to a fresh store. */
+    private SnapshotStore saved(double total) throws Exception {
+        pages.put("a", FLEET);
+        IntanglesRepository repo = repository();
+        assertEquals(2014.5, fetch(repo, "a"), 0.0);
+        file = folder.newFile();
+        SnapshotStore store = new SnapshotStore(file);
+        store.save(total, repo);
+        return store;
+    }
+
+    @Test public void theHeaderCarriesTheTotalAndWhenItWasSaved() throws Exception {
+        long before = System.currentTimeMillis();
+        SnapshotStore store = saved(1.25);
+        long after = System.currentTimeMillis();
+        assertTrue(store.savedAt() >= before && store.savedAt() <= after);
+
+        SnapshotStore coldStart = new SnapshotStore(file);
+        assertEquals(0L, coldStart.savedAt());
+        assertEquals(1.25, coldStart.readTotal(), 0.0);
+        assertEquals(store.savedAt(), coldStart.savedAt());
+    }
+
+    @Test public void aFreshLedgerIsRestoredAndItsPagesRevalidated() throws Exception {
+        saved(1.25);
+        IntanglesRepository repo = repository();
+        assertTrue(new SnapshotStore(file).restoreInto(repo, System.currentTimeMillis() - 60000L));
+        assertEquals("total_fuel_consumed", repo.fuelKey("a", "s", "", ""));
+        assertEquals(2000.0, repo.vehicleFuel("a", "s", "", "", "2"), 0.0);
+        int before = notModified.get();
+        assertEquals(2014.5, fetch(repo, "a"), 0.0);
+        assertEquals(2, notModified.get() - before);
+    }
+
+    @Test public void aLedgerUnchangedSinceTheCutOffIsLeftOutButItsKeyKept() throws Exception {
+        saved(1.25);
+        IntanglesRepository repo = repository();
+        assertTrue(new SnapshotStore(file).restoreInto(repo, System.currentTimeMillis() + 60000L));
+        assertEquals("total_fuel_consumed", repo.fuelKey("a", "s", "", ""));
+        assertTrue(Double.isNaN(repo.vehicleFuel("a", "s", "", "", "2")));
+        long detected = Metrics.DETECT_KEY.count();
+        int before = notModified.get();
+        assertEquals(2014.5, fetch(repo, "a"), 0.0);
+        assertEquals(before, notModified.get());
+        assertEquals(detected, Metrics.DETECT_KEY.count());
+    }
+
+    @Test public void anotherVersionIsNotRead() throws Exception {
+        file = folder.newFile();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        out.writeInt(0x54434F32);
+        out.writeInt(4);
+        out.writeDouble(9.0);
+        out.close();
+        SnapshotStore store = new SnapshotStore(file);
+        assertTrue(Double.isNaN(store.readTotal()));
+        assertFalse(store.restoreInto(repository(), 0L));
+        assertEquals(0L, store.savedAt());
+    }
+
+    @Test public void pagesKeepTheTimeTheirContentLastChanged() throws Exception {
+        FuelKeyAccessor key = FuelKeyAccessor.of("fuel", null);
+        PageLedger ledger = new PageLedger();
+        assertEquals(0L, ledger.lastChange());
+        long t0 = System.currentTimeMillis();
+        ledger.record(0, 1L, 2, 3.0, key, null, null);
+        ledger.record(1, 2L, 2, 3.0, key, null, null);
+        long first = ledger.lastChange();
+        assertTrue(first >= t0);
+
+        Thread.sleep(5);
+        ledger.record(0, 1L, 2, 3.0, key, "\"e\"", null);          // same bytes: not a change
+        assertEquals(first, ledger.lastChange());
+        ledger.record(1, 9L, 2, 4.0, key, null, null);
+        long second = ledger.lastChange();
+        assertTrue(second > first);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        assertEquals(2, ledger.writeTo(new DataOutputStream(bytes), key));
+        PageLedger restored = PageLedger.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), key);
+        assertEquals(second, restored.lastChange());
+        restored.retain(1);
+        assertTrue(restored.lastChange() <= first);
+    }
+}
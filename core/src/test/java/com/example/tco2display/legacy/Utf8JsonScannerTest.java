@@ -0,0 +1,165 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+public class Utf8JsonScannerTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /** Every token of the document, as text; skips one value in every {@code skipEvery} members. */
+    static String dump(JsonTokens in, int skipEvery) throws IOException {
+        StringBuilder b = new StringBuilder();
+        dumpValue(in, b, skipEvery, new int[1]);
+        b.append(in.peek());
+        return b.toString();
+    }
+
+    private static void dumpValue(JsonTokens in, StringBuilder b, int skipEvery, int[] seen) throws IOException {
+        JsonToken t = in.peek();
+        switch (t) {
+            case BEGIN_OBJECT:
+                in.beginObject();
+                b.append('{');
+                while (in.hasNext()) {
+                    b.append('<').append(in.nextName()).append(">:");
+                    if (skipEvery > 0 && ++seen[0] % skipEvery == 0) {
+                        in.skipValue();
+                        b.append('~');
+                    } else {
+                        dumpValue(in, b, skipEvery, seen);
+                    }
+                    b.append(',');
+                }
+                in.endObject();
+                b.append('}');
+                break;
+            case BEGIN_ARRAY:
+                in.beginArray();
+                b.append('[');
+                while (in.hasNext()) {
+                    dumpValue(in, b, skipEvery, seen);
+                    b.append(',');
+                }
+                in.endArray();
+                b.append(']');
+                break;
+            case STRING:
+            case NUMBER:
+                b.append(t).append('(').append(in.nextString()).append(')');
+                break;
+            default:
+                b.append(t);
+                in.skipValue();
+        }
+    }
+
+    private static String scanned(FuelPage page, int skipEvery) throws IOException {
+        Utf8JsonScanner scanner = Utf8JsonScanner.forThread();
+        assertTrue(scanner.reset(page));
+        return dump(scanner, skipEvery);
+    }
+
+    private static String gson(FuelPage page, int skipEvery) throws IOException {
+        JsonReader in = page.newReader();
+        try {
+            return dump(new JsonTokens.Gson(in), skipEvery);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void assertLikeGson(String json) throws IOException {
+        FuelPage plain = new FuelPage(json.getBytes(UTF_8), UTF_8);
+        FuelPage packed = new FuelPage(FuelPageTest.gzip(json), UTF_8);
+        for (int skip = 0; skip <= 3; skip++) {
+            String expected = gson(plain, skip);
+            assertEquals(json, expected, scanned(plain, skip));
+            assertEquals(json, expected, scanned(packed, skip));
+        }
+    }
+
+    private static void assertFallsBack(FuelPage page) throws IOException {
+        Utf8JsonScanner scanner = Utf8JsonScanner.forThread();
+        if (!scanner.reset(page)) return;
+        try {
+            dump(scanner, 0);
+            fail("scanner read " + new String(page.body, UTF_8));
+        } catch (Utf8JsonScanner.Fallback expected) {
+            // left to Gson
+        }
+    }
+
+    @Test public void structureAndLiterals() throws IOException {
+        assertLikeGson("{}");
+        assertLikeGson("[]");
+        assertLikeGson(" { \"a\" : [ 1 , 2.5 , -3e2 , true , false , null , { } , [ ] ] }\n");
+        assertLikeGson("{\"a\":{\"b\":{\"c\":{\"d\":[[[{\"e\":0}]]]}}},\"z\":-0.0}");
+        assertLikeGson("[1E+3,1e-3,0.000001,123456789012345678901234567890,-9.87654321e-300]");
+    }
+
+    @Test public void escapes() throws IOException {
+        assertLikeGson("{\"s\":\"quote \\\" backslash \\\\ slash \\/ \\b\\f\\n\\r\\t end\"}");
+        assertLikeGson("{\"s\":\"\\u0041\\u00e9\\u20AC\\u0000\"}");
+        assertLikeGson("{\"total\\u005ffuel\":\"1\",\"\\\"name\\\"\":2}");
+    }
+
+    @Test public void surrogatePairs() throws IOException {
+        assertLikeGson("{\"s\":\"\\ud83d\\ude00 and \\uD834\\uDD1E\"}");
+        assertLikeGson("{\"s\":\"raw \uD83D\uDE00 \u00e9 \u20ac \u4e2d\"}");
+        assertLikeGson("{\"\uD83D\uDE00\":\"\\ud83d\\ude00\uD83D\uDE00\"}");
+    }
+
+    @Test public void longStringsCrossTheInflaterWindow() throws IOException {
+        StringBuilder b = new StringBuilder("{\"rows\":[");
+        for (int i = 0; i < 2000; i++) {
+            if (i > 0) b.append(',');
+            b.append("{\"id\":\"").append(i).append("\",\"note\":\"\u00e9\uD83D\uDE00\\n").append(i * 31).append("\"}");
+        }
+        assertLikeGson(b.append("]}").toString());
+    }
+
+    @Test public void otherCharsetsAreNotScanned() {
+        FuelPage latin = new FuelPage("{\"a\":\"\u00e9\"}".getBytes(Charset.forName("ISO-8859-1")), Charset.forName("ISO-8859-1"));
+        assertFalse(Utf8JsonScanner.forThread().reset(latin));
+    }
+
+    @Test public void fallsBackOnWhatItDoesNotVouchFor() throws IOException {
+        String[] declined = {
+            "\uFEFF{\"a\":1}",                    // byte-order mark
+            "{'a':1}",                            // lenient quoting
+            "{a:1}",
+            "{\"a\":1,}",
+            "{\"a\":01}",
+            "{\"a\":\"\\x41\"}",                  // unknown escape
+            "{\"a\":\"tab\there\"}",              // raw control character
+            "{\"a\":1} {\"b\":2}",                // trailing document
+            "{\"a\":[1,2}",
+            "{\"a\":tru}",
+            "{\"a\":\"unterminated",
+        };
+        for (String json : declined) assertFallsBack(new FuelPage(json.getBytes(UTF_8), UTF_8));
+
+        byte[] overlong = {'{', '"', 'a', '"', ':', '"', (byte) 0xC0, (byte) 0x80, '"', '}'};
+        assertFallsBack(new FuelPage(overlong, UTF_8));
+        byte[] loneContinuation = {'[', '"', (byte) 0x80, '"', ']'};
+        assertFallsBack(new FuelPage(loneContinuation, UTF_8));
+
+        // Only the first member of a multi-member body can be checked here
+        assertFallsBack(new FuelPage(FuelPageTest.gzip("{\"a\":", "1}"), UTF_8));
+    }
+
+    @Test public void scannerIsReusableAfterAFallback() throws IOException {
+        assertFallsBack(new FuelPage("{\"a\":[1,".getBytes(UTF_8), UTF_8));
+        assertLikeGson("{\"a\":[1,2]}");
+    }
+}
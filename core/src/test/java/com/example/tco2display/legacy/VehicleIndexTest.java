@@ -0,0 +1,160 @@
+package com.example.tco2display.legacy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class VehicleIndexTest {
+
+    private static final double PER_UNIT = 0.5;
+
+    /** What the index should hold: per page, vehicle id to value. */
+    private static final class Reference {
+        final List<Map<String, Double>> pages = new ArrayList<Map<String, Double>>();
+
+        void replacePage(int page, Map<String, Double> rows) {
+            while (pages.size() <= page) pages.add(new HashMap<String, Double>());
+            pages.set(page, rows);
+        }
+
+        void retain(int pageCount) {
+            while (pages.size() > pageCount) pages.remove(pages.size() - 1);
+        }
+
+        Map<String, Double> totals() {
+            Map<String, Double> totals = new HashMap<String, Double>();
+            for (Map<String, Double> page : pages) {
+                for (Map.Entry<String, Double> e : page.entrySet()) {
+                    Double t = totals.get(e.getKey());
+                    totals.put(e.getKey(), (t == null ? 0.0 : t) + e.getValue());
+                }
+            }
+            return totals;
+        }
+    }
+
+    private static PageColumns columns(Map<String, Double> rows) {
+        PageColumns columns = new PageColumns();
+        for (Map.Entry<String, Double> e : rows.entrySet()) columns.add(e.getKey(), e.getValue());
+        return columns;
+    }
+
+    /** Ids decimal and not, so both open-addressing tables fill, and values all distinct. */
+    private static Map<String, Double> randomPage(Random r, int vehicles) {
+        Map<String, Double> rows = new HashMap<String, Double>();
+        int n = r.nextInt(30);
+        for (int i = 0; i < n; i++) {
+            int v = r.nextInt(vehicles);
+            String id = v % 3 == 0 ? "V-" + v : Integer.toString(v);
+            rows.put(id, r.nextInt(1 << 20) + r.nextDouble());
+        }
+        return rows;
+    }
+
+    private static void assertTop(Reference reference, VehicleIndex index, int n) {
+        final Map<String, Double> totals = reference.totals();
+        List<String> expected = new ArrayList<String>(totals.keySet());
+        Collections.sort(expected, new Comparator<String>() {
+            @Override public int compare(String a, String b) { return Double.compare(totals.get(b), totals.get(a)); }
+        });
+        FleetBreakdown top = index.top(n);
+        assertEquals(totals.size(), top.vehicles);
+        assertEquals(Math.min(n, totals.size()), top.size());
+        for (int rank = 0; rank < top.size(); rank++) {
+            assertEquals("rank " + rank, expected.get(rank), top.id(rank));
+            assertEquals(totals.get(expected.get(rank)) * PER_UNIT, top.tco2(rank), 1e-6);
+        }
+    }
+
+    @Test public void topIsNullBeforeThePublish() {
+        VehicleIndex index = new VehicleIndex();
+        index.replacePage(0, columns(Collections.singletonMap("1", 2.0)));
+        assertNull(index.top(3));
+        index.publish(1.0, PER_UNIT);
+        assertEquals(1, index.top(3).size());
+    }
+
+    @Test public void topFollowsPagesAsTheyChange() {
+        Random r = new Random(12);
+        for (int run = 0; run < 20; run++) {
+            VehicleIndex index = new VehicleIndex();
+            Reference reference = new Reference();
+            int vehicles = 5 + r.nextInt(400);
+            index.publish(0.0, PER_UNIT);
+            for (int step = 0; step < 60; step++) {
+                if (r.nextInt(8) == 0) {
+                    int keep = r.nextInt(reference.pages.size() + 1);
+                    index.retain(keep);
+                    reference.retain(keep);
+                } else {
+                    int page = r.nextInt(6);
+                    Map<String, Double> rows = randomPage(r, vehicles);
+                    index.replacePage(page, columns(rows));
+                    reference.replacePage(page, rows);
+                }
+                assertTop(reference, index, 1 + r.nextInt(12));
+            }
+            assertTop(reference, index, Integer.MAX_VALUE);
+        }
+    }
+
+    @Test public void aVehicleThatGrowsPastTheOthersTakesTheLead() {
+        VehicleIndex index = new VehicleIndex();
+        Map<String, Double> page = new HashMap<String, Double>();
+        page.put("1", 10.0);
+        page.put("2", 20.0);
+        page.put("truck", 30.0);
+        index.replacePage(0, columns(page));
+        index.publish(60.0 * PER_UNIT, PER_UNIT);
+        assertEquals("truck", index.top(1).id(0));
+
+        page.put("1", 50.0);
+        index.replacePage(0, columns(page));
+        FleetBreakdown top = index.top(2);
+        assertEquals("1", top.id(0));
+        assertEquals("truck", top.id(1));
+        assertEquals(25.0, top.tco2(0), 0.0);
+
+        // a second page adds to a vehicle of the first
+        index.replacePage(1, columns(Collections.singletonMap("2", 100.0)));
+        assertEquals("2", index.top(1).id(0));
+        assertEquals(60.0, index.top(1).tco2(0), 0.0);
+        index.retain(1);
+        assertEquals("1", index.top(1).id(0));
+    }
+
+    @Test public void theTopAndTotalSurviveASnapshot() throws IOException {
+        VehicleIndex index = new VehicleIndex();
+        Random r = new Random(3);
+        Reference reference = new Reference();
+        for (int page = 0; page < 4; page++) {
+            Map<String, Double> rows = randomPage(r, 100);
+            index.replacePage(page, columns(rows));
+            reference.replacePage(page, rows);
+        }
+        index.publish(42.0, PER_UNIT);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(new DataOutputStream(bytes), 4);
+
+        VehicleIndex restored = VehicleIndex.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(42.0, restored.tco2(), 0.0);
+        assertEquals(42.0, restored.top(5).totalTco2, 0.0);
+        assertTop(reference, restored, 10);
+        assertTrue(restored.vehicles() > 0);
+    }
+}
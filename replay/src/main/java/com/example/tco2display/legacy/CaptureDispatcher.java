@@ -0,0 +1,53 @@
+package com.example.tco2display.legacy;
+
+import java.io.IOException;
+
+import okhttp3.HttpUrl;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/**
+ * Stand-in for the vehicle/fuel_consumed endpoint serving one capture, for end-to-end runs
+ * through OkHttp, Retrofit and {@link FuelPageConverterFactory}. Pages go out as captured, with
+ * Content-Encoding: gzip when they were gzip, and an ETag from the page checksum so a second
+ * refresh revalidates to 304s like the real API's cache headers allow.
+ */
+final class CaptureDispatcher extends Dispatcher {
+
+    private final CapturedQuery capture;
+
+    CaptureDispatcher(CapturedQuery capture) { this.capture = capture; }
+
+    @Override public MockResponse dispatch(RecordedRequest request) {
+        HttpUrl url = request.getRequestUrl();
+        if (!url.encodedPath().endsWith("/vehicle/fuel_consumed")) return new MockResponse().setResponseCode(404);
+        String accId = url.queryParameter("acc_id");
+        if (accId == null || !accId.equals(capture.accId())) {
+            return new MockResponse().setResponseCode(400).setBody("{\"status\":\"bad acc_id\"}");
+        }
+        int pnum;
+        try {
+            pnum = Integer.parseInt(url.queryParameter("pnum"));
+        } catch (NumberFormatException e) {
+            return new MockResponse().setResponseCode(400).setBody("{\"status\":\"bad pnum\"}");
+        }
+        FuelPage page = capture.page(pnum);
+        String etag;
+        try {
+            etag = "\"" + Long.toHexString(page.checksum()) + "\"";
+        } catch (IOException e) {
+            return new MockResponse().setResponseCode(500).setBody("{\"status\":\"bad capture\"}");
+        }
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            return new MockResponse().setResponseCode(304).setHeader("ETag", etag);
+        }
+        MockResponse r = new MockResponse()
+                .setHeader("Content-Type", "application/json; charset=" + page.charset.name())
+                .setHeader("ETag", etag)
+                .setBody(new Buffer().write(page.body));
+        if (page.gzip) r.setHeader("Content-Encoding", "gzip");
+        return r;
+    }
+}
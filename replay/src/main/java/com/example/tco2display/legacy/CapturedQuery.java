@@ -0,0 +1,92 @@
+package com.example.tco2display.legacy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/** One refresh of one query as written by {@link PageCapture}, loaded fully into memory. */
+final class CapturedQuery {
+
+    final String name;
+    final Properties manifest;
+    /** index = pnum - 1 */
+    final FuelPage[] pages;
+
+    private CapturedQuery(String name, Properties manifest, FuelPage[] pages) {
+        this.name = name;
+        this.manifest = manifest;
+        this.pages = pages;
+    }
+
+    /** {@code root} itself if it is a capture, else every complete capture directly under it, oldest first. */
+    static List<CapturedQuery> loadAll(File root) throws IOException {
+        List<CapturedQuery> out = new ArrayList<CapturedQuery>();
+        if (new File(root, PageCapture.MANIFEST).isFile()) {
+            out.add(load(root));
+            return out;
+        }
+        File[] dirs = root.listFiles();
+        if (dirs == null) throw new IOException("Not a directory: " + root);
+        Arrays.sort(dirs);
+        for (File d : dirs) {
+            if (d.isDirectory() && !d.getName().endsWith(PageCapture.TMP_SUFFIX)
+                    && new File(d, PageCapture.MANIFEST).isFile()) {
+                out.add(load(d));
+            }
+        }
+        return out;
+    }
+
+    static CapturedQuery load(File dir) throws IOException {
+        Properties m = new Properties();
+        InputStream in = new FileInputStream(new File(dir, PageCapture.MANIFEST));
+        try {
+            m.load(in);
+        } finally {
+            in.close();
+        }
+        Charset charset = Charset.forName(m.getProperty("charset", "UTF-8"));
+        FuelPage[] pages = new FuelPage[Integer.parseInt(m.getProperty("pages"))];
+        for (int p = 1; p <= pages.length; p++) {
+            File f = new File(dir, PageCapture.pageFile(p, false));
+            if (!f.isFile()) f = new File(dir, PageCapture.pageFile(p, true));
+            if (!f.isFile()) throw new IOException(dir + ": page " + p + " missing");
+            pages[p - 1] = new FuelPage(Files.readAllBytes(f.toPath()), charset);
+        }
+        return new CapturedQuery(dir.getName(), m, pages);
+    }
+
+    String accId() { return manifest.getProperty("accId"); }
+    String specIds() { return manifest.getProperty("specIds"); }
+    String proj() { return manifest.getProperty("proj"); }
+    String groups() { return manifest.getProperty("groups"); }
+    String lang() { return manifest.getProperty("lang"); }
+    int psize() { return Integer.parseInt(manifest.getProperty("psize")); }
+    boolean noDefaultFields() { return Boolean.parseBoolean(manifest.getProperty("noDefaultFields")); }
+    boolean lastloc() { return Boolean.parseBoolean(manifest.getProperty("lastloc")); }
+    double kgPerUnit() { return Double.parseDouble(manifest.getProperty("kgPerUnit")); }
+    long rows() { return Long.parseLong(manifest.getProperty("rows")); }
+    /** Total the app summed from these pages, in the API's units. */
+    double liveFuel() { return Double.parseDouble(manifest.getProperty("fuel")); }
+    /** Fuel key the app had compiled; null if it had none (should not happen for a written capture). */
+    String liveKey() { return manifest.getProperty("fuelKey"); }
+
+    /** Page {@code pnum} as captured; past the last one, the empty page the API ends with. */
+    FuelPage page(int pnum) {
+        return pnum >= 1 && pnum <= pages.length ? pages[pnum - 1] : ReplayApi.EMPTY;
+    }
+
+    /** Bytes of JSON text over all pages (inflated size for gzip pages). */
+    long jsonBytes() throws IOException {
+        long n = 0;
+        for (FuelPage p : pages) n += p.jsonLength();
+        return n;
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.tco2display.legacy;
+
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Retrofit;
+
+/**
+ * Load test for push mode: {@code clients} {@link DeltaChannel}s, each with its own repository
+ * as on separate devices, against one {@link DeltaStandIn} pushing {@code rate} frames a second.
+ * Optionally closes every socket periodically and keeps a short history, so reconnects, replays
+ * and resyncs are exercised. At the end the fleet stops moving and every client must settle on
+ * the stand-in's exact total; exits 1 if one does not.
+ *
+ * <pre>
+ * DeltaLoadTest [--vehicles N] [--clients N] [--rate N] [--changes N] [--seconds N]
+ *               [--history N] [--drop-ms N] [--resync-ms N]
+ * </pre>
+ */
+public final class DeltaLoadTest {
+
+    private static final int PSIZE = 300;
+    private static final long POLL_MS = 2000L;     // what each client would poll at instead
+
+    private DeltaLoadTest() {}
+
+    public static void main(String[] args) throws Exception {
+        int vehicles = 5000, clients = 20, rate = 50, changes = 5, seconds = 20, history = 1000;
+        long dropMs = 0, resyncMs = 600000L;
+        for (int i = 0; i < args.length; i++) {
+            if (i + 1 == args.length) usage();
+            String a = args[i], v = args[++i];
+            if ("--vehicles".equals(a)) vehicles = Integer.parseInt(v);
+            else if ("--clients".equals(a)) clients = Integer.parseInt(v);
+            else if ("--rate".equals(a)) rate = Integer.parseInt(v);
+            else if ("--changes".equals(a)) changes = Integer.parseInt(v);
+            else if ("--seconds".equals(a)) seconds = Integer.parseInt(v);
+            else if ("--history".equals(a)) history = Integer.parseInt(v);
+            else if ("--drop-ms".equals(a)) dropMs = Long.parseLong(v);
+            else if ("--resync-ms".equals(a)) resyncMs = Long.parseLong(v);
+            else usage();
+        }
+        if (vehicles < 1 || clients < 1 || rate < 1 || changes < 1 || seconds < 1 || history < 1) usage();
+
+        final DeltaStandIn standIn = new DeltaStandIn(vehicles, history, 1L);
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(standIn);
+        server.start();
+        OkHttpClient client = new OkHttpClient.Builder().pingInterval(5, TimeUnit.SECONDS).build();
+        client.dispatcher().setMaxRequests(1024);
+        client.dispatcher().setMaxRequestsPerHost(1024);
+        Retrofit retrofit = new Retrofit.Builder()
+                .baseUrl(server.url("/"))
+                .client(client)
+                .callbackExecutor(new Executor() {
+                    @Override public void execute(Runnable task) { task.run(); }
+                })
+                .addConverterFactory(FuelPageConverterFactory.create())
+                .build();
+        IntanglesApi api = retrofit.create(IntanglesApi.class);
+        ScheduledExecutorService io = Executors.newScheduledThreadPool(Math.min(clients, 8));
+        ScheduledExecutorService fleet = Executors.newSingleThreadScheduledExecutor();
+
+        final AtomicLong errors = new AtomicLong();
+        final double[] latest = new double[clients];
+        DeltaChannel[] channels = new DeltaChannel[clients];
+        for (int i = 0; i < clients; i++) {
+            final int c = i;
+            QueryProfile q = new QueryProfile("load" + i, "acc", "s1", DeltaStandIn.FUEL_KEY, "", "kg", 1.0);
+            latest[i] = Double.NaN;
+            channels[i] = new DeltaChannel(client, server.url("/vehicle/fuel_deltas").toString(),
+                    new IntanglesRepository(api, 4), q, "", PSIZE, "en", true, true, io, resyncMs,
+                    new RefreshScheduler(200L, 200L, 2000L, 1),
+                    new DeltaChannel.Listener() {
+                        @Override public void onFuel(double fuel) {
+                            synchronized (latest) { latest[c] = fuel; }
+                        }
+                        @Override public void onError(Exception e) {
+                            if (errors.incrementAndGet() <= 5) System.out.println("client " + c + ": " + e);
+                        }
+                    });
+        }
+
+        System.out.printf(Locale.US, "%d vehicles, %d clients, %d frames/s of %d changes for %d s, history %d%s%n",
+                vehicles, clients, rate, changes, seconds, history, dropMs > 0 ? ", sockets closed every " + dropMs + " ms" : "");
+        long t0 = System.nanoTime();
+        for (DeltaChannel ch : channels) ch.start();
+        final int perFrame = changes;
+        fleet.scheduleAtFixedRate(new Runnable() {
+            @Override public void run() { standIn.tick(perFrame); }
+        }, 0, 1000000L / rate, TimeUnit.MICROSECONDS);
+        if (dropMs > 0) {
+            fleet.scheduleAtFixedRate(new Runnable() {
+                @Override public void run() { standIn.dropAll(); }
+            }, dropMs, dropMs, TimeUnit.MILLISECONDS);
+        }
+        Thread.sleep(seconds * 1000L);
+        fleet.shutdown();
+        fleet.awaitTermination(10, TimeUnit.SECONDS);
+        double secs = (System.nanoTime() - t0) / 1e9;
+
+        // The fleet is still now: every client must reach the last frame and the exact total
+        double total = standIn.total();
+        long lastSeq = standIn.seq();
+        long deadline = System.currentTimeMillis() + 30000L;
+        int behind;
+        double worst;
+        do {
+            Thread.sleep(100);
+            behind = 0;
+            worst = 0.0;
+            synchronized (latest) {
+                for (int i = 0; i < clients; i++) {
+                    double diff = Math.abs(latest[i] - total);
+                    if (channels[i].lastSeq() != lastSeq || !(diff <= 1e-9 * total)) behind++;
+                    if (!(diff <= worst)) worst = diff;
+                }
+            }
+        } while (behind > 0 && System.currentTimeMillis() < deadline);
+
+        for (DeltaChannel ch : channels) ch.stop();
+        io.shutdown();
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+        server.shutdown();
+
+        long pushed = standIn.bytesPushed();
+        double polled = (double) standIn.pageBytes(PSIZE) * clients * (secs * 1000 / POLL_MS);
+        System.out.printf(Locale.US, "%d frames in %.1f s; pushed %.2f MB, polling every %d ms would have read %.2f MB%n",
+                lastSeq, secs, pushed / 1e6, POLL_MS, polled / 1e6);
+        System.out.printf(Locale.US, "total %.2f; %d of %d clients off, worst diff %.6g; %d errors%n",
+                total, behind, clients, worst, errors.get());
+        System.out.println(Metrics.summary());
+        System.exit(behind == 0 ? 0 : 1);
+    }
+
+    private static void usage() {
+        System.err.println("usage: DeltaLoadTest [--vehicles N] [--clients N] [--rate N] [--changes N] [--seconds N]"
+                + " [--history N] [--drop-ms N] [--resync-ms N]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.tco2display.legacy;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Local stand-in for the fuel API in push mode, so {@link DeltaChannel} can be built and
+ * load-tested without the real service. It holds a synthetic fleet, serves its
+ * vehicle/fuel_consumed pages and a vehicle/fuel_deltas WebSocket in DeltaChannel's wire
+ * format, and {@link #tick} moves some vehicles and pushes the frame to every open socket.
+ * The last {@code history} frames are kept for reconnects with {@code since}; older positions
+ * get a reset. Fuel is kept in hundredths, so {@link #total} is exact.
+ */
+final class DeltaStandIn extends Dispatcher {
+
+    static final String FUEL_KEY = "total_fuel_consumed";
+
+    private final long[] centis;
+    private final String[] history;
+    private final Random random;
+    private final Set<WebSocket> sockets = new LinkedHashSet<WebSocket>();
+    private long seq;
+    private long bytesPushed;
+
+    DeltaStandIn(int vehicles, int history, long seed) {
+        this.random = new Random(seed);
+        this.centis = new long[vehicles];
+        for (int i = 0; i < vehicles; i++) centis[i] = random.nextInt(100000000);
+        this.history = new String[history];
+    }
+
+    /** Moves {@code changes} random vehicles and pushes them as one frame; returns its seq. */
+    synchronized long tick(int changes) {
+        StringBuilder b = new StringBuilder(32 + changes * 40);
+        b.append("{\"seq\":").append(++seq).append(",\"rows\":[");
+        for (int i = 0; i < changes; i++) {
+            int v = random.nextInt(centis.length);
+            centis[v] += 1 + random.nextInt(500);
+            if (i > 0) b.append(',');
+            b.append("{\"id\":\"").append(v + 1).append("\",\"fuel\":");
+            appendFuel(b, centis[v]).append('}');
+        }
+        String frame = b.append("]}").toString();
+        history[(int) (seq % history.length)] = frame;
+        List<WebSocket> gone = new ArrayList<WebSocket>();
+        for (WebSocket ws : sockets) {
+            if (ws.send(frame)) bytesPushed += frame.length();
+            else gone.add(ws);
+        }
+        sockets.removeAll(gone);
+        return seq;
+    }
+
+    synchronized long seq() { return seq; }
+
+    /** Exact fleet total, rounded once. */
+    synchronized double total() {
+        long sum = 0;
+        for (long c : centis) sum += c;
+        return sum / 100.0;
+    }
+
+    synchronized long bytesPushed() { return bytesPushed; }
+
+    /** Bytes of one full paginated read of the fleet, for comparing with the pushed bytes. */
+    synchronized long pageBytes(int psize) {
+        long n = 0;
+        for (int p = 1; (p - 1) * psize < centis.length; p++) n += page(p, psize).length();
+        return n;
+    }
+
+    /** Closes every open socket from the server side ("going away"), as a restart or a proxy would. */
+    synchronized int dropAll() {
+        int n = sockets.size();
+        for (WebSocket ws : sockets) ws.close(1001, "going away");
+        sockets.clear();
+        return n;
+    }
+
+    @Override public MockResponse dispatch(RecordedRequest request) {
+        HttpUrl url = request.getRequestUrl();
+        String path = url.encodedPath();
+        try {
+            if (path.endsWith("/vehicle/fuel_deltas")) {
+                String since = url.queryParameter("since");
+                return new MockResponse().withWebSocketUpgrade(new Socket(since == null ? -1 : Long.parseLong(since)));
+            }
+            if (path.endsWith("/vehicle/fuel_consumed")) {
+                int pnum = Integer.parseInt(url.queryParameter("pnum"));
+                int psize = Integer.parseInt(url.queryParameter("psize"));
+                String body;
+                synchronized (this) {
+                    body = page(pnum, psize);
+                }
+                return new MockResponse().setHeader("Content-Type", "application/json; charset=utf-8").setBody(body);
+            }
+        } catch (NumberFormatException e) {
+            return new MockResponse().setResponseCode(400).setBody("{\"status\":\"bad request\"}");
+        }
+        return new MockResponse().setResponseCode(404);
+    }
+
+    private String page(int pnum, int psize) {
+        StringBuilder b = new StringBuilder(64 + psize * 48).append("{\"status\":\"ok\",\"result\":[");
+        for (int i = (pnum - 1) * psize, end = Math.min(centis.length, pnum * psize); i < end; i++) {
+            if (i > (pnum - 1) * psize) b.append(',');
+            b.append("{\"id\":\"").append(i + 1).append("\",\"" + FUEL_KEY + "\":");
+            appendFuel(b, centis[i]).append('}');
+        }
+        return b.append("]}").toString();
+    }
+
+    private static StringBuilder appendFuel(StringBuilder b, long centis) {
+        long frac = centis % 100;
+        return b.append(centis / 100).append('.').append(frac < 10 ? "0" : "").append(frac);
+    }
+
+    /** One client socket; replays what it missed, or resets it, before it gets new frames. */
+    private final class Socket extends WebSocketListener {
+        private final long since;
+
+        Socket(long since) { this.since = since; }
+
+        @Override public void onOpen(WebSocket ws, Response response) {
+            synchronized (DeltaStandIn.this) {
+                if (since >= 0) {
+                    if (since <= seq && seq - since <= history.length) {
+                        for (long s = since + 1; s <= seq; s++) ws.send(history[(int) (s % history.length)]);
+                    } else {
+                        ws.send("{\"seq\":" + seq + ",\"reset\":true}");
+                    }
+                }
+                sockets.add(ws);
+            }
+        }
+
+        @Override public void onClosing(WebSocket ws, int code, String reason) {
+            ws.close(1000, null);
+            forget(ws);
+        }
+
+        @Override public void onFailure(WebSocket ws, Throwable t, Response response) {
+            forget(ws);
+        }
+
+        private void forget(WebSocket ws) {
+            synchronized (DeltaStandIn.this) {
+                sockets.remove(ws);
+            }
+        }
+    }
+}
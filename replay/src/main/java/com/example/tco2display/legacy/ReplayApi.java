@@ -0,0 +1,78 @@
+package com.example.tco2display.legacy;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Map;
+
+import okhttp3.HttpUrl;
+import okhttp3.Request;
+import okio.Timeout;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * {@link IntanglesApi} answered from one capture in memory: no sockets, no converter, so a
+ * replay times parsing, key detection and summing alone. Calls complete on the caller's thread.
+ */
+final class ReplayApi implements IntanglesApi {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final FuelPage EMPTY = new FuelPage("{\"result\":[]}".getBytes(UTF_8), UTF_8);
+
+    private final CapturedQuery capture;
+
+    ReplayApi(CapturedQuery capture) { this.capture = capture; }
+
+    @Override
+    public Call<FuelPage> fuelConsumed(Map<String, String> headers, int pnum, int psize, boolean noDefaultFields,
+                                       String proj, String specIds, String groups, boolean lastloc,
+                                       String accId, String lang) {
+        if (psize != capture.psize() || !same(accId, capture.accId()) || !same(specIds, capture.specIds())
+                || !same(proj, capture.proj()) || !same(groups, capture.groups())) {
+            throw new IllegalArgumentException(capture.name + ": query does not match the capture");
+        }
+        HttpUrl url = HttpUrl.get("http://replay.invalid/vehicle/fuel_consumed").newBuilder()
+                .addQueryParameter("pnum", Integer.toString(pnum)).build();
+        return new PageCall(capture.page(pnum), new Request.Builder().url(url).build());
+    }
+
+    private static boolean same(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static final class PageCall implements Call<FuelPage> {
+        private final FuelPage page;
+        private final Request request;
+        private volatile boolean executed, canceled;
+
+        PageCall(FuelPage page, Request request) {
+            this.page = page;
+            this.request = request;
+        }
+
+        @Override public Response<FuelPage> execute() throws IOException {
+            executed = true;
+            if (canceled) throw new IOException("Canceled");
+            return Response.success(page);
+        }
+
+        @Override public void enqueue(Callback<FuelPage> callback) {
+            Response<FuelPage> r;
+            try {
+                r = execute();
+            } catch (IOException e) {
+                callback.onFailure(this, e);
+                return;
+            }
+            callback.onResponse(this, r);
+        }
+
+        @Override public boolean isExecuted() { return executed; }
+        @Override public void cancel() { canceled = true; }
+        @Override public boolean isCanceled() { return canceled; }
+        @Override public Call<FuelPage> clone() { return new PageCall(page, request); }
+        @Override public Request request() { return request; }
+        @Override public Timeout timeout() { return Timeout.NONE; }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.tco2display.legacy;
+
+import java.io.File;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockWebServer;
+import retrofit2.Retrofit;
+
+/**
+ * Feeds captured vehicle/fuel_consumed pages (see {@link PageCapture}) through
+ * {@link IntanglesRepository} on a desktop JVM and diffs each total against the one the app
+ * computed live from the same pages. Every capture gets a fresh repository, so key detection
+ * and the tree parse of page 1 run as on a cold start; captures are split over a ForkJoinPool.
+ *
+ * <pre>
+ * ReplayRunner &lt;captures&gt; [--threads N] [--rounds N] [--serve]
+ * </pre>
+ *
+ * Each round replays every capture and reports its throughput; the first includes JIT warm-up.
+ * With {@code --serve} pages come over HTTP from a {@link CaptureDispatcher} through OkHttp,
+ * Retrofit and the converter the app uses, and each capture is fetched twice, the second time
+ * revalidating every page to a 304. Exits 1 if any total or key differs from the live one.
+ */
+public final class ReplayRunner {
+
+    private ReplayRunner() {}
+
+    public static void main(String[] args) throws Exception {
+        String root = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int rounds = 3;
+        boolean serve = false;
+        for (int i = 0; i < args.length; i++) {
+            if ("--threads".equals(args[i]) && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+            else if ("--rounds".equals(args[i]) && i + 1 < args.length) rounds = Integer.parseInt(args[++i]);
+            else if ("--serve".equals(args[i])) serve = true;
+            else if (root == null && !args[i].startsWith("--")) root = args[i];
+            else usage();
+        }
+        if (root == null || threads < 1 || rounds < 1) usage();
+
+        List<CapturedQuery> captures = CapturedQuery.loadAll(new File(root));
+        if (captures.isEmpty()) {
+            System.err.println("No captures under " + root);
+            System.exit(2);
+        }
+        long pages = 0, rows = 0, bytes = 0;
+        for (CapturedQuery c : captures) {
+            pages += c.pages.length;
+            rows += c.rows();
+            bytes += c.jsonBytes();
+        }
+        System.out.printf(Locale.US, "%d captures, %d pages, %d rows, %.1f MB of JSON; %d threads%s%n",
+                captures.size(), pages, rows, bytes / 1e6, threads, serve ? ", over HTTP" : "");
+
+        OkHttpClient client = serve ? newClient() : null;
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        Result[] results = new Result[captures.size()];
+        try {
+            for (int round = 1; round <= rounds; round++) {
+                long t0 = System.nanoTime();
+                pool.invoke(new ReplayTask(captures, results, 0, results.length, client));
+                double secs = (System.nanoTime() - t0) / 1e9;
+                System.out.printf(Locale.US, "round %d: %.0f ms, %.0f pages/s, %.0f rows/s, %.1f MB/s%n",
+                        round, secs * 1e3, pages / secs, rows / secs, bytes / 1e6 / secs);
+            }
+        } finally {
+            pool.shutdown();
+            if (client != null) {
+                client.dispatcher().executorService().shutdown();
+                client.connectionPool().evictAll();
+            }
+        }
+        System.exit(report(captures, results) == 0 ? 0 : 1);
+    }
+
+    /** Prints every capture whose replay differs from the live run plus a summary; returns how many. */
+    private static int report(List<CapturedQuery> captures, Result[] results) {
+        int mismatches = 0;
+        double live = 0.0, replayed = 0.0, worst = 0.0;
+        for (int i = 0; i < results.length; i++) {
+            CapturedQuery c = captures.get(i);
+            Result r = results[i];
+            if (r.error != null) {
+                mismatches++;
+                System.out.println(c.name + ": " + r.error);
+                continue;
+            }
+            live += c.liveFuel();
+            replayed += r.fuel;
+            double diff = r.fuel - c.liveFuel();
+            worst = Math.max(worst, Math.abs(diff));
+            boolean sameKey = c.liveKey() == null ? r.key == null : c.liveKey().equals(r.key);
+            if (Double.compare(r.fuel, c.liveFuel()) != 0 || !sameKey) {
+                mismatches++;
+                System.out.printf(Locale.US, "%s: live %s, replay %s (diff %.6g), key %s -> %s%n",
+                        c.name, c.liveFuel(), r.fuel, diff, c.liveKey(), r.key);
+            }
+        }
+        System.out.printf(Locale.US, "fuel summed: live %.6f, replay %.6f, worst diff %.6g; %d of %d differ%n",
+                live, replayed, worst, mismatches, results.length);
+        System.out.println(Metrics.summary());
+        return mismatches;
+    }
+
+    private static Result replay(CapturedQuery c, OkHttpClient client) {
+        Result r = new Result();
+        try {
+            if (client == null) {
+                IntanglesRepository repo = new IntanglesRepository(new ReplayApi(c));
+                r.fuel = fetch(repo, c);
+                r.key = repo.fuelKey(c.accId(), c.specIds(), c.proj(), c.groups());
+            } else {
+                MockWebServer server = new MockWebServer();
+                server.setDispatcher(new CaptureDispatcher(c));
+                server.start();
+                try {
+                    Retrofit retrofit = new Retrofit.Builder()
+                            .baseUrl(server.url("/"))
+                            .client(client)
+                            .callbackExecutor(new Executor() {
+                                @Override public void execute(Runnable task) { task.run(); }
+                            })
+                            .addConverterFactory(FuelPageConverterFactory.create())
+                            .build();
+                    // As the app builds it: several pages in flight, compressed transfer
+                    IntanglesRepository repo = new IntanglesRepository(retrofit.create(IntanglesApi.class), 4, true);
+                    double first = fetch(repo, c);
+                    r.fuel = fetch(repo, c);
+                    r.key = repo.fuelKey(c.accId(), c.specIds(), c.proj(), c.groups());
+                    if (Double.compare(first, r.fuel) != 0) {
+                        throw new IllegalStateException("revalidated total " + r.fuel + " differs from " + first);
+                    }
+                } finally {
+                    server.shutdown();
+                }
+            }
+        } catch (Exception e) {
+            r.error = e;
+        }
+        return r;
+    }
+
+    private static double fetch(IntanglesRepository repo, CapturedQuery c) throws Exception {
+        return repo.fetchFuel("", c.accId(), c.specIds(), c.psize(), c.lang(), c.noDefaultFields(),
+                c.proj(), c.groups(), c.lastloc(), c.kgPerUnit());
+    }
+
+    private static OkHttpClient newClient() {
+        OkHttpClient client = new OkHttpClient();
+        // Every stand-in is "localhost": the default limit of 5 would serialize the whole pool
+        client.dispatcher().setMaxRequestsPerHost(256);
+        client.dispatcher().setMaxRequests(256);
+        return client;
+    }
+
+    private static void usage() {
+        System.err.println("usage: ReplayRunner <captures> [--threads N] [--rounds N] [--serve]");
+        System.exit(2);
+    }
+
+    private static final class Result {
+        double fuel = Double.NaN;
+        String key;
+        Exception error;
+    }
+
+    /** Replays captures [lo, hi), halving the range until one capture is left. */
+    private static final class ReplayTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<CapturedQuery> captures;
+        private final Result[] results;
+        private final int lo, hi;
+        private final OkHttpClient client;
+
+        ReplayTask(List<CapturedQuery> captures, Result[] results, int lo, int hi, OkHttpClient client) {
+            this.captures = captures;
+            this.results = results;
+            this.lo = lo;
+            this.hi = hi;
+            this.client = client;
+        }
+
+        @Override protected void compute() {
+            if (hi - lo == 1) {
+                results[lo] = replay(captures.get(lo), client);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new ReplayTask(captures, results, lo, mid, client),
+                    new ReplayTask(captures, results, mid, hi, client));
+        }
+    }
+}